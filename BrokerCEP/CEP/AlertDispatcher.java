@@ -0,0 +1,352 @@
+import com.espertech.esper.common.client.EventBean;
+
+import com.rabbitmq.client.AMQP;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded outbound alert queue between the statement listeners and AlertPublisher.
+ *
+ * A listener only captures the output event and enqueues it; encoding, the alert
+ * log line and the broker publish run on dedicated dispatcher threads. Esper's
+ * dispatch (and so sendEventBean) no longer waits on the broker, unless the queue
+ * is full and the overflow policy is "block".
+ *
+ * Overflow policies (-Dalerts.overflow):
+ *   block        the listener waits for room: backpressure into Esper (default)
+ *   drop-oldest  the oldest queued alert is discarded to make room
+ *   spill        alerts go to an append-only file (-Dalerts.spillFile) and are
+ *                replayed in order once the in-memory queue has drained; alerts
+ *                whose publish fails or that the broker does not confirm are
+ *                spilled again and retried. Each spilled alert is forced to disk
+ *                (fsync) before append returns, so a crash loses none; a spill
+ *                file left by a previous run is replayed on startup (at-least-once:
+ *                alerts published just before a crash may be sent twice).
+ *
+ * Tunables (JVM system properties):
+ *   alerts.queue            queue capacity (default 10000)
+ *   alerts.dispatchers      dispatcher threads (default 2)
+ *   alerts.drainTimeoutMs   max time close() waits for the queue to drain (default 5000)
+ *
+ * Alerts the broker does not confirm (AlertPublisher.UndeliveredHandler) are spilled
+ * with the spill policy and put back on the queue otherwise (dropped and counted if
+ * it is full).
+ *
+ * With more than one dispatcher, alerts of different statements may be published
+ * slightly out of order.
+ */
+public class AlertDispatcher implements AutoCloseable {
+
+    public enum Overflow { BLOCK, DROP_OLDEST, SPILL }
+
+    private static final int CAPACITY = Integer.getInteger("alerts.queue", 10_000);
+    private static final int DISPATCHERS = Integer.getInteger("alerts.dispatchers", 2);
+    private static final long DRAIN_TIMEOUT_MS = Long.getLong("alerts.drainTimeoutMs", 5000L);
+    private static final long RETRY_BACKOFF_MS = 1000L;
+
+    private final AlertPublisher publisher;
+    private final Overflow overflow;
+    private final BlockingQueue<Pending> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private final SpillFile spill;
+    private final List<Thread> threads = new ArrayList<>();
+
+    private volatile boolean running = true;
+
+    /** One alert on its way out; encoded lazily on a dispatcher thread. */
+    private static final class Pending {
+        final AlertEncoder encoder;
+        final EventBean event;
+        final String routingKey;
+        final long enqueuedNanos;
+        boolean json;
+        byte[] body;
+
+        Pending(AlertEncoder encoder, EventBean event, String routingKey) {
+            this.encoder = encoder;
+            this.event = event;
+            this.routingKey = routingKey;
+            this.enqueuedNanos = System.nanoTime();
+        }
+
+        /** Replayed from the spill file: already encoded, queue wait not measured. */
+        Pending(String routingKey, boolean json, byte[] body) {
+            this.encoder = null;
+            this.event = null;
+            this.routingKey = routingKey;
+            this.enqueuedNanos = 0;
+            this.json = json;
+            this.body = body;
+        }
+
+        byte[] encode() throws IOException {
+            if (body == null) {
+                json = !encoder.isLegacy();
+                body = encoder.encode(event);
+            }
+            return body;
+        }
+    }
+
+    public AlertDispatcher(AlertPublisher publisher) throws IOException {
+        this(publisher, Overflow.valueOf(System.getProperty("alerts.overflow", "block").trim()
+                .toUpperCase().replace('-', '_')), new File(System.getProperty("alerts.spillFile", "alerts.spill")));
+    }
+
+    public AlertDispatcher(AlertPublisher publisher, Overflow overflow, File spillFile) throws IOException {
+        this.publisher = publisher;
+        this.overflow = overflow;
+        this.spill = overflow == Overflow.SPILL ? new SpillFile(spillFile) : null;
+        publisher.onUndelivered(this::undelivered);
+        for (int i = 0; i < DISPATCHERS; i++) {
+            Thread t = new Thread(this::run, "alert-dispatcher-" + i);
+            t.setDaemon(true);
+            t.start();
+            threads.add(t);
+        }
+        BridgeMetrics.watchAlertQueue(this);
+        System.out.println("📬 Alert dispatcher: " + DISPATCHERS + " thread(s), queue " + CAPACITY
+                + ", overflow " + overflow.name().toLowerCase().replace('_', '-')
+                + (spill != null && spill.backlog() > 0 ? ", replaying " + spill.backlog() + " spilled alert(s)" : ""));
+    }
+
+    /** Called from a statement listener: hands the alert off without touching the broker. */
+    public void submit(AlertEncoder encoder, EventBean event, String routingKey) {
+        Pending p = new Pending(encoder, event, routingKey);
+        try {
+            switch (overflow) {
+                case BLOCK:
+                    queue.put(p);
+                    break;
+                case DROP_OLDEST:
+                    while (!queue.offer(p)) {
+                        if (queue.poll() != null) {
+                            BridgeMetrics.ALERTS_DROPPED.increment();
+                            BridgeLog.warn("alert-queue", "⚠️ Alert queue full: dropped oldest alert");
+                        }
+                    }
+                    break;
+                case SPILL:
+                    // Once spilling, keep spilling until the file is replayed, so alerts stay in order
+                    if (spill.backlog() > 0 || !queue.offer(p)) {
+                        spill(p);
+                    }
+                    break;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            BridgeMetrics.ALERTS_DROPPED.increment();
+        }
+    }
+
+    public int depth() {
+        return queue.size();
+    }
+
+    public int capacity() {
+        return CAPACITY;
+    }
+
+    public long spillBacklog() {
+        return spill == null ? 0 : spill.backlog();
+    }
+
+    private void run() {
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending p = queue.poll(50, TimeUnit.MILLISECONDS);
+                if (p == null && spill != null && running) {
+                    p = spill.next();
+                }
+                if (p != null) {
+                    dispatch(p);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                BridgeLog.error("alert-queue", e, "❌ Alert spill file read failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void dispatch(Pending p) throws InterruptedException {
+        if (p.enqueuedNanos != 0) {
+            BridgeMetrics.Stage.QUEUE.recordSince(p.enqueuedNanos);
+        }
+        try {
+            byte[] alert = p.encode();
+            BridgeLog.info("alert", p.json ? "🚨 ALERT: {}" : "{}", BridgeLog.utf8(alert));
+            long publishStart = System.nanoTime();
+            publisher.publish(p.routingKey, p.json ? AlertEncoder.JSON_PROPERTIES : null, alert);
+            BridgeMetrics.Stage.PUBLISH.recordSince(publishStart);
+        } catch (Exception e) {
+            BridgeMetrics.PUBLISH_FAILURES.increment();
+            BridgeLog.error("alert", e, "❌ Failed to publish alert: {}", e.getMessage());
+            if (spill != null && p.body != null && running) {
+                spill(p);
+                Thread.sleep(RETRY_BACKOFF_MS); // broker is likely down: don't spin on the spill file
+            }
+        }
+    }
+
+    /** An alert AlertPublisher published but the broker did not confirm. */
+    private void undelivered(String routingKey, AMQP.BasicProperties props, byte[] body) {
+        Pending p = new Pending(routingKey, props != null, body);
+        if (spill != null) {
+            spill(p);
+        } else if (!queue.offer(p)) {
+            BridgeMetrics.ALERTS_DROPPED.increment();
+            BridgeLog.warn("alert-queue", "⚠️ Alert queue full: dropped unconfirmed alert");
+        }
+    }
+
+    private void spill(Pending p) {
+        try {
+            p.encode();
+            spill.append(p.routingKey, p.json, p.body);
+            BridgeMetrics.ALERTS_SPILLED.increment();
+        } catch (IOException e) {
+            BridgeMetrics.ALERTS_DROPPED.increment();
+            BridgeLog.error("alert-queue", e, "❌ Could not spill alert: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Stops accepting work, lets the dispatchers drain the queue (up to
+     * alerts.drainTimeoutMs), waits for the publisher's outstanding confirms and
+     * spills or drops what is left, including alerts the broker did not confirm.
+     * Close the AlertPublisher afterwards.
+     */
+    @Override
+    public void close() {
+        running = false;
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+        for (Thread t : threads) {
+            try {
+                t.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        threads.forEach(Thread::interrupt);
+        // Unconfirmed alerts come back through undelivered() while the spill file is still open
+        publisher.flush();
+
+        List<Pending> left = new ArrayList<>();
+        queue.drainTo(left);
+        for (Pending p : left) {
+            if (spill != null) {
+                spill(p);
+            } else {
+                BridgeMetrics.ALERTS_DROPPED.increment();
+            }
+        }
+        if (!left.isEmpty()) {
+            System.err.println("⚠️ Alert dispatcher closed with " + left.size() + " undelivered alert(s)"
+                    + (spill != null ? " (spilled)" : " (dropped)"));
+        }
+        if (spill != null) {
+            spill.close();
+        }
+    }
+
+    // === Spill file: [keyLen:int][key][json:byte][bodyLen:int][body] records, read front to back ===
+
+    private static final class SpillFile {
+        private final RandomAccessFile file;
+        private long readPos;
+        private long backlog;
+
+        SpillFile(File path) throws IOException {
+            this.file = new RandomAccessFile(path, "rw");
+            recover();
+        }
+
+        /** Counts the records left by a previous run and cuts off a torn last record. */
+        private void recover() throws IOException {
+            long pos = 0;
+            long length = file.length();
+            while (pos + 4 <= length) {
+                file.seek(pos);
+                int keyLen = file.readInt();
+                if (pos + 4 + keyLen + 1 + 4 > length) {
+                    break;
+                }
+                file.seek(pos + 4 + keyLen + 1);
+                int bodyLen = file.readInt();
+                long end = pos + 4 + keyLen + 1 + 4 + bodyLen;
+                if (end > length) {
+                    break;
+                }
+                pos = end;
+                backlog++;
+            }
+            if (pos != length) {
+                file.setLength(pos);
+            }
+        }
+
+        synchronized long backlog() {
+            return backlog;
+        }
+
+        synchronized void append(String routingKey, boolean json, byte[] body) throws IOException {
+            byte[] key = routingKey.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer record = ByteBuffer.allocate(4 + key.length + 1 + 4 + body.length);
+            record.putInt(key.length).put(key).put((byte) (json ? 1 : 0)).putInt(body.length).put(body);
+            file.seek(file.length());
+            file.write(record.array());
+            // Durable before the alert counts as spilled: a crash must not lose it
+            file.getChannel().force(false);
+            backlog++;
+        }
+
+        /** Next spilled alert, or null when the file is fully replayed (it is then truncated). */
+        synchronized Pending next() throws IOException {
+            if (backlog == 0) {
+                if (readPos > 0) {
+                    file.setLength(0);
+                    readPos = 0;
+                }
+                return null;
+            }
+            file.seek(readPos);
+            byte[] key = new byte[file.readInt()];
+            file.readFully(key);
+            boolean json = file.readByte() == 1;
+            byte[] body = new byte[file.readInt()];
+            file.readFully(body);
+            readPos = file.getFilePointer();
+            backlog--;
+            return new Pending(new String(key, StandardCharsets.UTF_8), json, body);
+        }
+
+        synchronized void close() {
+            try {
+                // Keep only what was not replayed, so the next start resumes there
+                if (readPos > 0) {
+                    long remaining = file.length() - readPos;
+                    byte[] rest = new byte[(int) remaining];
+                    file.seek(readPos);
+                    file.readFully(rest);
+                    file.setLength(0);
+                    file.write(rest);
+                    file.getChannel().force(false);
+                    readPos = 0;
+                }
+                file.close();
+            } catch (IOException e) {
+                System.err.println("⚠️ Could not compact alert spill file: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+import com.espertech.esper.common.client.EventBean;
+import com.espertech.esper.runtime.client.EPStatement;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.rabbitmq.client.AMQP;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+
+/**
+ * Encodes alerts for one deployed rule statement.
+ *
+ * An encoder is built once per statement at deployment time: the rule context
+ * (ruleId, contractId, chaincodeName, chaincodeFunction) and the statement's
+ * select-clause property names are captured up front, so a firing only reads
+ * the event properties and writes them.
+ *
+ * Default wire format (versioned JSON, content-type application/json, type symboleo.alert.v1):
+ *   {"v":1,"ruleId":..,"contractId":..,"chaincodeName":..,"chaincodeFunction":..,
+ *    "sensorId":..,"sensorTimestamp":..,"cnt":..,"avgValue":..,"alertTimestamp":..}
+ * i.e. the rule context followed by every select-clause property. JSON is written
+ * with a shared JsonFactory into a per-thread reusable buffer.
+ *
+ * -Dalerts.format=legacy keeps the old "🚨 ALERT: {sensorId=.., ...}" text.
+ */
+public class AlertEncoder {
+
+    public static final int VERSION = 1;
+    public static final String FORMAT_JSON = "json";
+    public static final String FORMAT_LEGACY = "legacy";
+    public static final String FORMAT = System.getProperty("alerts.format", FORMAT_JSON);
+
+    public static final AMQP.BasicProperties JSON_PROPERTIES = new AMQP.BasicProperties.Builder()
+            .contentType("application/json")
+            .type("symboleo.alert.v" + VERSION)
+            .build();
+
+    private static final DateTimeFormatter ALERT_TS = DateTimeFormatter.ofPattern("yyyy-MM-dd-HH:mm:ss");
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final ThreadLocal<ByteArrayBuilder> BUFFER = ThreadLocal.withInitial(() -> new ByteArrayBuilder(512));
+
+    // The timestamp only has second resolution: format it at most once per second
+    private static volatile CachedTimestamp lastTimestamp = new CachedTimestamp(Long.MIN_VALUE, "");
+
+    private static final class CachedTimestamp {
+        final long epochSecond;
+        final String text;
+
+        CachedTimestamp(long epochSecond, String text) {
+            this.epochSecond = epochSecond;
+            this.text = text;
+        }
+    }
+
+    private final String ruleId;
+    private final String contractId;
+    private final String chaincodeName;
+    private final String chaincodeFunction;
+    private final String[] propertyNames;
+    private final String routingKey;
+
+    public AlertEncoder(EPStatement stmt, String contractId, Map<String, Object> rule) {
+        this(stmt.getEventType().getPropertyNames(), contractId, rule);
+    }
+
+    /** For alerts not produced by an Esper statement (IncrementalRule): the select's property names. */
+    public AlertEncoder(String[] propertyNames, String contractId, Map<String, Object> rule) {
+        this.ruleId = str(rule.get("id"));
+        this.contractId = contractId != null ? contractId : str(rule.get("contractId"));
+        this.chaincodeName = str(rule.get("chaincodeName"));
+        this.chaincodeFunction = str(rule.get("chaincodeFunction"));
+        this.propertyNames = propertyNames;
+        this.routingKey = AlertPublisher.routingKey(this.contractId, chaincodeName, ruleId);
+    }
+
+    /** Routing key of this rule's alerts on the alerts exchange. */
+    public String routingKey() {
+        return routingKey;
+    }
+
+    public String getRuleId() {
+        return ruleId;
+    }
+
+    public String getContractId() {
+        return contractId;
+    }
+
+    public String getChaincodeName() {
+        return chaincodeName;
+    }
+
+    public boolean isLegacy() {
+        return FORMAT_LEGACY.equals(FORMAT);
+    }
+
+    /** AMQP properties matching encode()'s output (null for the legacy text format). */
+    public AMQP.BasicProperties properties() {
+        return isLegacy() ? null : JSON_PROPERTIES;
+    }
+
+    /** Encodes the alert in the configured format. */
+    public byte[] encode(EventBean event) throws IOException {
+        return isLegacy()
+                ? legacyText(event).getBytes(StandardCharsets.UTF_8)
+                : encodeJson(event);
+    }
+
+    public byte[] encodeJson(EventBean event) throws IOException {
+        ByteArrayBuilder buffer = BUFFER.get();
+        buffer.reset();
+        try (JsonGenerator gen = JSON.createGenerator(buffer)) {
+            gen.writeStartObject();
+            gen.writeNumberField("v", VERSION);
+            gen.writeStringField("ruleId", ruleId);
+            gen.writeStringField("contractId", contractId);
+            gen.writeStringField("chaincodeName", chaincodeName);
+            gen.writeStringField("chaincodeFunction", chaincodeFunction);
+            for (String name : propertyNames) {
+                gen.writeFieldName(name);
+                writeValue(gen, event.get(name));
+            }
+            gen.writeStringField("alertTimestamp", alertTimestamp());
+            gen.writeEndObject();
+        }
+        return buffer.toByteArray();
+    }
+
+    /** The pre-v1 alert line: the event's map form with alertTimestamp appended. */
+    public String legacyText(EventBean event) {
+        String underlying = String.valueOf(event.getUnderlying());
+        StringBuilder sb = new StringBuilder(underlying.length() + 48).append("🚨 ALERT: ");
+        if (underlying.endsWith("}")) {
+            sb.append(underlying, 0, underlying.length() - 1);
+        } else {
+            sb.append(underlying);
+        }
+        return sb.append(", alertTimestamp=").append(alertTimestamp()).append('}').toString();
+    }
+
+    static String alertTimestamp() {
+        long nowSecond = System.currentTimeMillis() / 1000;
+        CachedTimestamp cached = lastTimestamp;
+        if (cached.epochSecond != nowSecond) {
+            cached = new CachedTimestamp(nowSecond, LocalDateTime.now().format(ALERT_TS));
+            lastTimestamp = cached;
+        }
+        return cached.text;
+    }
+
+    private static void writeValue(JsonGenerator gen, Object value) throws IOException {
+        if (value == null) {
+            gen.writeNull();
+        } else if (value instanceof Double) {
+            double d = (Double) value;
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                gen.writeNull();
+            } else {
+                gen.writeNumber(d);
+            }
+        } else if (value instanceof Long) {
+            gen.writeNumber((Long) value);
+        } else if (value instanceof Integer) {
+            gen.writeNumber((Integer) value);
+        } else if (value instanceof Number) {
+            gen.writeNumber(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            gen.writeBoolean((Boolean) value);
+        } else {
+            gen.writeString(value.toString());
+        }
+    }
+
+    private static String str(Object o) {
+        return o == null ? null : o.toString();
+    }
+}
@@ -0,0 +1,290 @@
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.Connection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived alert publisher shared by all statement listeners.
+ *
+ * One AMQP connection is opened lazily and kept for the lifetime of the bridge.
+ * Alerts are published on a small pool of confirm-mode channels; the alerts
+ * exchange is declared once per channel when it is created. Publisher confirms
+ * are awaited in batches (every {@code alerts.confirmBatch} messages per channel)
+ * and by a background flusher every {@code alerts.flushMs} milliseconds, so a
+ * listener never pays a TLS handshake or a broker round-trip per alert.
+ *
+ * Until the broker confirms them, the alerts published on a channel are kept by
+ * publish sequence number (acks remove them as they arrive). When the broker nacks,
+ * a confirm wait times out or the channel dies, every alert still unconfirmed on
+ * that channel goes to the UndeliveredHandler (AlertDispatcher spills or requeues
+ * it), not only the one being published.
+ *
+ * Tunables (JVM system properties):
+ *   alerts.channels      size of the channel pool (default 4)
+ *   alerts.confirmBatch  unconfirmed messages per channel before waiting (default 64)
+ *   alerts.flushMs       background confirm flush interval in ms (default 200)
+ *   alerts.confirmTimeoutMs  max wait for a batch of confirms (default 5000)
+ *
+ * Alerts exchange (forAlerts()): by default the topic exchange "alerts.routed", with
+ * routing key "&lt;contractId&gt;.&lt;chaincodeName&gt;.&lt;ruleId&gt;" (dots and wildcards in a
+ * segment become "_"), so a subscriber binds only the contracts it serves, e.g.
+ * "MeatSaleC_123.#" or "*.vaccineprocurementc.#". -Dalerts.fanout=true keeps the
+ * previous fanout exchange "alerts", where every subscriber gets every alert.
+ * -Dalerts.exchange overrides the exchange name.
+ */
+public class AlertPublisher implements AutoCloseable {
+
+    /** Opens a new broker connection (e.g. EsperBridge::getRabbitConnection). */
+    public interface ConnectionSupplier {
+        Connection get() throws Exception;
+    }
+
+    /** Takes back an alert the broker did not confirm. */
+    public interface UndeliveredHandler {
+        void undelivered(String routingKey, AMQP.BasicProperties props, byte[] body);
+    }
+
+    public static final boolean FANOUT = Boolean.getBoolean("alerts.fanout");
+    public static final String ALERTS_EXCHANGE = System.getProperty("alerts.exchange", FANOUT ? "alerts" : "alerts.routed");
+    public static final String ALERTS_EXCHANGE_TYPE = FANOUT ? "fanout" : "topic";
+    /** Binding key that receives every alert on ALERTS_EXCHANGE. */
+    public static final String ALL_ALERTS = FANOUT ? "" : "#";
+
+    private static final int POOL_SIZE = Integer.getInteger("alerts.channels", 4);
+    private static final int CONFIRM_BATCH = Integer.getInteger("alerts.confirmBatch", 64);
+    private static final long FLUSH_INTERVAL_MS = Long.getLong("alerts.flushMs", 200L);
+    private static final long CONFIRM_TIMEOUT_MS = Long.getLong("alerts.confirmTimeoutMs", 5000L);
+
+    private final ConnectionSupplier connectionSupplier;
+    private final String exchange;
+    private final String exchangeType;
+    private final BlockingQueue<PooledChannel> pool;
+    private final ScheduledExecutorService flusher;
+
+    private volatile Connection connection;
+    private volatile boolean closed;
+    private volatile UndeliveredHandler undeliveredHandler;
+
+    /** A pooled channel plus the publishes not yet confirmed on it, by sequence number. */
+    private static final class PooledChannel {
+        Channel channel;
+        int unconfirmed;
+        ConcurrentNavigableMap<Long, Unconfirmed> outstanding = new ConcurrentSkipListMap<>(); // per channel
+    }
+
+    private static final class Unconfirmed {
+        final String routingKey;
+        final AMQP.BasicProperties props;
+        final byte[] body;
+
+        Unconfirmed(String routingKey, AMQP.BasicProperties props, byte[] body) {
+            this.routingKey = routingKey;
+            this.props = props;
+            this.body = body;
+        }
+    }
+
+    public AlertPublisher(ConnectionSupplier connectionSupplier, String exchange, String exchangeType) {
+        this.connectionSupplier = connectionSupplier;
+        this.exchange = exchange;
+        this.exchangeType = exchangeType;
+        this.pool = new ArrayBlockingQueue<>(POOL_SIZE);
+        for (int i = 0; i < POOL_SIZE; i++) {
+            pool.add(new PooledChannel());
+        }
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "alert-confirm-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /** The publisher for rule alerts, on ALERTS_EXCHANGE. */
+    public static AlertPublisher forAlerts(ConnectionSupplier connectionSupplier) {
+        return new AlertPublisher(connectionSupplier, ALERTS_EXCHANGE, ALERTS_EXCHANGE_TYPE);
+    }
+
+    /** Where alerts the broker did not confirm go; without one they are logged and lost. */
+    public void onUndelivered(UndeliveredHandler handler) {
+        this.undeliveredHandler = handler;
+    }
+
+    /** Topic routing key of a rule's alerts: contractId.chaincodeName.ruleId. */
+    public static String routingKey(String contractId, String chaincodeName, String ruleId) {
+        return segment(contractId) + "." + segment(chaincodeName) + "." + segment(ruleId);
+    }
+
+    private static String segment(String word) {
+        if (word == null || word.isEmpty()) {
+            return "_";
+        }
+        return word.replace('.', '_').replace('*', '_').replace('#', '_');
+    }
+
+    /** Publishes a plain alert with an empty routing key. */
+    public void publish(byte[] body) throws Exception {
+        publish("", null, body);
+    }
+
+    public void publish(String routingKey, AMQP.BasicProperties props, byte[] body) throws Exception {
+        if (closed) {
+            throw new IllegalStateException("AlertPublisher is closed");
+        }
+
+        PooledChannel pc = pool.take();
+        try {
+            try {
+                basicPublish(pc, routingKey, props, body);
+            } catch (Exception e) {
+                // Channel or connection died: hand back what it had not confirmed, retry on a fresh channel
+                fail(pc);
+                basicPublish(pc, routingKey, props, body);
+            }
+
+            if (++pc.unconfirmed >= CONFIRM_BATCH) {
+                awaitConfirms(pc); // on failure this alert, like the rest of the batch, is handed back
+            }
+        } finally {
+            pool.put(pc);
+        }
+    }
+
+    /** Waits for outstanding confirms on every idle channel (runs on the flusher thread). */
+    public void flush() {
+        List<PooledChannel> drained = new ArrayList<>(POOL_SIZE);
+        pool.drainTo(drained);
+        try {
+            for (PooledChannel pc : drained) {
+                if (pc.unconfirmed > 0 || !pc.outstanding.isEmpty()) {
+                    awaitConfirms(pc);
+                }
+            }
+        } finally {
+            pool.addAll(drained);
+        }
+    }
+
+    private void basicPublish(PooledChannel pc, String routingKey, AMQP.BasicProperties props, byte[] body)
+            throws Exception {
+        Channel channel = ensureChannel(pc);
+        long seqNo = channel.getNextPublishSeqNo();
+        pc.outstanding.put(seqNo, new Unconfirmed(routingKey, props, body));
+        try {
+            channel.basicPublish(exchange, routingKey, props, body);
+        } catch (Exception e) {
+            pc.outstanding.remove(seqNo); // the caller retries or reports this one itself
+            throw e;
+        }
+    }
+
+    /** Waits for the channel's confirms; on a nack or timeout everything unconfirmed is handed back. */
+    private void awaitConfirms(PooledChannel pc) {
+        pc.unconfirmed = 0;
+        try {
+            pc.channel.waitForConfirmsOrDie(CONFIRM_TIMEOUT_MS);
+            pc.outstanding.clear(); // every publish so far is acked
+        } catch (Exception e) {
+            int pending = fail(pc);
+            BridgeMetrics.PUBLISH_FAILURES.add(pending);
+            BridgeLog.warn("publish", "❌ Broker did not confirm {} alert(s): {}", pending, e.getMessage());
+        }
+    }
+
+    /** Drops the channel and hands every alert it had not confirmed to the UndeliveredHandler. */
+    private int fail(PooledChannel pc) {
+        discard(pc);
+        List<Unconfirmed> lost = new ArrayList<>(pc.outstanding.values());
+        pc.outstanding = new ConcurrentSkipListMap<>();
+        UndeliveredHandler handler = undeliveredHandler;
+        for (Unconfirmed u : lost) {
+            if (handler != null) {
+                handler.undelivered(u.routingKey, u.props, u.body);
+            } else {
+                BridgeLog.warn("publish", "❌ Unconfirmed alert lost ({}): {}", u.routingKey, BridgeLog.utf8(u.body));
+            }
+        }
+        return lost.size();
+    }
+
+    private Channel ensureChannel(PooledChannel pc) throws Exception {
+        if (pc.channel != null && pc.channel.isOpen()) {
+            return pc.channel;
+        }
+        if (!pc.outstanding.isEmpty()) {
+            fail(pc); // closed under us before its confirms came in
+        }
+        Channel channel = ensureConnection().createChannel();
+        channel.exchangeDeclare(exchange, exchangeType, true);
+        channel.confirmSelect();
+        ConcurrentNavigableMap<Long, Unconfirmed> outstanding = new ConcurrentSkipListMap<>();
+        pc.outstanding = outstanding;
+        channel.addConfirmListener(new ConfirmListener() {
+            @Override
+            public void handleAck(long deliveryTag, boolean multiple) {
+                if (multiple) {
+                    outstanding.headMap(deliveryTag, true).clear();
+                } else {
+                    outstanding.remove(deliveryTag);
+                }
+            }
+
+            @Override
+            public void handleNack(long deliveryTag, boolean multiple) {
+                // Kept: waitForConfirmsOrDie fails on the nack and fail() hands them back
+            }
+        });
+        pc.channel = channel;
+        pc.unconfirmed = 0;
+        return channel;
+    }
+
+    private synchronized Connection ensureConnection() throws Exception {
+        if (connection == null || !connection.isOpen()) {
+            connection = connectionSupplier.get();
+            System.out.println("🔗 Alert publisher connected to broker.");
+        }
+        return connection;
+    }
+
+    private void discard(PooledChannel pc) {
+        try {
+            if (pc.channel != null && pc.channel.isOpen()) {
+                pc.channel.close();
+            }
+        } catch (Exception ignored) {}
+        pc.channel = null;
+        pc.unconfirmed = 0;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        flusher.shutdown();
+        flush();
+        List<PooledChannel> drained = new ArrayList<>(POOL_SIZE);
+        pool.drainTo(drained);
+        for (PooledChannel pc : drained) {
+            if (pc.outstanding.isEmpty()) {
+                discard(pc);
+            } else {
+                fail(pc);
+            }
+        }
+        try {
+            if (connection != null && connection.isOpen()) {
+                connection.close();
+            }
+        } catch (Exception ignored) {}
+    }
+}
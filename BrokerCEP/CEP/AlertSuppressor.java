@@ -0,0 +1,143 @@
+import com.espertech.esper.common.client.EventBean;
+import com.espertech.esper.runtime.client.EPStatement;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Per-rule alert suppression, so one excursion becomes one chaincode transaction
+ * instead of one per matching reading.
+ *
+ * A rule opts in with a "suppress" object in its rules JSON entry:
+ *
+ *   "suppress": {"mode": "cooldown", "period": "5 min"}
+ *       at most one alert per period
+ *   "suppress": {"mode": "episode", "quiet": "2 min"}
+ *       only the first alert of an episode; the episode ends once the rule has not
+ *       fired for "quiet"
+ *   "suppress": {"mode": "periodic", "period": "10 min", "quiet": "2 min"}
+ *       the first alert of an episode, then one more every period while it lasts
+ *
+ * Periods use Esper's time-period syntax ("30 sec", "1 hour 15 min") or plain
+ * milliseconds. "quiet" defaults to the rule's time window (a new episode can only
+ * start after the window has emptied), or 1 min for rules without one.
+ *
+ * State is kept per (contractId, ruleId, sensorId): one suppressor per deployed
+ * statement, keyed by the alert's sensorId (the rule's sensorId if the select list
+ * has none). Time is Esper time, so replays in event time suppress as live runs do.
+ * A redeployed rule starts with no open episodes.
+ */
+public class AlertSuppressor {
+
+    public enum Mode { COOLDOWN, EPISODE, PERIODIC }
+
+    private static final long DEFAULT_QUIET_MS = 60_000L;
+    private static final int PRUNE_THRESHOLD = 1024;
+
+    private final Mode mode;
+    private final long periodMs;
+    private final long quietMs;
+    private final String ruleSensorId;
+    private final boolean selectsSensorId;
+    private final Map<String, Episode> episodes = new HashMap<>();
+
+    private static final class Episode {
+        long lastFiring;
+        long lastSent;
+    }
+
+    AlertSuppressor(Mode mode, long periodMs, long quietMs, String ruleSensorId, boolean selectsSensorId) {
+        this.mode = mode;
+        this.periodMs = periodMs;
+        this.quietMs = quietMs;
+        this.ruleSensorId = ruleSensorId;
+        this.selectsSensorId = selectsSensorId;
+    }
+
+    /** The rule's suppressor, or null if the rule has no (valid) "suppress" entry. */
+    public static AlertSuppressor forRule(EPStatement stmt, String contractId, Map<String, Object> rule) {
+        return forRule(stmt.getEventType().getPropertyNames(), contractId, rule);
+    }
+
+    /** As above, given the property names of the rule's alerts. */
+    public static AlertSuppressor forRule(String[] propertyNames, String contractId, Map<String, Object> rule) {
+        Object spec = rule.get("suppress");
+        if (!(spec instanceof Map)) {
+            return null;
+        }
+        Map<?, ?> config = (Map<?, ?>) spec;
+        String ruleKey = (contractId != null ? contractId : rule.get("contractId")) + "/" + rule.get("id");
+        Mode mode;
+        try {
+            mode = Mode.valueOf(String.valueOf(config.get("mode")).trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("⚠️ Rule " + ruleKey + ": unknown suppress mode " + config.get("mode") + ", alerts not suppressed.");
+            return null;
+        }
+        long period = RuleEplBuilder.periodMillis(config.get("period") == null ? null : String.valueOf(config.get("period")));
+        if (mode != Mode.EPISODE && period <= 0) {
+            System.err.println("⚠️ Rule " + ruleKey + ": suppress mode " + mode + " needs a period, alerts not suppressed.");
+            return null;
+        }
+        long quiet = RuleEplBuilder.periodMillis(config.get("quiet") == null ? null : String.valueOf(config.get("quiet")));
+        if (quiet <= 0) {
+            long window = RuleEplBuilder.timeWindowMillis((String) rule.get("window"));
+            quiet = window > 0 ? window : DEFAULT_QUIET_MS;
+        }
+        boolean selectsSensorId = Arrays.asList(propertyNames).contains("sensorId");
+        return new AlertSuppressor(mode, period, quiet, (String) rule.get("sensorId"), selectsSensorId);
+    }
+
+    /**
+     * Records a firing of the rule at Esper time now; returns true if it should be
+     * sent as an alert, false if it is suppressed.
+     */
+    public synchronized boolean admit(EventBean alert, long now) {
+        Object sensorId = selectsSensorId ? alert.get("sensorId") : null;
+        String key = sensorId != null ? sensorId.toString() : ruleSensorId;
+
+        Episode episode = episodes.get(key);
+        boolean send;
+        if (episode == null) {
+            if (episodes.size() >= PRUNE_THRESHOLD) {
+                prune(now);
+            }
+            episode = new Episode();
+            episodes.put(key, episode);
+            send = true;
+        } else {
+            boolean newEpisode = now - episode.lastFiring > quietMs;
+            switch (mode) {
+                case COOLDOWN:
+                    send = now - episode.lastSent >= periodMs;
+                    break;
+                case EPISODE:
+                    send = newEpisode;
+                    break;
+                default:
+                    send = newEpisode || now - episode.lastSent >= periodMs;
+            }
+        }
+        episode.lastFiring = now;
+        if (send) {
+            episode.lastSent = now;
+        }
+        return send;
+    }
+
+    /** Forgets sensors whose episode and cooldown are both over. */
+    private void prune(long now) {
+        for (Iterator<Episode> it = episodes.values().iterator(); it.hasNext(); ) {
+            Episode e = it.next();
+            if (now - e.lastFiring > quietMs && now - e.lastSent >= periodMs) {
+                it.remove();
+            }
+        }
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+}
@@ -0,0 +1,381 @@
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous logging for the bridge hot paths (ingestion, verification, alerts).
+ *
+ * Callers only run a level check, a per-category rate-limit check and a CAS into a
+ * bounded lock-free ring buffer; message formatting ("{}" placeholders), console I/O
+ * and stack traces happen on a single background writer thread. When the ring is
+ * full the entry is dropped and counted, so logging never blocks a caller. The
+ * writer flushes once it has drained the ring and then parks until the next entry
+ * arrives (at most 100 ms, should a wake-up be missed).
+ *
+ * Each category (e.g. "reading", "identity", "ingest", "alert") may emit at most
+ * -Dlog.rate.<category> (default -Dlog.ratePerSec, 50) messages per second. Beyond
+ * that, one message in -Dlog.sampleEvery (default 100) is still written, marked
+ * "(sampled)", and a "N suppressed" line is emitted when the next second starts.
+ *
+ * Rejected sensor messages are additionally written, unthrottled, as compact CSV
+ * lines (instant,reason,sensorId) to a separate audit file (-Daudit.file,
+ * default rejected-sensors.audit.log). The sensorId comes from the message, so
+ * control characters in it are written as a backslash, "u" and four hex digits,
+ * and it is quoted ("" for a quote) if it contains a comma or a quote: each
+ * rejection stays one well-formed line.
+ *
+ * Levels: DEBUG < INFO < WARN < ERROR, threshold -Dlog.level (default INFO).
+ */
+public class BridgeLog {
+
+    public enum Level { DEBUG, INFO, WARN, ERROR, AUDIT }
+
+    private static final Level THRESHOLD = Level.valueOf(System.getProperty("log.level", "INFO").toUpperCase());
+    private static final int DEFAULT_RATE = Integer.getInteger("log.ratePerSec", 50);
+    private static final int SAMPLE_EVERY = Math.max(1, Integer.getInteger("log.sampleEvery", 100));
+    private static final int CAPACITY = Integer.highestOneBit(Math.max(1024, Integer.getInteger("log.bufferSize", 65536)));
+    private static final String AUDIT_FILE = System.getProperty("audit.file", "rejected-sensors.audit.log");
+
+    private static final Ring RING = new Ring(CAPACITY);
+    private static final ConcurrentHashMap<String, Limiter> LIMITERS = new ConcurrentHashMap<>();
+    private static final AtomicLong DROPPED = new AtomicLong();
+    private static final AtomicLong AUDITED = new AtomicLong();
+    private static final long IDLE_PARK_NANOS = 100_000_000L;
+
+    private static final Thread WRITER = new Thread(BridgeLog::drainLoop, "bridge-log-writer");
+    private static volatile boolean writerParked;
+
+    static {
+        WRITER.setDaemon(true);
+        WRITER.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(BridgeLog::flushRemaining, "bridge-log-flush"));
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level.compareTo(THRESHOLD) >= 0;
+    }
+
+    public static void debug(String category, String template, Object... args) {
+        log(Level.DEBUG, category, null, template, args);
+    }
+
+    public static void info(String category, String template, Object... args) {
+        log(Level.INFO, category, null, template, args);
+    }
+
+    public static void warn(String category, String template, Object... args) {
+        log(Level.WARN, category, null, template, args);
+    }
+
+    public static void error(String category, Throwable error, String template, Object... args) {
+        log(Level.ERROR, category, error, template, args);
+    }
+
+    /** Records a rejected sensor message in the audit file (not rate limited). */
+    public static void audit(String sensorId, String reason) {
+        if (RING.offer(new Entry(Level.AUDIT, reason, sensorId, null, null, false))) {
+            AUDITED.incrementAndGet();
+            wakeWriter();
+        } else {
+            DROPPED.incrementAndGet();
+        }
+    }
+
+    /** Wraps UTF-8 bytes so they are only decoded if the message is actually written. */
+    public static Object utf8(byte[] bytes) {
+        return new Object() {
+            @Override
+            public String toString() {
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+    }
+
+    public static long droppedCount() {
+        return DROPPED.get();
+    }
+
+    public static long auditedCount() {
+        return AUDITED.get();
+    }
+
+    private static void log(Level level, String category, Throwable error, String template, Object[] args) {
+        if (!isEnabled(level)) {
+            return;
+        }
+        Limiter limiter = LIMITERS.computeIfAbsent(category, Limiter::new);
+        int verdict = limiter.admit();
+        if (verdict == Limiter.DENY) {
+            return;
+        }
+        Entry e = new Entry(level, category, template, args, error, verdict == Limiter.SAMPLED);
+        if (RING.offer(e)) {
+            wakeWriter();
+        } else {
+            DROPPED.incrementAndGet();
+        }
+    }
+
+    /** Unparks the writer if it is idle; a plain volatile read otherwise. */
+    private static void wakeWriter() {
+        if (writerParked) {
+            writerParked = false;
+            LockSupport.unpark(WRITER);
+        }
+    }
+
+    // === Rate limiting + sampling, per category, fixed one-second windows ===
+
+    private static final class Limiter {
+        static final int ALLOW = 0, SAMPLED = 1, DENY = 2;
+
+        final String category;
+        final int limit;
+        volatile long windowStart = System.currentTimeMillis();
+        final AtomicInteger count = new AtomicInteger();
+        final AtomicLong suppressed = new AtomicLong();
+
+        Limiter(String category) {
+            this.category = category;
+            this.limit = Integer.getInteger("log.rate." + category, DEFAULT_RATE);
+        }
+
+        int admit() {
+            long now = System.currentTimeMillis();
+            long start = windowStart;
+            if (now - start >= 1000) {
+                synchronized (this) {
+                    if (windowStart == start) {
+                        windowStart = now;
+                        count.set(0);
+                        long n = suppressed.getAndSet(0);
+                        if (n > 0) {
+                            RING.offer(new Entry(Level.WARN, category,
+                                    "… {} '{}' message(s) suppressed in the last second",
+                                    new Object[]{n, category}, null, false));
+                        }
+                    }
+                }
+            }
+            if (count.incrementAndGet() <= limit) {
+                return ALLOW;
+            }
+            long n = suppressed.incrementAndGet();
+            return n % SAMPLE_EVERY == 0 ? SAMPLED : DENY;
+        }
+    }
+
+    // === Bounded multi-producer / single-consumer ring (sequence-per-slot, no locks) ===
+
+    private static final class Entry {
+        final long millis = System.currentTimeMillis();
+        final Level level;
+        final String category;
+        final String template;
+        final Object[] args;
+        final Throwable error;
+        final boolean sampled;
+
+        Entry(Level level, String category, String template, Object[] args, Throwable error, boolean sampled) {
+            this.level = level;
+            this.category = category;
+            this.template = template;
+            this.args = args;
+            this.error = error;
+            this.sampled = sampled;
+        }
+    }
+
+    private static final class Ring {
+        final int mask;
+        final Entry[] slots;
+        final AtomicLongArray sequence;
+        final AtomicLong tail = new AtomicLong();
+        long head; // consumer thread only
+
+        Ring(int capacity) {
+            mask = capacity - 1;
+            slots = new Entry[capacity];
+            sequence = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                sequence.set(i, i);
+            }
+        }
+
+        boolean offer(Entry e) {
+            long pos = tail.get();
+            while (true) {
+                int idx = (int) (pos & mask);
+                long diff = sequence.get(idx) - pos;
+                if (diff == 0) {
+                    if (tail.compareAndSet(pos, pos + 1)) {
+                        slots[idx] = e;
+                        sequence.lazySet(idx, pos + 1);
+                        return true;
+                    }
+                    pos = tail.get();
+                } else if (diff < 0) {
+                    return false; // full
+                } else {
+                    pos = tail.get();
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return sequence.get((int) (head & mask)) != head + 1;
+        }
+
+        Entry poll() {
+            int idx = (int) (head & mask);
+            if (sequence.get(idx) != head + 1) {
+                return null;
+            }
+            Entry e = slots[idx];
+            slots[idx] = null;
+            sequence.lazySet(idx, head + mask + 1);
+            head++;
+            return e;
+        }
+    }
+
+    // === Writer thread ===
+
+    private static final Writer OUT = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+    private static final Writer ERR = new BufferedWriter(new OutputStreamWriter(System.err, StandardCharsets.UTF_8), 1 << 14);
+    private static Writer audit;
+    private static long reportedDrops;
+
+    private static void drainLoop() {
+        boolean dirty = false;
+        while (true) {
+            if (drainOnce()) {
+                dirty = true;
+                continue;
+            }
+            if (dirty) {
+                flushAll();
+                dirty = false;
+            }
+            // Announce the park, then re-check: an entry offered before the flag was seen is not missed
+            writerParked = true;
+            if (RING.isEmpty()) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+            writerParked = false;
+        }
+    }
+
+    private static synchronized boolean drainOnce() {
+        boolean any = false;
+        Entry e;
+        while ((e = RING.poll()) != null) {
+            any = true;
+            try {
+                write(e);
+            } catch (IOException ignored) {
+            }
+        }
+        long drops = DROPPED.get();
+        if (drops != reportedDrops) {
+            try {
+                ERR.write("⚠️ log buffer full: " + (drops - reportedDrops) + " message(s) dropped\n");
+            } catch (IOException ignored) {
+            }
+            reportedDrops = drops;
+        }
+        return any;
+    }
+
+    private static void write(Entry e) throws IOException {
+        if (e.level == Level.AUDIT) {
+            if (audit == null) {
+                audit = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(AUDIT_FILE, true), StandardCharsets.UTF_8), 1 << 14);
+            }
+            audit.write(Instant.ofEpochMilli(e.millis) + "," + e.category + "," + csvField(e.template) + "\n");
+            return;
+        }
+
+        Writer w = e.level.compareTo(Level.WARN) >= 0 ? ERR : OUT;
+        w.write(format(e.template, e.args));
+        if (e.sampled) {
+            w.write(" (sampled)");
+        }
+        w.write('\n');
+        if (e.error != null) {
+            StringWriter trace = new StringWriter();
+            e.error.printStackTrace(new PrintWriter(trace));
+            w.write(trace.toString());
+        }
+    }
+
+    /** A CSV field on one line: control characters escaped as backslash-u-hex, quoted if it holds a comma or a quote. */
+    static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder sb = null;
+        boolean quote = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x20 || c == 0x7f) {
+                if (sb == null) {
+                    sb = new StringBuilder(value.length() + 8).append(value, 0, i);
+                }
+                sb.append(String.format("\\u%04x", (int) c));
+                continue;
+            }
+            if (c == ',' || c == '"') {
+                quote = true;
+            }
+            if (sb != null) {
+                sb.append(c);
+            }
+        }
+        String escaped = sb == null ? value : sb.toString();
+        return quote ? '"' + escaped.replace("\"", "\"\"") + '"' : escaped;
+    }
+
+    static String format(String template, Object[] args) {
+        if (args == null || args.length == 0) {
+            return template;
+        }
+        StringBuilder sb = new StringBuilder(template.length() + 16 * args.length);
+        int from = 0;
+        int arg = 0;
+        int at;
+        while (arg < args.length && (at = template.indexOf("{}", from)) >= 0) {
+            sb.append(template, from, at).append(args[arg++]);
+            from = at + 2;
+        }
+        return sb.append(template, from, template.length()).toString();
+    }
+
+    private static void flushAll() {
+        try {
+            OUT.flush();
+            ERR.flush();
+            if (audit != null) {
+                audit.flush();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static void flushRemaining() {
+        drainOnce();
+        flushAll();
+    }
+}
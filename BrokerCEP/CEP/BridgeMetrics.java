@@ -0,0 +1,411 @@
+import com.espertech.esper.common.client.EventBean;
+import com.espertech.esper.common.client.configuration.Configuration;
+import com.espertech.esper.common.client.metric.RuntimeMetric;
+import com.espertech.esper.common.client.metric.StatementMetric;
+import com.espertech.esper.runtime.client.EPDeployment;
+import com.espertech.esper.runtime.client.EPRuntime;
+import com.espertech.esper.runtime.client.EPStatement;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bridge instrumentation, exported in Prometheus text format.
+ *
+ * Stage latencies (decode, verify, send, listener, queue, publish) go into
+ * LatencyHistograms and are exported as summaries (p50/p90/p99/p999, sum, count).
+ * Note that "send" is the whole sendEventBean call and therefore includes the
+ * listeners it triggers; "queue" is the time an alert waits in the AlertDispatcher.
+ * Counters cover readings received / accepted / rejected by reason, alerts sent and
+ * suppressed per (contractId, ruleId), publish failures, alerts dropped or spilled by the alert
+ * queue, and the logger's dropped/audited totals. In event-time mode the late and
+ * unparseable readings, the reorder buffer depth and the watermark lag are exported too,
+ * and with an IngestFlowControl the shed, retried and dead-lettered sensor deliveries
+ * and the number of overloaded ingestion partitions. With an IncrementalRuleEngine,
+ * the rules it evaluates and the readings held in their windows.
+ *
+ * When attachEsper() is used, Esper's own RuntimeMetric / StatementMetric events
+ * (enabled by configureEsper()) are exported as gauges for the last reporting interval.
+ *
+ * Endpoint: http://127.0.0.1:<-Dmetrics.port, default 9464>/metrics
+ * Esper reporting interval: -Dmetrics.esperIntervalMs (default 10000, 0 disables).
+ */
+public class BridgeMetrics {
+
+    public enum Stage {
+        DECODE, VERIFY, SEND, LISTENER, QUEUE, PUBLISH;
+
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        public void record(long nanos) {
+            histogram.record(nanos);
+        }
+
+        public void recordSince(long startNanos) {
+            histogram.recordSince(startNanos);
+        }
+
+        public LatencyHistogram histogram() {
+            return histogram;
+        }
+    }
+
+    private static final int PORT = Integer.getInteger("metrics.port", 9464);
+    private static final long ESPER_INTERVAL_MS = Long.getLong("metrics.esperIntervalMs", 10_000L);
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    public static final LongAdder READINGS_RECEIVED = new LongAdder();
+    public static final LongAdder READINGS_ACCEPTED = new LongAdder();
+    public static final LongAdder PUBLISH_FAILURES = new LongAdder();
+    public static final LongAdder ALERTS_DROPPED = new LongAdder();
+    public static final LongAdder ALERTS_SPILLED = new LongAdder();
+
+    private static volatile AlertDispatcher alertQueue;
+    private static volatile EventTimeSequencer<?> eventTime;
+    private static volatile IngestFlowControl ingest;
+    private static volatile IncrementalRuleEngine incremental;
+
+    private static final LatencyHistogram CHECKPOINTS = new LatencyHistogram();
+    private static volatile long checkpointBytes;
+    private static volatile long checkpointReadings;
+    private static volatile long restoreMillis = -1;
+    private static volatile long restoredReadings;
+    private static volatile long startupMillis = -1;
+
+    private static final ConcurrentSkipListMap<String, LongAdder> REJECTED = new ConcurrentSkipListMap<>();
+    private static final ConcurrentSkipListMap<String, RuleCounter> ALERTS = new ConcurrentSkipListMap<>();
+
+    /** Last RuntimeMetric per runtime URI (one runtime, or one per shard). */
+    private static final ConcurrentSkipListMap<String, RuntimeMetric> RUNTIME_METRICS = new ConcurrentSkipListMap<>();
+    private static final ConcurrentHashMap<String, StatementMetric> STATEMENT_METRICS = new ConcurrentHashMap<>();
+
+    /** Alert counter for one (contractId, ruleId); fetch it once per statement, not per alert. */
+    public static final class RuleCounter {
+        final String contractId;
+        final String ruleId;
+        final LongAdder alerts = new LongAdder();
+        final LongAdder suppressed = new LongAdder();
+
+        RuleCounter(String contractId, String ruleId) {
+            this.contractId = contractId;
+            this.ruleId = ruleId;
+        }
+
+        public void increment() {
+            alerts.increment();
+        }
+
+        public long count() {
+            return alerts.sum();
+        }
+
+        /** A firing held back by the rule's AlertSuppressor. */
+        public void suppress() {
+            suppressed.increment();
+        }
+
+        public long suppressedCount() {
+            return suppressed.sum();
+        }
+    }
+
+    public static RuleCounter ruleCounter(String contractId, String ruleId) {
+        String key = contractId + "/" + ruleId;
+        return ALERTS.computeIfAbsent(key, k -> new RuleCounter(contractId, ruleId));
+    }
+
+    public static void rejected(String reason) {
+        REJECTED.computeIfAbsent(reason, r -> new LongAdder()).increment();
+    }
+
+    public static long rejectedCount(String reason) {
+        LongAdder adder = REJECTED.get(reason);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    // === Esper runtime / statement metrics ===
+
+    /** Turns on Esper metrics reporting; call before the runtime is obtained. */
+    public static void configureEsper(Configuration config) {
+        if (ESPER_INTERVAL_MS <= 0) {
+            return;
+        }
+        config.getRuntime().getMetricsReporting().setEnableMetricsReporting(true);
+        config.getRuntime().getMetricsReporting().setRuntimeInterval(ESPER_INTERVAL_MS);
+        config.getRuntime().getMetricsReporting().setStatementInterval(ESPER_INTERVAL_MS);
+    }
+
+    /** Deploys listeners on Esper's metric streams so the latest values can be exported. */
+    public static void attachEsper(EPRuntime runtime, CompiledRuleCache cache) throws Exception {
+        if (ESPER_INTERVAL_MS <= 0) {
+            return;
+        }
+        EPDeployment runtimeMetrics = cache.deploy(runtime, "select * from RuntimeMetric");
+        for (EPStatement stmt : runtimeMetrics.getStatements()) {
+            stmt.addListener((newData, oldData, s, r) -> {
+                RuntimeMetric m = (RuntimeMetric) newData[0].getUnderlying();
+                RUNTIME_METRICS.put(m.getRuntimeURI(), m);
+            });
+        }
+        EPDeployment statementMetrics = cache.deploy(runtime, "select * from StatementMetric");
+        for (EPStatement stmt : statementMetrics.getStatements()) {
+            stmt.addListener((newData, oldData, s, r) -> {
+                for (EventBean bean : newData) {
+                    StatementMetric m = (StatementMetric) bean.getUnderlying();
+                    STATEMENT_METRICS.put(m.getDeploymentId() + "/" + m.getStatementName(), m);
+                }
+            });
+        }
+    }
+
+    /** Exports the depth of this dispatcher's queue (the last one registered wins). */
+    public static void watchAlertQueue(AlertDispatcher dispatcher) {
+        alertQueue = dispatcher;
+    }
+
+    public static void watchEventTime(EventTimeSequencer<?> sequencer) {
+        eventTime = sequencer;
+    }
+
+    public static void watchIngest(IngestFlowControl flow) {
+        ingest = flow;
+    }
+
+    public static void watchIncremental(IncrementalRuleEngine engine) {
+        incremental = engine;
+    }
+
+    /** One window checkpoint written by WindowCheckpointer. */
+    public static void checkpointed(long nanos, long bytes, int readings) {
+        CHECKPOINTS.record(nanos);
+        checkpointBytes = bytes;
+        checkpointReadings = readings;
+    }
+
+    /** Window state restored at startup. */
+    public static void restored(long millis, int readings) {
+        restoreMillis = millis;
+        restoredReadings = readings;
+    }
+
+    /** Time from process start until the bridge consumes sensor data again. */
+    public static void started(long millis) {
+        startupMillis = millis;
+    }
+
+    /** Forgets the Esper statement metrics of an undeployed deployment. */
+    public static void forgetDeployment(String deploymentId) {
+        STATEMENT_METRICS.keySet().removeIf(k -> k.startsWith(deploymentId + "/"));
+    }
+
+    // === Export ===
+
+    public static HttpServer startEndpoint() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", PORT), 0);
+        server.createContext("/metrics", BridgeMetrics::handle);
+        server.setExecutor(null);
+        server.start();
+        System.out.println("📈 Metrics endpoint on http://127.0.0.1:" + PORT + "/metrics");
+        return server;
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        byte[] body = render().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    public static String render() {
+        StringBuilder sb = new StringBuilder(4096);
+
+        header(sb, "bridge_stage_latency_seconds", "summary", "Latency of each bridge stage");
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram h = stage.histogram;
+            String label = "stage=\"" + stage.name().toLowerCase() + "\"";
+            for (double q : QUANTILES) {
+                sample(sb, "bridge_stage_latency_seconds", label + ",quantile=\"" + q + "\"", h.percentile(q) / 1e9);
+            }
+            sample(sb, "bridge_stage_latency_seconds_sum", label, h.sumNanos() / 1e9);
+            sample(sb, "bridge_stage_latency_seconds_count", label, h.count());
+        }
+
+        header(sb, "bridge_readings_received_total", "counter", "Sensor readings decoded");
+        sample(sb, "bridge_readings_received_total", null, READINGS_RECEIVED.sum());
+        header(sb, "bridge_readings_accepted_total", "counter", "Sensor readings sent to Esper");
+        sample(sb, "bridge_readings_accepted_total", null, READINGS_ACCEPTED.sum());
+        header(sb, "bridge_readings_rejected_total", "counter", "Sensor messages rejected, by reason");
+        for (Map.Entry<String, LongAdder> e : REJECTED.entrySet()) {
+            sample(sb, "bridge_readings_rejected_total", "reason=\"" + escape(e.getKey()) + "\"", e.getValue().sum());
+        }
+
+        header(sb, "bridge_alerts_total", "counter", "Alerts fired per contract instance and rule");
+        for (RuleCounter c : ALERTS.values()) {
+            sample(sb, "bridge_alerts_total",
+                    "contractId=\"" + escape(c.contractId) + "\",ruleId=\"" + escape(c.ruleId) + "\"", c.count());
+        }
+        header(sb, "bridge_alerts_suppressed_total", "counter", "Rule firings not sent because of the rule's suppression setting");
+        for (RuleCounter c : ALERTS.values()) {
+            if (c.suppressedCount() > 0) {
+                sample(sb, "bridge_alerts_suppressed_total",
+                        "contractId=\"" + escape(c.contractId) + "\",ruleId=\"" + escape(c.ruleId) + "\"", c.suppressedCount());
+            }
+        }
+        header(sb, "bridge_alert_publish_failures_total", "counter", "Alerts that could not be published");
+        sample(sb, "bridge_alert_publish_failures_total", null, PUBLISH_FAILURES.sum());
+        header(sb, "bridge_alerts_dropped_total", "counter", "Alerts discarded by the alert queue overflow policy");
+        sample(sb, "bridge_alerts_dropped_total", null, ALERTS_DROPPED.sum());
+        header(sb, "bridge_alerts_spilled_total", "counter", "Alerts written to the alert spill file");
+        sample(sb, "bridge_alerts_spilled_total", null, ALERTS_SPILLED.sum());
+        AlertDispatcher dispatcher = alertQueue;
+        if (dispatcher != null) {
+            header(sb, "bridge_alert_queue_depth", "gauge", "Alerts waiting for a dispatcher thread");
+            sample(sb, "bridge_alert_queue_depth", null, dispatcher.depth());
+            header(sb, "bridge_alert_queue_capacity", "gauge", "Alert queue capacity");
+            sample(sb, "bridge_alert_queue_capacity", null, dispatcher.capacity());
+            header(sb, "bridge_alert_spill_backlog", "gauge", "Spilled alerts not yet replayed");
+            sample(sb, "bridge_alert_spill_backlog", null, dispatcher.spillBacklog());
+        }
+
+        EventTimeSequencer<?> sequencer = eventTime;
+        if (sequencer != null) {
+            header(sb, "bridge_event_time_late_total", "counter", "Readings dropped for arriving behind the event-time watermark");
+            sample(sb, "bridge_event_time_late_total", null, sequencer.lateCount());
+            header(sb, "bridge_event_time_invalid_total", "counter", "Readings dropped for lacking a usable timestamp");
+            sample(sb, "bridge_event_time_invalid_total", null, sequencer.invalidCount());
+            header(sb, "bridge_event_time_buffered", "gauge", "Readings held in the event-time reorder buffer");
+            sample(sb, "bridge_event_time_buffered", null, sequencer.buffered());
+            long watermark = sequencer.watermark();
+            if (watermark != EventTimeSequencer.NO_TIME) {
+                header(sb, "bridge_event_time_lag_seconds", "gauge", "Wall clock minus the event-time watermark");
+                sample(sb, "bridge_event_time_lag_seconds", null, (System.currentTimeMillis() - watermark) / 1e3);
+            }
+        }
+
+        IngestFlowControl flow = ingest;
+        if (flow != null) {
+            header(sb, "bridge_ingest_shed_total", "counter", "Sensor deliveries shed under overload, by policy");
+            for (Map.Entry<String, Long> e : flow.shedCounts().entrySet()) {
+                sample(sb, "bridge_ingest_shed_total", "policy=\"" + escape(e.getKey()) + "\"", e.getValue());
+            }
+            header(sb, "bridge_ingest_retried_total", "counter", "Failed sensor deliveries requeued for another attempt");
+            sample(sb, "bridge_ingest_retried_total", null, flow.retriedCount());
+            header(sb, "bridge_ingest_dead_lettered_total", "counter", "Sensor deliveries moved to the dead-letter queue");
+            sample(sb, "bridge_ingest_dead_lettered_total", null, flow.deadLetteredCount());
+            header(sb, "bridge_ingest_overloaded_partitions", "gauge", "Ingestion partitions currently shedding");
+            sample(sb, "bridge_ingest_overloaded_partitions", null, flow.overloadedPartitions());
+        }
+
+        IncrementalRuleEngine fastPath = incremental;
+        if (fastPath != null) {
+            header(sb, "bridge_incremental_rules", "gauge", "Rules evaluated incrementally instead of by Esper");
+            sample(sb, "bridge_incremental_rules", null, fastPath.ruleCount());
+            header(sb, "bridge_incremental_window_readings", "gauge", "Readings held in incremental rule windows");
+            sample(sb, "bridge_incremental_window_readings", null, fastPath.windowedReadings());
+        }
+
+        header(sb, "bridge_identity_cache_entries", "gauge", "Cached sensor identity verdicts");
+        sample(sb, "bridge_identity_cache_entries", null, SensorIdentityCache.size());
+        header(sb, "bridge_batches_total", "counter", "Batched sensor messages");
+        sample(sb, "bridge_batches_total", null, SensorBatchStats.totalBatches());
+        header(sb, "bridge_log_dropped_total", "counter", "Log entries dropped because the log buffer was full");
+        sample(sb, "bridge_log_dropped_total", null, BridgeLog.droppedCount());
+        header(sb, "bridge_log_audited_total", "counter", "Rejected sensor messages written to the audit log");
+        sample(sb, "bridge_log_audited_total", null, BridgeLog.auditedCount());
+
+        if (CHECKPOINTS.count() > 0) {
+            header(sb, "bridge_checkpoint_seconds", "summary", "Duration of a window checkpoint (snapshot, write, force, ack)");
+            for (double q : QUANTILES) {
+                sample(sb, "bridge_checkpoint_seconds", "quantile=\"" + q + "\"", CHECKPOINTS.percentile(q) / 1e9);
+            }
+            sample(sb, "bridge_checkpoint_seconds_sum", null, CHECKPOINTS.sumNanos() / 1e9);
+            sample(sb, "bridge_checkpoint_seconds_count", null, CHECKPOINTS.count());
+            header(sb, "bridge_checkpoint_bytes", "gauge", "Size of the last window checkpoint");
+            sample(sb, "bridge_checkpoint_bytes", null, checkpointBytes);
+            header(sb, "bridge_checkpoint_readings", "gauge", "Readings in the last window checkpoint");
+            sample(sb, "bridge_checkpoint_readings", null, checkpointReadings);
+        }
+        if (restoreMillis >= 0) {
+            header(sb, "bridge_restore_seconds", "gauge", "Time taken to restore window state at startup");
+            sample(sb, "bridge_restore_seconds", null, restoreMillis / 1e3);
+            header(sb, "bridge_restored_readings", "gauge", "Readings replayed from the window checkpoint");
+            sample(sb, "bridge_restored_readings", null, restoredReadings);
+        }
+        if (startupMillis >= 0) {
+            header(sb, "bridge_startup_seconds", "gauge", "Time from process start until sensor data is consumed");
+            sample(sb, "bridge_startup_seconds", null, startupMillis / 1e3);
+        }
+
+        if (!RUNTIME_METRICS.isEmpty()) {
+            header(sb, "esper_runtime_input_count", "gauge", "Events processed by the runtime");
+            RUNTIME_METRICS.forEach((uri, m) -> sample(sb, "esper_runtime_input_count", runtimeLabel(uri), m.getInputCount()));
+            header(sb, "esper_runtime_input_count_delta", "gauge", "Events processed in the last reporting interval");
+            RUNTIME_METRICS.forEach((uri, m) -> sample(sb, "esper_runtime_input_count_delta", runtimeLabel(uri), m.getInputCountDelta()));
+            header(sb, "esper_runtime_schedule_depth", "gauge", "Pending schedule callbacks");
+            RUNTIME_METRICS.forEach((uri, m) -> sample(sb, "esper_runtime_schedule_depth", runtimeLabel(uri), m.getScheduleDepth()));
+        }
+        if (!STATEMENT_METRICS.isEmpty()) {
+            header(sb, "esper_statement_cpu_seconds", "gauge", "Statement CPU time in the last reporting interval");
+            for (StatementMetric m : STATEMENT_METRICS.values()) {
+                sample(sb, "esper_statement_cpu_seconds", statementLabel(m), m.getCpuTime() / 1e9);
+            }
+            header(sb, "esper_statement_wall_seconds", "gauge", "Statement wall time in the last reporting interval");
+            for (StatementMetric m : STATEMENT_METRICS.values()) {
+                sample(sb, "esper_statement_wall_seconds", statementLabel(m), m.getWallTime() / 1e9);
+            }
+            header(sb, "esper_statement_input_events", "gauge", "Events evaluated in the last reporting interval");
+            for (StatementMetric m : STATEMENT_METRICS.values()) {
+                sample(sb, "esper_statement_input_events", statementLabel(m), m.getNumInput());
+            }
+            header(sb, "esper_statement_output_events", "gauge", "Insert-stream output in the last reporting interval");
+            for (StatementMetric m : STATEMENT_METRICS.values()) {
+                sample(sb, "esper_statement_output_events", statementLabel(m), m.getNumOutputIStream());
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String runtimeLabel(String uri) {
+        return "runtime=\"" + escape(uri) + "\"";
+    }
+
+    private static String statementLabel(StatementMetric m) {
+        return "deployment=\"" + escape(m.getDeploymentId()) + "\",statement=\"" + escape(m.getStatementName()) + "\"";
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder sb, String name, String labels, double value) {
+        sb.append(name);
+        if (labels != null) {
+            sb.append('{').append(labels).append('}');
+        }
+        sb.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            sb.append((long) value);
+        } else {
+            sb.append(value);
+        }
+        sb.append('\n');
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
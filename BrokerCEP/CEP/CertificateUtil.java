@@ -21,14 +21,20 @@ public class CertificateUtil {
     }
 
       public static boolean verifySensorBinding(String certPem, String sensorId) throws Exception {
-        CertificateFactory cf = CertificateFactory.getInstance("X.509");
-        X509Certificate cert = (X509Certificate) cf.generateCertificate(
-                new ByteArrayInputStream(certPem.getBytes()));
+        return verifySensorBinding(parseCertificate(certPem), sensorId);
+    }
 
+    public static boolean verifySensorBinding(X509Certificate cert, String sensorId) {
         String dn = cert.getSubjectX500Principal().getName();
         // Expect CN=sensorId somewhere in DN
         return dn.contains("CN=" + sensorId);
     }
+
+    public static X509Certificate parseCertificate(String certPem) throws Exception {
+        CertificateFactory cf = CertificateFactory.getInstance("X.509");
+        return (X509Certificate) cf.generateCertificate(
+                new ByteArrayInputStream(certPem.getBytes()));
+    }
 }
 
 
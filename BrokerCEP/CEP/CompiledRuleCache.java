@@ -0,0 +1,234 @@
+import com.espertech.esper.common.client.EPCompiled;
+import com.espertech.esper.common.client.configuration.Configuration;
+import com.espertech.esper.compiler.client.CompilerArguments;
+import com.espertech.esper.compiler.client.EPCompiler;
+import com.espertech.esper.compiler.client.util.EPCompiledIOUtil;
+import com.espertech.esper.runtime.client.DeploymentOptions;
+import com.espertech.esper.runtime.client.EPDeployDeploymentVersionException;
+import com.espertech.esper.runtime.client.EPDeployment;
+import com.espertech.esper.runtime.client.EPRuntime;
+import com.espertech.esper.runtime.client.util.RuntimeVersion;
+
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * On-disk cache of compiled EPL modules.
+ *
+ * Each compiled rule is stored as a jar (EPCompiledIOUtil format) named after a
+ * SHA-256 of the generated EPL plus a fingerprint of the event-type configuration
+ * (type name, bean class and getter signatures, Esper runtime version). On the
+ * next startup the jar is read back and handed to the deployment service directly,
+ * so only new or changed rules go through bytecode generation. A module the runtime
+ * still rejects as compiled by another Esper version is deleted, recompiled and
+ * deployed again.
+ *
+ * The time each rule originally took to compile is kept next to the jar, which
+ * lets printSummary() report how much startup time the cache saved.
+ *
+ * Modules are also kept in memory, so the same EPL is compiled or read at most once
+ * per process.
+ *
+ * deploy() deploys a rule from its template (RuleEplBuilder.buildTemplate): all
+ * instances of a rule share one compiled module and differ only in the sensorId
+ * substitution parameter, so compile time and generated classes grow with the
+ * number of distinct rules, not with the number of contract instances.
+ * -Dcep.ruleTemplates=false compiles one EPL per instance as before.
+ *
+ * Cache directory: -Dcep.compileCache=... (default ./compiled-cache);
+ * -Dcep.compileCache=off disables it.
+ */
+public class CompiledRuleCache {
+
+    private static final String CACHE_DIR = System.getProperty("cep.compileCache", "compiled-cache");
+    private static final boolean TEMPLATES = !"false".equals(System.getProperty("cep.ruleTemplates"));
+
+    private final EPCompiler compiler;
+    private final Configuration config;
+    private final Path dir;
+    private final String configFingerprint;
+    private final String eventTypeName;
+    private final Map<String, EPCompiled> modules = new HashMap<>();
+    private final Set<String> templates = new HashSet<>();
+    private int templateDeployments;
+
+    private int hits;
+    private int misses;
+    private long compileMillis;
+    private long loadMillis;
+    private long savedMillis;
+
+    public CompiledRuleCache(EPCompiler compiler, Configuration config, String eventTypeName, Class<?> eventClass) {
+        this(compiler, config, eventTypeName, eventClass,
+                "off".equals(CACHE_DIR) ? null : Paths.get(CACHE_DIR).toAbsolutePath());
+    }
+
+    /** A cache in the given directory instead of -Dcep.compileCache (null: in memory only). */
+    public CompiledRuleCache(EPCompiler compiler, Configuration config, String eventTypeName, Class<?> eventClass,
+                             Path dir) {
+        this.compiler = compiler;
+        this.config = config;
+        this.dir = dir;
+        this.configFingerprint = fingerprint(eventTypeName, eventClass);
+        this.eventTypeName = eventTypeName;
+    }
+
+    /**
+     * Deploys one rule to the runtime: from its shared template with the rule's
+     * sensorId bound at deploy time, or (templates off) from its own EPL.
+     */
+    public EPDeployment deploy(EPRuntime runtime, Map<String, Object> rule) throws Exception {
+        if (!TEMPLATES) {
+            return deploy(runtime, RuleEplBuilder.build(rule, eventTypeName));
+        }
+        String template = RuleEplBuilder.buildTemplate(rule, eventTypeName);
+        synchronized (this) {
+            templates.add(template);
+            templateDeployments++;
+        }
+        Object sensorId = rule.get("sensorId");
+        return deploy(runtime, template, new DeploymentOptions()
+                .setStatementSubstitutionParameter(ctx -> ctx.setObject(RuleEplBuilder.SENSOR_PARAM, sensorId)));
+    }
+
+    /** Deploys a plain EPL module (no rule), through the cache like the rules. */
+    public EPDeployment deploy(EPRuntime runtime, String epl) throws Exception {
+        return deploy(runtime, epl, new DeploymentOptions());
+    }
+
+    private EPDeployment deploy(EPRuntime runtime, String epl, DeploymentOptions options) throws Exception {
+        try {
+            return runtime.getDeploymentService().deploy(compile(epl), options);
+        } catch (EPDeployDeploymentVersionException e) {
+            // Cached by another Esper version (the fingerprint did not tell): drop it and compile afresh
+            System.err.println("⚠️ Recompiling cached rule from another Esper version: " + e.getMessage());
+            evict(epl);
+            return runtime.getDeploymentService().deploy(compile(epl), options);
+        }
+    }
+
+    private synchronized void evict(String epl) throws Exception {
+        modules.remove(epl);
+        if (dir != null) {
+            String key = sha256(configFingerprint + "\n" + epl);
+            Files.deleteIfExists(dir.resolve(key + ".jar"));
+            Files.deleteIfExists(dir.resolve(key + ".ms"));
+        }
+    }
+
+    /** Returns the compiled module for the EPL: from memory, from disk, or freshly compiled. */
+    public synchronized EPCompiled compile(String epl) throws Exception {
+        EPCompiled module = modules.get(epl);
+        if (module == null) {
+            module = load(epl);
+            modules.put(epl, module);
+        }
+        return module;
+    }
+
+    private EPCompiled load(String epl) throws Exception {
+        if (dir == null) {
+            return compileNow(epl);
+        }
+
+        String key = sha256(configFingerprint + "\n" + epl);
+        Path jar = dir.resolve(key + ".jar");
+        Path meta = dir.resolve(key + ".ms");
+
+        if (Files.exists(jar)) {
+            long start = System.nanoTime();
+            try {
+                EPCompiled compiled = EPCompiledIOUtil.read(jar.toFile());
+                long took = (System.nanoTime() - start) / 1_000_000;
+                loadMillis += took;
+                hits++;
+                if (Files.exists(meta)) {
+                    long originalMillis = Long.parseLong(new String(Files.readAllBytes(meta), StandardCharsets.UTF_8).trim());
+                    savedMillis += Math.max(0, originalMillis - took);
+                }
+                return compiled;
+            } catch (Exception e) {
+                System.err.println("⚠️ Discarding unreadable compiled rule " + jar.getFileName() + ": " + e.getMessage());
+                Files.deleteIfExists(jar);
+                Files.deleteIfExists(meta);
+            }
+        }
+
+        long start = System.nanoTime();
+        EPCompiled compiled = compileNow(epl);
+        long took = (System.nanoTime() - start) / 1_000_000;
+        compileMillis += took;
+        misses++;
+
+        try {
+            Files.createDirectories(dir);
+            // Write to a temp file and move, so a crash never leaves a truncated jar behind
+            Path tmp = Files.createTempFile(dir, key, ".tmp");
+            EPCompiledIOUtil.write(compiled, tmp.toFile());
+            Files.move(tmp, jar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.write(meta, Long.toString(took).getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            System.err.println("⚠️ Could not cache compiled rule: " + e.getMessage());
+        }
+        return compiled;
+    }
+
+    private EPCompiled compileNow(String epl) throws Exception {
+        return compiler.compile(epl, new CompilerArguments(config));
+    }
+
+    public synchronized void printSummary() {
+        if (dir == null) {
+            System.out.println("📦 Compiled-rule cache disabled.");
+        } else {
+            System.out.println("📦 Compiled-rule cache: " + hits + " loaded (" + loadMillis + " ms), "
+                    + misses + " compiled (" + compileMillis + " ms), ~" + savedMillis + " ms startup saved.");
+        }
+        if (templateDeployments > 0) {
+            System.out.println("🧩 " + templates.size() + " rule template(s) shared by " + templateDeployments + " deployment(s).");
+        }
+    }
+
+    /** Distinct modules compiled or loaded so far. */
+    public synchronized int moduleCount() {
+        return modules.size();
+    }
+
+    private static String fingerprint(String eventTypeName, Class<?> eventClass) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(eventTypeName).append('=').append(eventClass.getName());
+
+        Method[] methods = eventClass.getMethods();
+        Arrays.sort(methods, Comparator.comparing(Method::getName));
+        for (Method m : methods) {
+            if (m.getParameterCount() == 0 && m.getDeclaringClass() != Object.class
+                    && (m.getName().startsWith("get") || m.getName().startsWith("is"))) {
+                sb.append(';').append(m.getName()).append(':').append(m.getReturnType().getName());
+            }
+        }
+
+        // The jars carry no Implementation-Version; the runtime checks modules against this one
+        sb.append(";esper=").append(RuntimeVersion.RUNTIME_VERSION);
+        return sb.toString();
+    }
+
+    static String sha256(String text) throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
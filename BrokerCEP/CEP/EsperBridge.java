@@ -1,9 +1,7 @@
 // Esper imports
 import com.espertech.esper.common.client.configuration.Configuration;
-import com.espertech.esper.common.client.EPCompiled;
 import com.espertech.esper.compiler.client.EPCompiler;
 import com.espertech.esper.compiler.client.EPCompilerProvider;
-import com.espertech.esper.compiler.client.CompilerArguments;
 import com.espertech.esper.runtime.client.EPRuntime;
 import com.espertech.esper.runtime.client.EPRuntimeProvider;
 import com.espertech.esper.runtime.client.EPDeployment;
@@ -16,26 +14,20 @@ import com.rabbitmq.client.ConnectionFactory;
 
 // Java core
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.IOException;
 import java.nio.channels.Channel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.KeyStore;
-import java.security.SecureRandom;
-import java.security.cert.CertificateFactory;
-import java.security.cert.X509Certificate;
 import java.sql.Connection;
 
 import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManagerFactory;
-import javax.net.ssl.KeyManagerFactory;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class EsperBridge {
-    private static final String ALERTS_EXCHANGE = "alerts";
     private static final String SENSOR_QUEUE = "sensor_data";
 
     // === Global TLS paths (like Node.js constants) ===
@@ -52,6 +44,8 @@ public class EsperBridge {
 
     private static final char[] P12_PASSWORD = "changeit".toCharArray(); // same password used in openssl export
 
+    private static final TlsMaterialProvider TLS = TlsMaterialProvider.forPkcs12(CA_PATH, P12_PATH, P12_PASSWORD);
+
     // === RabbitMQ constants ===
     private static final String RABBIT_HOST = "rabbitmq-server";
     private static final int RABBIT_PORT = 5671;
@@ -67,156 +61,136 @@ public class EsperBridge {
         // 2️⃣ Setup Esper runtime
         Configuration config = new Configuration();
         config.getCommon().addEventType("SensorEvents", SensorEvents.class);
+        BridgeMetrics.configureEsper(config);
         EPRuntime runtime = EPRuntimeProvider.getDefaultRuntime(config);
         EPCompiler compiler = EPCompilerProvider.getCompiler();
+        CompiledRuleCache ruleCache = new CompiledRuleCache(compiler, config, "SensorEvents", SensorEvents.class);
+
+        // One publisher for all alerts: connection and exchange set up once, not per alert
+        AlertPublisher alertPublisher = AlertPublisher.forAlerts(EsperBridge::getRabbitConnection);
+        // Listeners only enqueue; encoding + publishing run on the dispatcher threads
+        AlertDispatcher alertDispatcher = new AlertDispatcher(alertPublisher);
 
         // 3️⃣ Deploy EPL rules dynamically from rules.json
         for (Map<String, Object> rule : rules) {
 
-            /*
-            String condition = (String) rule.get("condition");
-            String window = (String) rule.get("window");
-            String having = (String) rule.get("having");
-            String select = (String) rule.get("select");
-
-            String epl = String.format(
-                "select %s from SensorEvents(%s).win:%s having %s",
-                select, condition, window, having
-            );
-            */
-           String condition = (String) rule.get("condition");
-                String window = (String) rule.get("window");
-                String having = (String) rule.get("having");
-                String select = (String) rule.get("select");
-                String ruleSensorId = (String) rule.get("sensorId");
-
-                boolean hasAggregate =
-                    select.contains("count(") ||
-                    select.contains("avg(") ||
-                    select.contains("sum(") ||
-                    select.contains("max(") ||
-                    select.contains("min(");
-
-                boolean hasWindow = (window != null && !window.trim().isEmpty());
-                boolean hasHaving = (having != null && !having.trim().isEmpty());
-
-                // Force per-rule sensor filtering (prevents temperatureRule matching lightExposure, etc.)
-                String safeSensorId = ruleSensorId.replace("'", "''");
-                String whereClause = "sensorId = '" + safeSensorId + "' AND (" + condition + ")";
-
-                String epl;
-
-                if (hasWindow && hasAggregate) {
-                    epl = String.format(
-                        "select %s from SensorEvents.win:%s where %s group by sensorId",
-                        select, window.trim(), whereClause
-                    );
-                } else if (hasWindow) {
-                    epl = String.format(
-                        "select %s from SensorEvents.win:%s where %s",
-                        select, window.trim(), whereClause
-                    );
-                } else {
-                    epl = String.format(
-                        "select %s from SensorEvents where %s",
-                        select, whereClause
-                    );
-                }
-
-                if (hasHaving) {
-                    epl += " having " + having.trim();
-                }
-
-
-                //System.out.println("8888888888888888888888 epl:" + epl);
-
-            CompilerArguments cargs = new CompilerArguments(config);
-            EPCompiled compiled = compiler.compile(epl, cargs);
-            EPDeployment deployment = runtime.getDeploymentService().deploy(compiled);
+            // Sensor + condition go into the stream filter so the filter index routes events.
+            // Compiled modules are cached on disk; rules differing only in sensorId share one
+            EPDeployment deployment = ruleCache.deploy(runtime, rule);
 
             System.out.println("✅ Rule deployed: " + rule.get("id"));
 
             for (EPStatement stmt : deployment.getStatements()) {
-                stmt.addListener((newData, oldData, s, r) -> {
-
-                // Get current date and time
-                String alertTimestamp = java.time.LocalDateTime.now()
-                        .format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd-HH:mm:ss"));
+                // Rule context + select properties captured once per statement
+                AlertEncoder encoder = new AlertEncoder(stmt, null, rule);
+                BridgeMetrics.RuleCounter ruleAlerts = BridgeMetrics.ruleCounter(encoder.getContractId(), encoder.getRuleId());
+                AlertSuppressor suppressor = AlertSuppressor.forRule(stmt, null, rule);
 
-                // Build alert string with timestamp
-                /*String alert = String.format("🚨 ALERT %s [%s]: %s",
-                        rule.get("id"),
-                        alertTimestamp,
-                        newData[0].getUnderlying());*/
-                   String alert = String.format("🚨 ALERT: %s, alertTimestamp=%s}",
-                        newData[0].getUnderlying().toString().replaceAll("}$", ""),
-                        alertTimestamp);
-
-
-                    //String alert = "🚨 ALERT " + rule.get("id") + ": " + newData[0].getUnderlying();
-                    System.out.println(alert);
-                    //System.out.println("*******" +newData[0].getUnderlying());
-                    //System.out.println("-------" +newData[1].getUnderlying());
-
-
-
-                    // Publish alerts back to RabbitMQ
-                    try (com.rabbitmq.client.Connection conn = getRabbitConnection();
-                         com.rabbitmq.client.Channel channel = conn.createChannel()) {
-                        channel.exchangeDeclare(ALERTS_EXCHANGE, "fanout", true);
-                        channel.basicPublish(ALERTS_EXCHANGE, "", null,
-                                alert.getBytes(StandardCharsets.UTF_8));
-                    } catch (Exception e) {
-                        System.err.println("❌ Failed to publish alert: " + e.getMessage());
-                        e.printStackTrace();
+                stmt.addListener((newData, oldData, s, r) -> {
+                    long listenerStart = System.nanoTime();
+                    if (suppressor != null && !suppressor.admit(newData[0], r.getEventService().getCurrentTime())) {
+                        ruleAlerts.suppress();
+                        return;
                     }
+
+                    // Hand the alert to the dispatcher; the broker is never called on Esper's thread
+                    ruleAlerts.increment();
+                    alertDispatcher.submit(encoder, newData[0], encoder.routingKey());
+                    BridgeMetrics.Stage.LISTENER.recordSince(listenerStart);
                 });
             }
         }
 
+        // Esper runtime/statement metrics + bridge counters on a local Prometheus endpoint
+        BridgeMetrics.attachEsper(runtime, ruleCache);
+        com.sun.net.httpserver.HttpServer metricsServer = BridgeMetrics.startEndpoint();
+
+        ruleCache.printSummary();
+
+        // Load wallet identities once; per-message checks become cache lookups
+        SensorIdentityCache.start();
+
         // 4️⃣ Subscribe to RabbitMQ sensor data (persistent)
         com.rabbitmq.client.Connection conn = getRabbitConnection();
         com.rabbitmq.client.Channel channel = conn.createChannel();
 
         channel.queueDeclare(SENSOR_QUEUE, true, false, false, null);
 
-        channel.basicConsume(SENSOR_QUEUE, true, (consumerTag, message) -> {
-            String msg = new String(message.getBody(), StandardCharsets.UTF_8);
-            try {
-                Map<String, Object> sensorData = mapper.readValue(msg, Map.class);
-                String sensorId = (String) sensorData.get("sensorId");
-                Double value = Double.valueOf(sensorData.get("value").toString());
-                String sensorTimestamp = (String) sensorData.get("timestamp");
-                //System.out.println("Time------------" + sensorTimestamp);
+        // Ack mode, prefetch and overload shedding (see IngestFlowControl)
+        IngestFlowControl flow = new IngestFlowControl();
+        if (flow.prefetch() > 0) {
+            channel.basicQos(flow.prefetch());
+        }
+        flow.start(channel, conn);
 
+        // Decode/verify/inject on a worker pool partitioned by sensorId (per-sensor order kept)
+        SensorIngestionPipeline pipeline = new SensorIngestionPipeline(message -> {
+            // MALFORMED is dead-lettered at once; a failure is FAILED before any reading reached Esper, PARTIAL after
+            IngestFlowControl.Outcome outcome = IngestFlowControl.Outcome.FAILED;
+            int processed = 0;
+            try {
+                long batchStart = System.nanoTime();
 
-                // ✅ Step 1: Check enrollment in wallet
-                if (!WalletUtil.isSensorRegistered(sensorId)) {
-                    System.err.println("⚠️ Unauthorized sensorId (not in wallet): " + sensorId);
+                // Stream-decode the body straight into events: one reading, or a gateway batch
+                List<SensorEvents> events;
+                try {
+                    events = SensorMessageDecoder.decodeAll(message, SensorEvents::new);
+                } catch (IOException e) {
+                    // Undecodable body: nothing reached Esper, and a retry cannot help
+                    BridgeLog.warn("ingest", "❌ Malformed sensor message: {}", e.getMessage());
+                    BridgeLog.audit("-", "MALFORMED");
+                    BridgeMetrics.rejected("MALFORMED");
+                    flow.completed(message, IngestFlowControl.Outcome.MALFORMED, 0);
                     return;
                 }
-
-                // ✅ Step 2: verify sensor cert CN matches sensorId
-                try {
-                    String certPem = WalletUtil.getSensorCert(sensorId);
-                    if (!CertificateUtil.verifySensorBinding(certPem, sensorId)) {
-                        System.err.println("⚠️ Certificate CN mismatch for sensorId: " + sensorId);
-                        return;
+                BridgeMetrics.Stage.DECODE.recordSince(batchStart);
+                BridgeMetrics.READINGS_RECEIVED.add(events.size());
+
+                // ✅ Step 1+2: wallet enrollment and cert CN binding, once per distinct sensorId
+                Map<String, Boolean> admitted = new HashMap<>();
+
+                for (SensorEvents event : events) {
+                    String sensorId = event.getSensorId();
+                    Boolean ok = admitted.get(sensorId);
+                    if (ok == null) {
+                        long verifyStart = System.nanoTime();
+                        ok = SensorIdentityCache.admit(sensorId);
+                        BridgeMetrics.Stage.VERIFY.recordSince(verifyStart);
+                        admitted.put(sensorId, ok);
                     }
-                } catch (Exception e) {
-                    System.err.println("⚠️ Error verifying certificate for " + sensorId);
-                    e.printStackTrace();
-                    return;
+                    if (!ok) {
+                        processed++;
+                        continue;
+                    }
+
+                    // ✅ Step 3: Send to Esper (in message order)
+                    BridgeLog.info("reading", "📡 {} value={}", sensorId, event.getValue());
+                    long sendStart = System.nanoTime();
+                    runtime.getEventService().sendEventBean(event, "SensorEvents");
+                    BridgeMetrics.Stage.SEND.recordSince(sendStart);
+                    BridgeMetrics.READINGS_ACCEPTED.increment();
+                    processed++;
                 }
 
-                // ✅ Step 3: Send to Esper
-                System.out.println("📡 " + sensorId + " value=" + value);
-                runtime.getEventService().sendEventBean(
-                    new SensorEvents(sensorId, value, sensorTimestamp), "SensorEvents");
+                if (events.size() > 1) {
+                    SensorBatchStats.record(events.size(), System.nanoTime() - batchStart);
+                }
+                outcome = IngestFlowControl.Outcome.PROCESSED;
 
             } catch (Exception e) {
-                System.err.println("❌ Error processing message: " + e.getMessage());
-                e.printStackTrace();
+                BridgeLog.error("ingest", e, "❌ Error processing message: {}", e.getMessage());
+            }
+            if (outcome == IngestFlowControl.Outcome.FAILED && processed > 0) {
+                outcome = IngestFlowControl.Outcome.PARTIAL;
+            }
+            flow.completed(message, outcome, processed);
+        }, flow);
+
+        channel.basicConsume(SENSOR_QUEUE, flow.autoAck(), (consumerTag, message) -> {
+            try {
+                pipeline.submit(message);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         }, consumerTag -> {});
 
@@ -225,8 +199,12 @@ public class EsperBridge {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             try {
                 System.out.println("🔻 Shutting down EsperBridge...");
+                pipeline.close(); // drain first: manual acks go out on the channel
                 channel.close();
                 conn.close();
+                metricsServer.stop(0);
+                alertDispatcher.close();
+                alertPublisher.close();
             } catch (Exception ignored) {}
         }));
 
@@ -238,29 +216,8 @@ public class EsperBridge {
         //System.out.println("📁 CA Path: " + CA_PATH.toAbsolutePath());
         //System.out.println("📁 PKCS12 Path: " + P12_PATH.toAbsolutePath());
 
-        // Load CA certificate (trust store)
-        CertificateFactory cf = CertificateFactory.getInstance("X.509");
-        X509Certificate caCert;
-        try (FileInputStream fis = new FileInputStream(CA_PATH.toFile())) {
-            caCert = (X509Certificate) cf.generateCertificate(fis);
-        }
-        KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
-        trustStore.load(null, null);
-        trustStore.setCertificateEntry("fabric-ca", caCert);
-        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
-        tmf.init(trustStore);
-
-        // Load client key + certificate (from cep_bridge.p12)
-        KeyStore keyStore = KeyStore.getInstance("PKCS12");
-        try (FileInputStream ksFile = new FileInputStream(P12_PATH.toFile())) {
-            keyStore.load(ksFile, P12_PASSWORD);
-        }
-        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
-        kmf.init(keyStore, P12_PASSWORD);
-
-        // Build SSL context for mutual TLS
-        SSLContext sslContext = SSLContext.getInstance("TLS");//v1.2
-        sslContext.init(kmf.getKeyManagers(), tmf.getTrustManagers(), new SecureRandom());
+        // Shared SSL context: CA + keystore parsed once, reloaded on rotation
+        SSLContext sslContext = TLS.sslContext();
 
         // Connect to RabbitMQ
         ConnectionFactory factory = new ConnectionFactory();
@@ -1,13 +1,9 @@
 // Esper imports
 import com.espertech.esper.common.client.configuration.Configuration;
-import com.espertech.esper.common.client.EPCompiled;
 import com.espertech.esper.compiler.client.EPCompiler;
 import com.espertech.esper.compiler.client.EPCompilerProvider;
-import com.espertech.esper.compiler.client.CompilerArguments;
 import com.espertech.esper.runtime.client.EPRuntime;
 import com.espertech.esper.runtime.client.EPRuntimeProvider;
-import com.espertech.esper.runtime.client.EPDeployment;
-import com.espertech.esper.runtime.client.EPStatement;
 
 // JSON + RabbitMQ
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -16,26 +12,21 @@ import com.rabbitmq.client.ConnectionFactory;
 
 // Java core
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.channels.Channel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.KeyStore;
-import java.security.SecureRandom;
-import java.security.cert.CertificateFactory;
-import java.security.cert.X509Certificate;
 import java.sql.Connection;
 
 import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManagerFactory;
-import javax.net.ssl.KeyManagerFactory;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class EsperBridgeMultiInstaExperiment {
-    private static final String ALERTS_EXCHANGE = "alerts";
     private static final String SENSOR_QUEUE = "sensor_data";
 
     // === Global TLS paths (like Node.js constants) ===
@@ -52,10 +43,30 @@ public class EsperBridgeMultiInstaExperiment {
 
     private static final char[] P12_PASSWORD = "changeit".toCharArray(); // same password used in openssl export
 
+    private static final TlsMaterialProvider TLS = TlsMaterialProvider.forPkcs12(CA_PATH, P12_PATH, P12_PASSWORD);
+
     // === RabbitMQ constants ===
     private static final String RABBIT_HOST = "rabbitmq-server";
     private static final int RABBIT_PORT = 5671;
 
+    // === CEP shards: 1 = one runtime for all instances; K > 1 = ShardedEngine ===
+    private static final int CEP_SHARDS = Integer.getInteger("cep.shards", 1);
+
+    // === Scale-out: 0 = every node consumes sensor_data; P > 0 = PartitionCoordinator ===
+    private static final int CEP_PARTITIONS = Integer.getInteger("cep.partitions", 0);
+
+    // === Window checkpoints + manual ack (see WindowCheckpointer) ===
+    private static final boolean CEP_CHECKPOINT = Boolean.getBoolean("cep.checkpoint");
+
+    // === Event time: Esper time follows the sensor timestamps (see EventTimeSequencer) ===
+    private static final boolean CEP_EVENT_TIME = EventTimeSequencer.ENABLED;
+
+    /** Where ingest() hands admitted readings: the runtime itself, the shard router or the event-time sequencer. */
+    interface EventSink {
+        /** Returns false if the reading was dropped instead (event time: late, or no usable timestamp). */
+        boolean send(SensorEventsMultiInstaExperiment event) throws InterruptedException;
+    }
+
     public static void main(String[] args) throws Exception {
     System.out.println("🚀 Starting EsperBridge...");
 
@@ -67,148 +78,124 @@ public class EsperBridgeMultiInstaExperiment {
     List<String> contractIds = (List<String>) instancesConfig.get("contractIds");
 
     if (contractIds == null || contractIds.isEmpty()) {
-        System.err.println("⚠️ instances.json has no contractIds. Nothing to deploy.");
-        return;
+        System.err.println("⚠️ instances.json has no contractIds yet. Waiting for instances to be added.");
     }
 
     System.out.println("📌 Found contract instances: " + contractIds);
 
-    // 2️⃣ Setup Esper runtime (ONE runtime for all instances)
+    // 2️⃣ Setup Esper runtime (ONE runtime for all instances, or one per shard)
     Configuration config = new Configuration();
     config.getCommon().addEventType("SensorEventsMultiInstaExperiment", SensorEventsMultiInstaExperiment.class);
-    EPRuntime runtime = EPRuntimeProvider.getDefaultRuntime(config);
+    BridgeMetrics.configureEsper(config);
+    if (CEP_EVENT_TIME) {
+        if (CEP_SHARDS > 1) {
+            throw new IllegalStateException("-Dcep.eventTime needs a single runtime (-Dcep.shards=1)");
+        }
+        config.getRuntime().getThreading().setInternalTimerEnabled(false); // time advances with the readings
+    }
     EPCompiler compiler = EPCompilerProvider.getCompiler();
+    CompiledRuleCache ruleCache = new CompiledRuleCache(compiler, config, "SensorEventsMultiInstaExperiment", SensorEventsMultiInstaExperiment.class);
+
+    EPRuntime runtime = null;
+    ShardedEngine engine = null;
+    RuleDeploymentManager.RuntimeSelector runtimes;
+    EventSink sink;
+    List<EPRuntime> allRuntimes;
+    WindowCheckpointer.ReplaySink replaySink;
+    EventTimeSequencer<SensorEventsMultiInstaExperiment> sequencer = null;
+    IncrementalRuleEngine incremental = null;
+    if (CEP_SHARDS > 1) {
+        engine = new ShardedEngine(CEP_SHARDS, config, "SensorEventsMultiInstaExperiment");
+        runtimes = engine::runtimeFor;
+        ShardedEngine router = engine;
+        sink = event -> {
+            router.send(event.getSensorId(), event);
+            return true;
+        };
+        allRuntimes = engine.runtimes();
+        replaySink = event -> router.runtimesFor(event.getSensorId())
+                .forEach(r -> r.getEventService().sendEventBean(event, "SensorEventsMultiInstaExperiment"));
+    } else {
+        EPRuntime single = EPRuntimeProvider.getDefaultRuntime(config);
+        runtime = single;
+        runtimes = contractId -> single;
+        // Count/avg window rules are evaluated incrementally, on Esper's clock (see IncrementalRuleEngine)
+        IncrementalRuleEngine fastPath = IncrementalRuleEngine.ENABLED ? new IncrementalRuleEngine() : null;
+        incremental = fastPath;
+        WindowCheckpointer.ReplaySink deliver = fastPath == null
+                ? event -> single.getEventService().sendEventBean(event, "SensorEventsMultiInstaExperiment")
+                : event -> {
+                    fastPath.send(event, single.getEventService().getCurrentTime());
+                    single.getEventService().sendEventBean(event, "SensorEventsMultiInstaExperiment");
+                };
+        if (CEP_EVENT_TIME) {
+            // Readings are reordered by sensor time and released behind the watermark
+            sequencer = new EventTimeSequencer<>(single.getEventService(), SensorEventsMultiInstaExperiment::getEventTime,
+                    deliver::send);
+            sink = sequencer::offer;
+        } else {
+            sink = event -> {
+                deliver.send(event);
+                return true;
+            };
+        }
+        allRuntimes = java.util.Collections.singletonList(single);
+        replaySink = deliver;
+    }
 
-    // 3️⃣ Deploy ALL rules for ALL instances BEFORE consuming from RabbitMQ
-    for (String contractId : contractIds) {
-        String rulesFile = "rules" + contractId + ".json";
-
-        try {
-            Map<?, ?> rulesConfig = mapper.readValue(new File(rulesFile), Map.class);
-
-            @SuppressWarnings("unchecked")
-            List<Map<String, Object>> rules = (List<Map<String, Object>>) rulesConfig.get("rules");
-
-            if (rules == null || rules.isEmpty()) {
-                System.err.println("⚠️ No rules found in " + rulesFile + " (contractId=" + contractId + ")");
-                continue;
-            }
-
-            for (Map<String, Object> rule : rules) {
-                String condition = (String) rule.get("condition");
-                String window = (String) rule.get("window");
-                String having = (String) rule.get("having");
-                String select = (String) rule.get("select");
-                String ruleSensorId = (String) rule.get("sensorId");
-
-                /* 
-                String epl = String.format(
-                        "select %s from SensorEventsMultiInstaExperiment(%s).win:%s having %s",
-                        select, condition, window, having
-                );*/
-                /* 
-                String epl = String.format(
-                     "select %s from SensorEventsMultiInstaExperiment.win:%s where %s having %s",
-                     select, window, condition, having
-                );*/
-                /* 
-                String epl = String.format(
-                        "select %s " +
-                        "from SensorEventsMultiInstaExperiment.win:%s " +
-                        "where %s " +
-                        "group by sensorId " +
-                        "having %s",
-                        select, window, condition, having
-                    );*/
-                boolean hasAggregate =
-                    select.contains("count(") ||
-                    select.contains("avg(") ||
-                    select.contains("sum(") ||
-                    select.contains("max(") ||
-                    select.contains("min(");
-
-                boolean hasWindow = (window != null && !window.trim().isEmpty());
-                boolean hasHaving = (having != null && !having.trim().isEmpty());
-
-                // Force per-rule sensor filtering (prevents temperatureRule matching lightExposure, etc.)
-                String safeSensorId = ruleSensorId.replace("'", "''");
-                String whereClause = "sensorId = '" + safeSensorId + "' AND (" + condition + ")";
-
-                String epl;
-
-                if (hasWindow && hasAggregate) {
-                    epl = String.format(
-                        "select %s from SensorEventsMultiInstaExperiment.win:%s where %s group by sensorId",
-                        select, window.trim(), whereClause
-                    );
-                } else if (hasWindow) {
-                    epl = String.format(
-                        "select %s from SensorEventsMultiInstaExperiment.win:%s where %s",
-                        select, window.trim(), whereClause
-                    );
-                } else {
-                    epl = String.format(
-                        "select %s from SensorEventsMultiInstaExperiment where %s",
-                        select, whereClause
-                    );
-                }
-
-                if (hasHaving) {
-                    epl += " having " + having.trim();
-                }
-
-
-                //System.out.println("8888888888888888888888 epl:" + epl);
-
-                CompilerArguments cargs = new CompilerArguments(config);
-                EPCompiled compiled = compiler.compile(epl, cargs);
-                EPDeployment deployment = runtime.getDeploymentService().deploy(compiled);
-
-                System.out.println("✅ Rule deployed: contractId=" + contractId + ", ruleId=" + rule.get("id"));
-
-                final String cid = contractId; // capture per listener
-
-                for (EPStatement stmt : deployment.getStatements()) {
-                    stmt.addListener((newData, oldData, s, r) -> {
-
-                        String alertTimestamp = java.time.LocalDateTime.now()
-                                .format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd-HH:mm:ss"));
-
-                        String alert = String.format(
-                                "🚨 ALERT: %s, alertTimestamp=%s}",
-                                newData[0].getUnderlying().toString().replaceAll("}$", ""),
-                                alertTimestamp
-                        );
-
-                        System.out.println(alert);
-
-                        // Publish alerts back to RabbitMQ
-                        try (com.rabbitmq.client.Connection conn = getRabbitConnection();
-                             com.rabbitmq.client.Channel channel = conn.createChannel()) {
-
-                            channel.exchangeDeclare(ALERTS_EXCHANGE, "fanout", true);
-                            channel.basicPublish(
-                                    ALERTS_EXCHANGE,
-                                    "",
-                                    null,
-                                    alert.getBytes(StandardCharsets.UTF_8)
-                            );
-
-                        } catch (Exception e) {
-                            System.err.println("❌ Failed to publish alert: " + e.getMessage());
-                            e.printStackTrace();
-                        }
-                    });
-                }
-            }
-
-        } catch (java.io.FileNotFoundException fnf) {
-            System.err.println("⚠️ Missing rules file: " + rulesFile + " (skipping contractId=" + contractId + ")");
-        } catch (Exception e) {
-            System.err.println("❌ Failed deploying rules for contractId=" + contractId);
-            e.printStackTrace();
+    // One publisher for all instances: connection and exchange set up once, not per alert
+    AlertPublisher alertPublisher = AlertPublisher.forAlerts(EsperBridgeMultiInstaExperiment::getRabbitConnection);
+    // Listeners only enqueue; encoding + publishing run on the dispatcher threads
+    AlertDispatcher alertDispatcher = new AlertDispatcher(alertPublisher);
+
+    // 3️⃣ Deploy ALL rules for ALL instances BEFORE consuming from RabbitMQ.
+    //    One deployment per (contractId, ruleId); later edits to instances.json / rules*.json
+    //    (or admin endpoint calls) are applied incrementally without touching other instances.
+    RuleDeploymentManager deployments = new RuleDeploymentManager(
+            runtimes, ruleCache, "SensorEventsMultiInstaExperiment",
+            (propertyNames, contractId, rule) -> alertListener(propertyNames, contractId, rule, alertDispatcher));
+    deployments.setIncremental(incremental);
+    if (engine != null) {
+        engine.attach(deployments);
+    }
+    // Partitioned mode: deploy only the rules of sensors in partitions this node owns
+    PartitionCoordinator partitions = CEP_PARTITIONS > 0 ? new PartitionCoordinator(CEP_PARTITIONS) : null;
+    if (partitions != null) {
+        deployments.setRuleFilter(rule -> partitions.owns((String) rule.get("sensorId")));
+    }
+    // Checkpoint mode: journal the readings each deployed window can still hold
+    WindowCheckpointer checkpointer = CEP_CHECKPOINT ? new WindowCheckpointer() : null;
+    if (checkpointer != null) {
+        deployments.onChange(() -> checkpointer.retainFor(deployments.rulesByContract()));
+        if (sequencer != null) {
+            checkpointer.useEventTime(runtime.getEventService()::getCurrentTime);
+        }
+    }
+    EventTimeSequencer<SensorEventsMultiInstaExperiment> eventTime = sequencer;
+    Runnable restore = () -> {
+        if (checkpointer.restore(allRuntimes, replaySink) > 0 && eventTime != null) {
+            eventTime.resumeAt(allRuntimes.get(0).getEventService().getCurrentTime());
         }
+    };
+    deployments.sync();
+    deployments.startWatcher();
+    com.sun.net.httpserver.HttpServer adminServer = deployments.startAdminEndpoint();
+
+    // Esper runtime/statement metrics + bridge counters on a local Prometheus endpoint
+    if (engine != null) {
+        engine.registerAdmin(adminServer);
+        for (int i = 0; i < engine.shardCount(); i++) {
+            BridgeMetrics.attachEsper(engine.runtime(i), ruleCache);
+        }
+    } else {
+        BridgeMetrics.attachEsper(runtime, ruleCache);
     }
+    com.sun.net.httpserver.HttpServer metricsServer = BridgeMetrics.startEndpoint();
+
+    ruleCache.printSummary();
+
+    // Load wallet identities once; per-message checks become cache lookups
+    SensorIdentityCache.start();
 
     // 4️⃣ Subscribe to RabbitMQ sensor data (persistent)
     System.out.println("✅ All instance rules deployed. Now starting RabbitMQ consumer...");
@@ -218,92 +205,219 @@ public class EsperBridgeMultiInstaExperiment {
 
     channel.queueDeclare(SENSOR_QUEUE, true, false, false, null);
 
-    channel.basicConsume(SENSOR_QUEUE, true, (consumerTag, message) -> {
-        String msg = new String(message.getBody(), StandardCharsets.UTF_8);
-
-        try {
-            Map<String, Object> sensorData = mapper.readValue(msg, Map.class);
-            String sensorId = (String) sensorData.get("sensorId");
-            Double value = Double.valueOf(sensorData.get("value").toString());
-            String sensorTimestamp = (String) sensorData.get("timestamp");
-           
-
-
-            // ✅ Step 1: Check enrollment in wallet
-            if (!WalletUtil.isSensorRegistered(sensorId)) {
-                System.err.println("⚠️ Unauthorized sensorId (not in wallet): " + sensorId);
-                return;
-            }
-
-            // ✅ Step 2: verify sensor cert CN matches sensorId
+    // Ack mode, prefetch and overload shedding (see IngestFlowControl); checkpoints ack in checkpoint mode
+    IngestFlowControl flow = new IngestFlowControl(checkpointer == null ? null : checkpointer::processed);
+
+    // Decode/verify/inject on a worker pool partitioned by sensorId (per-sensor order kept)
+    SensorIngestionPipeline pipeline = new SensorIngestionPipeline(checkpointer == null
+            ? message -> ingest(sink, message, flow)
+            : message -> {
+                // Journal what reached Esper; the delivery is acked by the checkpoint that covers it
+                long deliveryTag = message.getEnvelope().getDeliveryTag();
+                ingest(event -> {
+                    if (!sink.send(event)) {
+                        return false;
+                    }
+                    checkpointer.record(event, deliveryTag);
+                    return true;
+                }, message, flow);
+            }, flow);
+
+    if (partitions != null) {
+        // Claim partitions with the other nodes; each ownership change re-syncs the deployed rules
+        partitions.onChange(() -> {
             try {
-                String certPem = WalletUtil.getSensorCert(sensorId);
-                if (!CertificateUtil.verifySensorBinding(certPem, sensorId)) {
-                    System.err.println("⚠️ Certificate CN mismatch for sensorId: " + sensorId);
-                    return;
-                }
+                deployments.sync();
             } catch (Exception e) {
-                System.err.println("⚠️ Error verifying certificate for " + sensorId);
-                e.printStackTrace();
-                return;
+                System.err.println("❌ Rule sync after partition change failed: " + e.getMessage());
             }
-
-            // ✅ Step 3: Send to Esper
-            System.out.println("📡 " + sensorId + " value=" + value);
-            runtime.getEventService().sendEventBean(
-                    new SensorEventsMultiInstaExperiment(sensorId, value, sensorTimestamp),
-                    "SensorEventsMultiInstaExperiment"
-            );
-
-        } catch (Exception e) {
-            System.err.println("❌ Error processing message: " + e.getMessage());
-            e.printStackTrace();
+        });
+        if (checkpointer != null) {
+            // Restore once the first claim has deployed the owned rules, before consuming them
+            java.util.concurrent.atomic.AtomicBoolean restored = new java.util.concurrent.atomic.AtomicBoolean();
+            partitions.onChange(() -> {
+                if (restored.compareAndSet(false, true)) {
+                    restore.run();
+                }
+            });
+        }
+        partitions.setAutoAck(flow.autoAck());
+        partitions.setPrefetch(flow.prefetch());
+        if (Boolean.getBoolean("cep.partitionRouter")) {
+            PartitionCoordinator.startRouter(conn, SENSOR_QUEUE, CEP_PARTITIONS);
+        }
+        flow.start(partitions::consumerChannel, conn); // the consumer channel is opened by start()
+        partitions.start(conn, pipeline::submit);
+        if (checkpointer != null) {
+            checkpointer.start(partitions.consumerChannel());
         }
-    }, consumerTag -> {});
+    } else {
+        if (checkpointer != null) {
+            restore.run();
+            checkpointer.start(channel);
+        }
+        if (flow.prefetch() > 0) {
+            channel.basicQos(flow.prefetch());
+        }
+        flow.start(channel, conn);
+        channel.basicConsume(SENSOR_QUEUE, flow.autoAck(), (consumerTag, message) -> {
+            try {
+                pipeline.submit(message);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, consumerTag -> {});
+    }
+
+    if (eventTime != null) {
+        eventTime.startIdleFlush(); // a quiet stream still closes its windows
+        System.out.println("⏱️ Event-time mode: Esper time follows sensorTimestamp.");
+    }
 
     // 5️⃣ Keep the bridge alive indefinitely
-    System.out.println("🚀 EsperBridge running... waiting for sensor data...");
+    long startupMillis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+    BridgeMetrics.started(startupMillis);
+    System.out.println("🚀 EsperBridge running (started in " + startupMillis + " ms)... waiting for sensor data...");
 
+    ShardedEngine shardedEngine = engine;
     Runtime.getRuntime().addShutdownHook(new Thread(() -> {
         try {
             System.out.println("🔻 Shutting down EsperBridge...");
+            if (partitions != null) {
+                partitions.leave(); // hand the partitions to the other nodes right away, keep the channel for acks
+            }
+            pipeline.close();
+            if (eventTime != null) {
+                eventTime.close(); // release what is still in the reorder buffer
+            }
+            if (shardedEngine != null) {
+                shardedEngine.close();
+            }
+            if (checkpointer != null) {
+                checkpointer.close(); // final checkpoint, acks what it covers
+            }
+            if (partitions != null) {
+                partitions.close(); // only after the acks above: closing requeues what is unacked
+            }
             channel.close();
             conn.close();
+            metricsServer.stop(0);
+            adminServer.stop(0);
+            alertDispatcher.close();
+            alertPublisher.close();
         } catch (Exception ignored) {}
     }));
 
     Thread.currentThread().join(); // keep main thread alive
 }
 
+    // === Alert listener for one deployed rule, Esper statement or incremental (also used by LoadGenerator) ===
+    static RuleDeploymentManager.AlertListener alertListener(String[] propertyNames, String contractId,
+                                                             Map<String, Object> rule, AlertDispatcher alertDispatcher) {
+        // Rule context + select properties captured once per rule
+        AlertEncoder encoder = new AlertEncoder(propertyNames, contractId, rule);
+        BridgeMetrics.RuleCounter ruleAlerts = BridgeMetrics.ruleCounter(encoder.getContractId(), encoder.getRuleId());
+        // Optional "suppress" setting of the rule: cooldown / first-of-episode / periodic
+        AlertSuppressor suppressor = AlertSuppressor.forRule(propertyNames, contractId, rule);
+
+        return (alert, now) -> {
+            long listenerStart = System.nanoTime();
+            boolean send = suppressor == null || suppressor.admit(alert, now);
+
+            // Replayed checkpoint readings re-create windows; their alerts were already sent
+            // (their firings still count for the suppressor, so an open episode stays open)
+            if (WindowCheckpointer.isReplaying()) {
+                return;
+            }
+            if (!send) {
+                ruleAlerts.suppress();
+                return;
+            }
+
+            // Hand the alert to the dispatcher; the broker is never called on Esper's thread
+            ruleAlerts.increment();
+            alertDispatcher.submit(encoder, alert, encoder.routingKey());
+            BridgeMetrics.Stage.LISTENER.recordSince(listenerStart);
+        };
+    }
+
+    // === Decode, verify and inject one sensor_data delivery (runs on an ingestion worker) ===
+    // Settles the delivery with flow: a decode failure is MALFORMED, a failure on the way
+    // into Esper FAILED if no reading got there yet and PARTIAL otherwise
+    static void ingest(EventSink sink, Delivery message, IngestFlowControl flow) {
+        IngestFlowControl.Outcome outcome = IngestFlowControl.Outcome.FAILED;
+        int processed = 0;
+        try {
+            long batchStart = System.nanoTime();
+
+            // Stream-decode the body straight into events: one reading, or a gateway batch
+            List<SensorEventsMultiInstaExperiment> events;
+            try {
+                events = SensorMessageDecoder.decodeAll(message, SensorEventsMultiInstaExperiment::new);
+            } catch (IOException e) {
+                // Undecodable body: nothing reached Esper, and a retry cannot help
+                BridgeLog.warn("ingest", "❌ Malformed sensor message: {}", e.getMessage());
+                BridgeLog.audit("-", "MALFORMED");
+                BridgeMetrics.rejected("MALFORMED");
+                outcome = IngestFlowControl.Outcome.MALFORMED;
+                return;
+            }
+            BridgeMetrics.Stage.DECODE.recordSince(batchStart);
+            BridgeMetrics.READINGS_RECEIVED.add(events.size());
+
+            // ✅ Step 1+2: wallet enrollment and cert CN binding, once per distinct sensorId
+            Map<String, Boolean> admitted = new HashMap<>();
+
+            for (SensorEventsMultiInstaExperiment event : events) {
+                String sensorId = event.getSensorId();
+                Boolean ok = admitted.get(sensorId);
+                if (ok == null) {
+                    long verifyStart = System.nanoTime();
+                    ok = SensorIdentityCache.admit(sensorId);
+                    BridgeMetrics.Stage.VERIFY.recordSince(verifyStart);
+                    admitted.put(sensorId, ok);
+                }
+                if (!ok) {
+                    processed++;
+                    continue;
+                }
+
+                // ✅ Step 3: Send to Esper (in message order)
+                BridgeLog.info("reading", "📡 {} value={}", sensorId, event.getValue());
+                long sendStart = System.nanoTime();
+                boolean sent = sink.send(event);
+                BridgeMetrics.Stage.SEND.recordSince(sendStart);
+                if (sent) {
+                    // Late readings are counted by the event-time sequencer instead
+                    BridgeMetrics.READINGS_ACCEPTED.increment();
+                }
+                processed++;
+            }
+
+            if (events.size() > 1) {
+                SensorBatchStats.record(events.size(), System.nanoTime() - batchStart);
+            }
+            outcome = IngestFlowControl.Outcome.PROCESSED;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            BridgeLog.error("ingest", e, "❌ Error processing message: {}", e.getMessage());
+        } finally {
+            if (outcome == IngestFlowControl.Outcome.FAILED && processed > 0) {
+                outcome = IngestFlowControl.Outcome.PARTIAL;
+            }
+            flow.completed(message, outcome, processed);
+        }
+    }
 
     // === Build a TLS-encrypted connection to RabbitMQ using mutual TLS (EXTERNAL) ===
     private static com.rabbitmq.client.Connection getRabbitConnection() throws Exception {
         //System.out.println("📁 CA Path: " + CA_PATH.toAbsolutePath());
         //System.out.println("📁 PKCS12 Path: " + P12_PATH.toAbsolutePath());
 
-        // Load CA certificate (trust store)
-        CertificateFactory cf = CertificateFactory.getInstance("X.509");
-        X509Certificate caCert;
-        try (FileInputStream fis = new FileInputStream(CA_PATH.toFile())) {
-            caCert = (X509Certificate) cf.generateCertificate(fis);
-        }
-        KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
-        trustStore.load(null, null);
-        trustStore.setCertificateEntry("fabric-ca", caCert);
-        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
-        tmf.init(trustStore);
-
-        // Load client key + certificate (from cep_bridge.p12)
-        KeyStore keyStore = KeyStore.getInstance("PKCS12");
-        try (FileInputStream ksFile = new FileInputStream(P12_PATH.toFile())) {
-            keyStore.load(ksFile, P12_PASSWORD);
-        }
-        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
-        kmf.init(keyStore, P12_PASSWORD);
-
-        // Build SSL context for mutual TLS
-        SSLContext sslContext = SSLContext.getInstance("TLS");//v1.2
-        sslContext.init(kmf.getKeyManagers(), tmf.getTrustManagers(), new SecureRandom());
+        // Shared SSL context: CA + keystore parsed once, reloaded on rotation
+        SSLContext sslContext = TLS.sslContext();
 
         // Connect to RabbitMQ
         ConnectionFactory factory = new ConnectionFactory();
@@ -17,19 +17,13 @@ import com.rabbitmq.client.ConnectionFactory;
 
 // Java core
 import java.io.File;
-import java.io.FileInputStream;
 import java.nio.channels.Channel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.KeyStore;
-import java.security.SecureRandom;
-import java.security.cert.CertificateFactory;
-import java.security.cert.X509Certificate;
 import java.sql.Connection;
 
 import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManagerFactory;
 import java.util.List;
 import java.util.Map;
 
@@ -49,6 +43,8 @@ public class EsperBridgeMutualTLS {
     private static final Path CERT_PATH = __dirname.getParent().resolveSibling("certs/rabbitmq-server.crt");
     private static final Path KEY_PATH = __dirname.getParent().resolveSibling("certs/rabbitmq-server.key");
 
+    private static final TlsMaterialProvider TLS = TlsMaterialProvider.forPem(CA_PATH, CERT_PATH, KEY_PATH);
+
     // === RabbitMQ constants ===
     private static final String RABBIT_HOST = "rabbitmq-server";
     private static final int RABBIT_PORT = 5671;
@@ -155,39 +151,8 @@ public class EsperBridgeMutualTLS {
         System.out.println("📁 Server Cert: " + CERT_PATH.toAbsolutePath());
         System.out.println("📁 Server Key: " + KEY_PATH.toAbsolutePath());
 
-        // Load certificates
-        CertificateFactory cf = CertificateFactory.getInstance("X.509");
-
-        X509Certificate caCert;
-        try (FileInputStream fis = new FileInputStream(CA_PATH.toFile())) {
-            caCert = (X509Certificate) cf.generateCertificate(fis);
-        }
-
-        X509Certificate clientCert;
-        try (FileInputStream fis = new FileInputStream(CERT_PATH.toFile())) {
-            clientCert = (X509Certificate) cf.generateCertificate(fis);
-        }
-
-        // Load private key (via your existing CertificateUtil)
-        java.security.PrivateKey clientKey = CertificateUtil.loadPrivateKey(KEY_PATH.toString());
-
-        // Build trust/key stores
-        KeyStore ks = KeyStore.getInstance("PKCS12");
-        ks.load(null, null);
-        ks.setKeyEntry("client-key", clientKey, "".toCharArray(), new java.security.cert.Certificate[]{clientCert});
-        ks.setCertificateEntry("fabric-ca", caCert);
-
-        // Init SSL context
-        javax.net.ssl.KeyManagerFactory kmf = javax.net.ssl.KeyManagerFactory.getInstance(
-                javax.net.ssl.KeyManagerFactory.getDefaultAlgorithm());
-        kmf.init(ks, "".toCharArray());
-
-        TrustManagerFactory tmf = TrustManagerFactory.getInstance(
-                TrustManagerFactory.getDefaultAlgorithm());
-        tmf.init(ks);
-
-        SSLContext sslContext = SSLContext.getInstance("TLS");
-        sslContext.init(kmf.getKeyManagers(), tmf.getTrustManagers(), new SecureRandom());
+        // Shared SSL context: CA, cert and key parsed once, reloaded on rotation
+        SSLContext sslContext = TLS.sslContext();
 
         // Connect to RabbitMQ securely
         ConnectionFactory factory = new ConnectionFactory();
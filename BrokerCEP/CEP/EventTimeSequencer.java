@@ -0,0 +1,193 @@
+import com.espertech.esper.runtime.client.EPEventService;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Event-time mode: Esper time follows the sensor timestamps instead of the wall clock.
+ *
+ * The runtime runs with its internal timer disabled. Readings go through a bounded
+ * reorder buffer; the watermark trails the highest event time seen by
+ * -DeventTime.maxOutOfOrderMs (default 5000). Readings at or below the watermark are
+ * released in event-time order: the runtime is advanced to each reading's time
+ * (advanceTime) before it is sent, and to the watermark itself, so time windows
+ * expire by measurement time. Readings that arrive below the watermark are late: they
+ * are dropped and counted. When the buffer holds -DeventTime.reorderCapacity readings
+ * (default 100000) the oldest are released early.
+ *
+ * In live mode, startIdleFlush() releases everything once no reading has arrived for
+ * -DeventTime.idleMs (default: maxOutOfOrderMs), so a quiet stream still fires its
+ * windows. A replay calls flush() at the end instead. Neither an early release nor a
+ * flush moves the watermark past maxSeen - maxOutOfOrderMs: a reading of another
+ * sensor that arrives afterwards within the bound is still accepted, and sent at the
+ * runtime's current time (Esper time never goes back).
+ *
+ * Event times come from SensorTimestamps, parsed once when the reading is built.
+ *
+ * All methods are synchronized: the sequencer is the single point where Esper time
+ * advances, so ingestion workers may call offer() concurrently.
+ */
+public class EventTimeSequencer<T> implements AutoCloseable {
+
+    public static final boolean ENABLED = Boolean.getBoolean("cep.eventTime");
+
+    /** Event time of a reading without a usable timestamp. */
+    public static final long NO_TIME = SensorTimestamps.NO_TIME;
+
+    private static final long MAX_OUT_OF_ORDER_MS = Long.getLong("eventTime.maxOutOfOrderMs", 5000L);
+    private static final int CAPACITY = Integer.getInteger("eventTime.reorderCapacity", 100_000);
+    private static final long IDLE_MS = Long.getLong("eventTime.idleMs", MAX_OUT_OF_ORDER_MS);
+
+    private final EPEventService clock;
+    private final ToLongFunction<T> timeOf;
+    private final Consumer<T> sink;
+    private final PriorityQueue<Entry<T>> buffer = new PriorityQueue<>();
+    private final LongAdder late = new LongAdder();
+    private final LongAdder invalid = new LongAdder();
+    private final LongAdder released = new LongAdder();
+
+    private long clockTime = NO_TIME;
+    private long maxSeen = NO_TIME;
+    private long watermark = NO_TIME;
+    private long seq;
+    private volatile long lastArrivalNanos = System.nanoTime();
+    private ScheduledExecutorService idleFlusher;
+
+    private static final class Entry<T> implements Comparable<Entry<T>> {
+        final long time;
+        final long seq;
+        final T event;
+
+        Entry(long time, long seq, T event) {
+            this.time = time;
+            this.seq = seq;
+            this.event = event;
+        }
+
+        @Override
+        public int compareTo(Entry<T> o) {
+            int c = Long.compare(time, o.time);
+            return c != 0 ? c : Long.compare(seq, o.seq); // equal times keep arrival order
+        }
+    }
+
+    /**
+     * @param clock  the event service of a runtime whose internal timer is disabled
+     * @param timeOf event time in epoch millis (NO_TIME if unknown)
+     * @param sink   sends a released reading to the runtime (e.g. sendEventBean)
+     */
+    public EventTimeSequencer(EPEventService clock, ToLongFunction<T> timeOf, Consumer<T> sink) {
+        this.clock = clock;
+        this.timeOf = timeOf;
+        this.sink = sink;
+        BridgeMetrics.watchEventTime(this);
+    }
+
+    /** Buffers a reading; returns false if it was dropped (late, or no usable timestamp). */
+    public synchronized boolean offer(T event) {
+        long time = timeOf.applyAsLong(event);
+        if (time == NO_TIME) {
+            invalid.increment();
+            BridgeLog.warn("event-time", "⚠️ Reading without a usable timestamp dropped: {}", event);
+            return false;
+        }
+        if (watermark != NO_TIME && time < watermark) {
+            late.increment();
+            BridgeLog.warn("event-time", "⚠️ Late reading dropped ({} ms behind the watermark): {}", watermark - time, event);
+            return false;
+        }
+        lastArrivalNanos = System.nanoTime();
+        buffer.add(new Entry<>(time, seq++, event));
+        if (time > maxSeen) {
+            maxSeen = time;
+        }
+        release(maxSeen - MAX_OUT_OF_ORDER_MS);
+        while (buffer.size() > CAPACITY) {
+            release(buffer.peek().time);
+        }
+        return true;
+    }
+
+    /** Releases everything buffered and advances time to the highest event time seen; the watermark stays behind by maxOutOfOrderMs. */
+    public synchronized void flush() {
+        if (maxSeen != NO_TIME) {
+            release(maxSeen);
+        }
+    }
+
+    private void release(long upTo) {
+        // The lateness bound follows maxSeen only: releasing early or flushing does not make in-bound readings late
+        long bound = Math.min(upTo, maxSeen - MAX_OUT_OF_ORDER_MS);
+        if (watermark == NO_TIME || bound > watermark) {
+            watermark = bound;
+        }
+        while (!buffer.isEmpty() && buffer.peek().time <= upTo) {
+            Entry<T> e = buffer.poll();
+            advanceTo(e.time);
+            sink.accept(e.event);
+            released.increment();
+        }
+        advanceTo(upTo);
+    }
+
+    private void advanceTo(long time) {
+        // The first release sets the clock outright: the runtime starts at the wall clock
+        if (clockTime == NO_TIME || time > clockTime) {
+            clock.advanceTime(time);
+            clockTime = time;
+        }
+    }
+
+    /** Continues from a clock that was set elsewhere (a restored checkpoint); time never goes back past it. */
+    public synchronized void resumeAt(long time) {
+        clockTime = time;
+    }
+
+    /** Live mode: flushes the buffer when the stream has been quiet for eventTime.idleMs. */
+    public void startIdleFlush() {
+        idleFlusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "event-time-idle-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(10, IDLE_MS / 2);
+        idleFlusher.scheduleWithFixedDelay(() -> {
+            if (System.nanoTime() - lastArrivalNanos >= IDLE_MS * 1_000_000L) {
+                flush();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized int buffered() {
+        return buffer.size();
+    }
+
+    public synchronized long watermark() {
+        return watermark;
+    }
+
+    public long lateCount() {
+        return late.sum();
+    }
+
+    public long invalidCount() {
+        return invalid.sum();
+    }
+
+    public long releasedCount() {
+        return released.sum();
+    }
+
+    @Override
+    public void close() {
+        if (idleFlusher != null) {
+            idleFlusher.shutdownNow();
+        }
+        flush();
+    }
+}
@@ -0,0 +1,459 @@
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.DeliverCallback;
+import com.rabbitmq.client.Delivery;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for the RabbitMQ broker, so the bridge can be load tested on
+ * one box without RabbitMQ, TLS or Fabric.
+ *
+ * newConnection() returns com.rabbitmq.client Connection/Channel implementations
+ * (dynamic proxies) covering what the bridge uses: exchange/queue declare, bind and
+ * unbind, basicPublish through the default, fanout, direct and topic exchanges,
+ * basicConsume with auto-ack or manual ack (basicQos prefetch, ack/nack/reject with
+ * requeue), basicGet, publisher confirms (confirmed immediately) and queues declared
+ * with x-single-active-consumer (only the oldest consumer receives; the next one
+ * takes over when it is cancelled). Other Channel methods throw
+ * UnsupportedOperationException.
+ *
+ * Messages live in memory only; durability flags and arguments are ignored.
+ * Each consumer gets its own delivery thread, competing for messages like a real queue.
+ */
+public class InProcessBroker {
+
+    private final Map<String, Queue> queues = new ConcurrentHashMap<>();
+    private final Map<String, Exchange> exchanges = new ConcurrentHashMap<>();
+    private final AtomicInteger channelNumbers = new AtomicInteger();
+    private final AtomicInteger generatedNames = new AtomicInteger();
+
+    private static final class Queue {
+        final String name;
+        final LinkedBlockingDeque<Delivery> messages = new LinkedBlockingDeque<>();
+        final AtomicLong published = new AtomicLong();
+        final AtomicLong delivered = new AtomicLong();
+        final List<String> consumerOrder = new CopyOnWriteArrayList<>();
+        volatile boolean singleActive;
+
+        Queue(String name) {
+            this.name = name;
+        }
+
+        String activeConsumer() {
+            Object[] order = consumerOrder.toArray();
+            return order.length == 0 ? null : (String) order[0];
+        }
+    }
+
+    private static final class Exchange {
+        final String type;
+        final List<String[]> bindings = new CopyOnWriteArrayList<>(); // {queue, bindingKey}
+
+        Exchange(String type) {
+            this.type = type;
+        }
+    }
+
+    /** The AMQP default exchange plus amq.* are implicit, as on a real broker. */
+    public InProcessBroker() {
+        exchanges.put("amq.fanout", new Exchange("fanout"));
+        exchanges.put("amq.direct", new Exchange("direct"));
+        exchanges.put("amq.topic", new Exchange("topic"));
+    }
+
+    public Connection newConnection() {
+        return proxy(Connection.class, new ConnectionHandler());
+    }
+
+    /** Messages waiting in a queue (0 if it does not exist). */
+    public long depth(String queue) {
+        Queue q = queues.get(queue);
+        return q == null ? 0 : q.messages.size();
+    }
+
+    public long published(String queue) {
+        Queue q = queues.get(queue);
+        return q == null ? 0 : q.published.get();
+    }
+
+    public long delivered(String queue) {
+        Queue q = queues.get(queue);
+        return q == null ? 0 : q.delivered.get();
+    }
+
+    // === Routing ===
+
+    private Exchange exchange(String name) throws IOException {
+        Exchange x = exchanges.get(name);
+        if (x == null) {
+            throw new IOException("NOT_FOUND - no exchange '" + name + "'");
+        }
+        return x;
+    }
+
+    private Queue declareQueue(String name) {
+        return queues.computeIfAbsent(name, Queue::new);
+    }
+
+    private void publish(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body)
+            throws IOException {
+        List<Queue> targets = new ArrayList<>(1);
+        if (exchange.isEmpty()) {
+            Queue q = queues.get(routingKey);
+            if (q != null) {
+                targets.add(q);
+            }
+        } else {
+            Exchange x = exchange(exchange);
+            for (String[] binding : x.bindings) {
+                if (routes(x.type, binding[1], routingKey)) {
+                    Queue q = queues.get(binding[0]);
+                    if (q != null && !targets.contains(q)) {
+                        targets.add(q);
+                    }
+                }
+            }
+        }
+        // Unroutable messages are dropped, as without the mandatory flag
+        for (Queue q : targets) {
+            q.published.incrementAndGet();
+            q.messages.offerLast(new Delivery(new Envelope(0, false, exchange, routingKey), props, body));
+        }
+    }
+
+    private static boolean routes(String type, String bindingKey, String routingKey) {
+        switch (type) {
+            case "fanout":
+                return true;
+            case "direct":
+                return bindingKey.equals(routingKey);
+            case "topic":
+                return topicMatches(bindingKey, routingKey);
+            default:
+                return false;
+        }
+    }
+
+    /** AMQP topic matching: '*' matches one dot-separated word, '#' zero or more. */
+    static boolean topicMatches(String pattern, String routingKey) {
+        return match(pattern.split("\\.", -1), 0, routingKey.split("\\.", -1), 0);
+    }
+
+    private static boolean match(String[] pattern, int i, String[] words, int j) {
+        if (i == pattern.length) {
+            return j == words.length;
+        }
+        if ("#".equals(pattern[i])) {
+            for (int skip = j; skip <= words.length; skip++) {
+                if (match(pattern, i + 1, words, skip)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return j < words.length
+                && ("*".equals(pattern[i]) || pattern[i].equals(words[j]))
+                && match(pattern, i + 1, words, j + 1);
+    }
+
+    // === Connection / Channel ===
+
+    private final class ConnectionHandler implements InvocationHandler {
+        private final List<Channel> channels = new CopyOnWriteArrayList<>();
+        private volatile boolean open = true;
+
+        @Override
+        public Object invoke(Object self, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "createChannel":
+                    Channel channel = proxy(Channel.class, new ChannelHandler());
+                    channels.add(channel);
+                    return channel;
+                case "close":
+                case "abort":
+                    open = false;
+                    for (Channel c : channels) {
+                        c.close();
+                    }
+                    return null;
+                case "isOpen":
+                    return open;
+                case "addShutdownListener":
+                case "removeShutdownListener":
+                    return null;
+                default:
+                    return objectMethod(self, method, args);
+            }
+        }
+    }
+
+    private final class ChannelHandler implements InvocationHandler {
+        private final int number = channelNumbers.incrementAndGet();
+        private final AtomicLong deliveryTags = new AtomicLong();
+        private final AtomicLong publishSeqNo = new AtomicLong(1);
+        private final AtomicInteger consumerTags = new AtomicInteger();
+        private final ConcurrentSkipListMap<Long, Object[]> unacked = new ConcurrentSkipListMap<>(); // tag -> {queue, delivery}
+        private final Map<String, Thread> consumers = new ConcurrentHashMap<>();
+        private volatile Semaphore prefetch;
+        private volatile boolean open = true;
+
+        @Override
+        public Object invoke(Object self, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "exchangeDeclare": {
+                    String type = String.valueOf(args[1]).toLowerCase();
+                    exchanges.computeIfAbsent((String) args[0], n -> new Exchange(type));
+                    return ok(method.getReturnType(), null, 0);
+                }
+                case "queueDeclare": {
+                    String name = args == null || args.length == 0
+                            ? "amq.gen-" + generatedNames.incrementAndGet()
+                            : (String) args[0];
+                    Queue q = declareQueue(name);
+                    if (args != null && args.length == 5 && args[4] instanceof Map
+                            && Boolean.TRUE.equals(((Map<?, ?>) args[4]).get("x-single-active-consumer"))) {
+                        q.singleActive = true;
+                    }
+                    return ok(method.getReturnType(), name, q.messages.size());
+                }
+                case "queueBind":
+                    exchange((String) args[1]).bindings.add(new String[]{(String) args[0], (String) args[2]});
+                    return ok(method.getReturnType(), (String) args[0], 0);
+                case "queueUnbind":
+                    exchange((String) args[1]).bindings.removeIf(
+                            b -> b[0].equals(args[0]) && b[1].equals(args[2]));
+                    return ok(method.getReturnType(), (String) args[0], 0);
+                case "queueDelete":
+                    queues.remove((String) args[0]);
+                    return ok(method.getReturnType(), (String) args[0], 0);
+                case "basicPublish":
+                    publishSeqNo.incrementAndGet();
+                    publish((String) args[0], (String) args[1],
+                            (AMQP.BasicProperties) args[args.length - 2], (byte[]) args[args.length - 1]);
+                    return null;
+                case "basicConsume":
+                    return consume(args);
+                case "basicCancel": {
+                    Thread consumer = consumers.remove((String) args[0]);
+                    if (consumer != null) {
+                        consumer.interrupt();
+                    }
+                    queues.values().forEach(q -> q.consumerOrder.remove((String) args[0]));
+                    return null;
+                }
+                case "basicQos": {
+                    int count = (Integer) args[args.length == 3 ? 1 : 0];
+                    prefetch = count > 0 ? new Semaphore(count) : null;
+                    return null;
+                }
+                case "basicAck":
+                    settle((Long) args[0], (Boolean) args[1], false);
+                    return null;
+                case "basicNack":
+                    settle((Long) args[0], (Boolean) args[1], (Boolean) args[2]);
+                    return null;
+                case "basicReject":
+                    settle((Long) args[0], false, (Boolean) args[1]);
+                    return null;
+                case "basicGet": {
+                    Queue q = queues.get((String) args[0]);
+                    Delivery d = q == null ? null : q.messages.pollFirst();
+                    if (d == null) {
+                        return null;
+                    }
+                    q.delivered.incrementAndGet();
+                    Delivery tagged = track(q, d, (Boolean) args[1]);
+                    return new GetResponse(tagged.getEnvelope(), tagged.getProperties(), tagged.getBody(), q.messages.size());
+                }
+                case "confirmSelect":
+                    return ok(method.getReturnType(), null, 0);
+                case "waitForConfirms":
+                    return true;
+                case "waitForConfirmsOrDie":
+                case "addConfirmListener":
+                case "addShutdownListener":
+                case "removeShutdownListener":
+                    return null;
+                case "getNextPublishSeqNo":
+                    return publishSeqNo.get();
+                case "getChannelNumber":
+                    return number;
+                case "isOpen":
+                    return open;
+                case "close":
+                case "abort":
+                    open = false;
+                    for (Thread consumer : consumers.values()) {
+                        consumer.interrupt();
+                    }
+                    for (String tag : consumers.keySet()) {
+                        queues.values().forEach(q -> q.consumerOrder.remove(tag));
+                    }
+                    consumers.clear();
+                    // Unacknowledged deliveries go back to their queues
+                    for (Long tag : new ArrayList<>(unacked.keySet())) {
+                        settle(tag, false, true);
+                    }
+                    return null;
+                default:
+                    return objectMethod(self, method, args);
+            }
+        }
+
+        private String consume(Object[] args) throws IOException {
+            String queueName = (String) args[0];
+            boolean autoAck = args.length > 1 && args[1] instanceof Boolean && (Boolean) args[1];
+            DeliverCallback callback = null;
+            for (Object arg : args) {
+                if (arg instanceof DeliverCallback) {
+                    callback = (DeliverCallback) arg;
+                }
+            }
+            if (callback == null) {
+                throw new UnsupportedOperationException("basicConsume without a DeliverCallback");
+            }
+            Queue q = queues.get(queueName);
+            if (q == null) {
+                throw new IOException("NOT_FOUND - no queue '" + queueName + "'");
+            }
+
+            String tag = "amq.ctag-" + number + "-" + consumerTags.incrementAndGet();
+            DeliverCallback deliver = callback;
+            q.consumerOrder.add(tag);
+            Thread consumer = new Thread(() -> {
+                try {
+                    while (open) {
+                        if (q.singleActive && !tag.equals(q.activeConsumer())) {
+                            Thread.sleep(10); // standby until the active consumer goes away
+                            continue;
+                        }
+                        Semaphore window = autoAck ? null : prefetch;
+                        if (window != null) {
+                            window.acquire();
+                        }
+                        Delivery d = q.messages.pollFirst(100, TimeUnit.MILLISECONDS);
+                        if (d == null) {
+                            if (window != null) {
+                                window.release();
+                            }
+                            continue;
+                        }
+                        q.delivered.incrementAndGet();
+                        try {
+                            deliver.handle(tag, track(q, d, autoAck));
+                        } catch (Exception e) {
+                            BridgeLog.error("broker", e, "❌ Consumer {} failed: {}", tag, e.getMessage());
+                        }
+                    }
+                } catch (InterruptedException ignored) {
+                } finally {
+                    q.consumerOrder.remove(tag);
+                }
+            }, "broker-consumer-" + queueName + "-" + tag);
+            consumer.setDaemon(true);
+            consumers.put(tag, consumer);
+            consumer.start();
+            return tag;
+        }
+
+        /** Stamps a channel-scoped delivery tag; remembers the message until it is acked if needed. */
+        private Delivery track(Queue q, Delivery d, boolean autoAck) {
+            long tag = deliveryTags.incrementAndGet();
+            Delivery tagged = new Delivery(
+                    new Envelope(tag, d.getEnvelope().isRedeliver(), d.getEnvelope().getExchange(),
+                            d.getEnvelope().getRoutingKey()),
+                    d.getProperties(), d.getBody());
+            if (!autoAck) {
+                unacked.put(tag, new Object[]{q, d});
+            }
+            return tagged;
+        }
+
+        private void settle(long tag, boolean multiple, boolean requeue) {
+            List<Object[]> settled = new ArrayList<>();
+            if (multiple) {
+                Map<Long, Object[]> upTo = unacked.headMap(tag, true);
+                settled.addAll(upTo.values());
+                upTo.clear();
+            } else {
+                Object[] one = unacked.remove(tag);
+                if (one != null) {
+                    settled.add(one);
+                }
+            }
+            for (Object[] entry : settled) {
+                if (requeue) {
+                    Queue q = (Queue) entry[0];
+                    Delivery d = (Delivery) entry[1];
+                    q.messages.offerFirst(new Delivery(
+                            new Envelope(0, true, d.getEnvelope().getExchange(), d.getEnvelope().getRoutingKey()),
+                            d.getProperties(), d.getBody()));
+                }
+                Semaphore window = prefetch;
+                if (window != null) {
+                    window.release();
+                }
+            }
+        }
+    }
+
+    // === Proxy plumbing ===
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(InProcessBroker.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    /** Declare/Bind/SelectOk replies: only the queue name and message count carry information. */
+    private static Object ok(Class<?> type, String queue, int messageCount) {
+        if (type == void.class || !type.isInterface()) {
+            return null;
+        }
+        return Proxy.newProxyInstance(InProcessBroker.class.getClassLoader(), new Class<?>[]{type},
+                (self, method, args) -> {
+                    switch (method.getName()) {
+                        case "getQueue":
+                            return queue;
+                        case "getMessageCount":
+                            return messageCount;
+                        case "getConsumerCount":
+                            return 0;
+                        default:
+                            return objectMethod(self, method, args);
+                    }
+                });
+    }
+
+    private static Object objectMethod(Object self, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "toString":
+                return "InProcessBroker$" + method.getDeclaringClass().getSimpleName() + "@" + System.identityHashCode(self);
+            case "hashCode":
+                return System.identityHashCode(self);
+            case "equals":
+                return self == args[0];
+            default:
+                throw new UnsupportedOperationException(
+                        "InProcessBroker does not implement " + method.getDeclaringClass().getSimpleName()
+                                + "." + method.getName());
+        }
+    }
+}
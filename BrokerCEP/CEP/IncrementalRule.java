@@ -0,0 +1,825 @@
+import com.espertech.esper.common.client.EventBean;
+import com.espertech.esper.common.client.EventPropertyDescriptor;
+import com.espertech.esper.common.client.EventPropertyGetter;
+import com.espertech.esper.common.client.EventPropertyGetterIndexed;
+import com.espertech.esper.common.client.EventPropertyGetterMapped;
+import com.espertech.esper.common.client.EventType;
+import com.espertech.esper.common.client.FragmentEventType;
+import com.espertech.esper.common.client.meta.EventTypeApplicationType;
+import com.espertech.esper.common.client.meta.EventTypeIdPair;
+import com.espertech.esper.common.client.meta.EventTypeMetadata;
+import com.espertech.esper.common.client.meta.EventTypeTypeClass;
+import com.espertech.esper.common.client.type.EPType;
+import com.espertech.esper.common.client.type.EPTypeClass;
+import com.espertech.esper.common.client.util.EventTypeBusModifier;
+import com.espertech.esper.common.client.util.NameAccessModifier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One rule evaluated without Esper, for the shape nearly all rules have:
+ *
+ *   "condition": comparisons of value with numbers, combined with and/or/not
+ *   "window":    time(...)
+ *   "select":    sensorId, sensorTimestamp, value and aliased count(*), avg(value),
+ *                sum(value), min(value), max(value)
+ *   "having":    comparisons of those aggregates with numbers (optional)
+ *
+ * RuleEplBuilder turns such a rule into a per-sensor time window with one group, so
+ * the state needed is the window's (arrival time, value) pairs. They are kept in
+ * primitive ring buffers with a running count and sum; min and max, when used, come
+ * from monotonic deques. Each reading costs O(1) amortized: expire what left the
+ * window, add, test having. Esper keeps an event reference per windowed reading plus
+ * its own window and aggregation bookkeeping.
+ *
+ * Results equal Esper's for the same clock: readings leave the window once
+ * arrival + window <= now, avg and sum are updated by the same additions and
+ * subtractions (and reset when the window empties), and one row per admitted
+ * reading is passed to the listener if having holds. That is Esper's output when
+ * select has value or sensorTimestamp besides the aggregates; with only sensorId
+ * Esper outputs per group and fires on expiry as well, so such rules are not
+ * taken. compile() returns null for anything else, and the rule stays on Esper.
+ * IncrementalRuleCheck compares both, and Row carries the event type Esper's output
+ * would have.
+ */
+public class IncrementalRule {
+
+    private static final Pattern STRICT_PERIOD = Pattern.compile(
+            "(\\s*\\d+(?:\\.\\d+)?\\s*(milliseconds?|msec|ms|seconds?|sec|s|minutes?|min|hours?|hr|h|days?|d)\\b)+\\s*");
+    private static final Pattern TIME_WINDOW = Pattern.compile("^\\s*time\\s*\\((.*)\\)\\s*$");
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Operand kinds
+    private static final int NUMBER = 0, VALUE = 1, COUNT = 2, AVG = 3, SUM = 4, MIN = 5, MAX = 6;
+    // Select columns beyond the operands
+    private static final int SENSOR_ID = 7, SENSOR_TIMESTAMP = 8;
+
+    private final String sensorId;
+    private final long windowMillis;
+    private final Test condition;
+    private final Test having;
+    private final String[] columns;
+    private final int[] columnKinds;
+    private final RowType rowType;
+    private final boolean tracksMin;
+    private final boolean tracksMax;
+
+    private volatile RuleDeploymentManager.AlertListener listener;
+
+    // Window state, guarded by this
+    private long[] times = new long[INITIAL_CAPACITY];
+    private double[] values = new double[INITIAL_CAPACITY];
+    private int head;
+    private int size;
+    private long count;
+    private double sum;
+    private final MonotonicDeque minDeque;
+    private final MonotonicDeque maxDeque;
+
+    private IncrementalRule(String sensorId, long windowMillis, Test condition, Test having,
+                            String[] columns, int[] columnKinds, boolean tracksMin, boolean tracksMax) {
+        this.sensorId = sensorId;
+        this.windowMillis = windowMillis;
+        this.condition = condition;
+        this.having = having;
+        this.columns = columns;
+        this.columnKinds = columnKinds;
+        this.rowType = new RowType("incremental_" + sensorId, columns, columnKinds);
+        this.tracksMin = tracksMin;
+        this.tracksMax = tracksMax;
+        this.minDeque = tracksMin ? new MonotonicDeque(true) : null;
+        this.maxDeque = tracksMax ? new MonotonicDeque(false) : null;
+    }
+
+    /** The rule as an IncrementalRule, or null if it does not have the supported shape. */
+    public static IncrementalRule compile(Map<String, Object> rule) {
+        Object sensorId = rule.get("sensorId");
+        Object window = rule.get("window");
+        Object select = rule.get("select");
+        if (!(sensorId instanceof String) || !(window instanceof String) || !(select instanceof String)) {
+            return null;
+        }
+        Matcher time = TIME_WINDOW.matcher((String) window);
+        if (!time.matches() || !STRICT_PERIOD.matcher(time.group(1)).matches()) {
+            return null;
+        }
+        long windowMillis = RuleEplBuilder.timeWindowMillis((String) window);
+        if (windowMillis <= 0 || !RuleEplBuilder.hasAggregate((String) select)) {
+            return null;
+        }
+        try {
+            String conditionText = text(rule.get("condition"));
+            String havingText = text(rule.get("having"));
+            Test condition = conditionText.isEmpty() ? null : new Parser(conditionText, false).parseAll();
+            Test having = havingText.isEmpty() ? null : new Parser(havingText, true).parseAll();
+
+            List<String> names = new ArrayList<>();
+            List<Integer> kinds = new ArrayList<>();
+            for (String item : splitTopLevel((String) select)) {
+                String[] parts = item.trim().split("(?i)\\s+as\\s+");
+                if (parts.length > 2 || parts[0].trim().isEmpty()) {
+                    return null;
+                }
+                String expr = parts[0].trim();
+                int kind = columnKind(expr);
+                if (kind < 0 || (parts.length == 1 && kind != VALUE && kind != SENSOR_ID && kind != SENSOR_TIMESTAMP)) {
+                    return null; // unaliased aggregates are named by Esper's expression text
+                }
+                String name = parts.length == 2 ? parts[1].trim() : expr;
+                if (!name.matches("[A-Za-z_][A-Za-z0-9_]*") || names.contains(name)) {
+                    return null;
+                }
+                names.add(name);
+                kinds.add(kind);
+            }
+            if (!kinds.contains(VALUE) && !kinds.contains(SENSOR_TIMESTAMP)) {
+                // Only the group key besides aggregates: Esper outputs a row per group, also when
+                // readings expire, which this class does not do
+                return null;
+            }
+            int[] columnKinds = kinds.stream().mapToInt(Integer::intValue).toArray();
+            boolean tracksMin = uses(columnKinds, having, MIN);
+            boolean tracksMax = uses(columnKinds, having, MAX);
+            return new IncrementalRule((String) sensorId, windowMillis, condition, having,
+                    names.toArray(new String[0]), columnKinds, tracksMin, tracksMax);
+        } catch (IllegalArgumentException unsupported) {
+            return null;
+        }
+    }
+
+    public String sensorId() {
+        return sensorId;
+    }
+
+    /** Output property names, in select order (what the statement's event type would list). */
+    public String[] propertyNames() {
+        return columns.clone();
+    }
+
+    public void setListener(RuleDeploymentManager.AlertListener listener) {
+        this.listener = listener;
+    }
+
+    /** Readings currently held in the window. */
+    public synchronized int windowSize() {
+        return size;
+    }
+
+    /** Processes one reading of this rule's sensor at runtime time now. */
+    public void onEvent(SensorEventsMultiInstaExperiment event, long now) {
+        double value = event.getValue();
+        if (condition != null && !condition.test(this, value)) {
+            return;
+        }
+        Row row;
+        synchronized (this) {
+            expire(now);
+            add(now, value);
+            if (having != null && !having.test(this, value)) {
+                return;
+            }
+            row = row(event, value);
+        }
+        RuleDeploymentManager.AlertListener target = listener;
+        if (target != null) {
+            target.fire(row, now);
+        }
+    }
+
+    private void expire(long now) {
+        long expireBefore = now - windowMillis; // a reading that arrived at t leaves at t + window
+        while (size > 0 && times[head] <= expireBefore) {
+            double value = values[head];
+            head = (head + 1) % times.length;
+            size--;
+            if (count <= 1) {
+                count = 0;
+                sum = 0;
+            } else {
+                count--;
+                sum -= value;
+            }
+            if (tracksMin) {
+                minDeque.removeOldest(value);
+            }
+            if (tracksMax) {
+                maxDeque.removeOldest(value);
+            }
+        }
+    }
+
+    private void add(long now, double value) {
+        if (size == times.length) {
+            grow();
+        }
+        int tail = (head + size) % times.length;
+        times[tail] = now;
+        values[tail] = value;
+        size++;
+        count++;
+        sum += value;
+        if (tracksMin) {
+            minDeque.add(value);
+        }
+        if (tracksMax) {
+            maxDeque.add(value);
+        }
+    }
+
+    private void grow() {
+        long[] newTimes = new long[times.length * 2];
+        double[] newValues = new double[values.length * 2];
+        for (int i = 0; i < size; i++) {
+            newTimes[i] = times[(head + i) % times.length];
+            newValues[i] = values[(head + i) % values.length];
+        }
+        times = newTimes;
+        values = newValues;
+        head = 0;
+    }
+
+    private double operand(int kind, double number, double value) {
+        switch (kind) {
+            case NUMBER:
+                return number;
+            case VALUE:
+                return value;
+            case COUNT:
+                return count;
+            case AVG:
+                return sum / count;
+            case SUM:
+                return sum;
+            case MIN:
+                return minDeque.peek();
+            default:
+                return maxDeque.peek();
+        }
+    }
+
+    private Row row(SensorEventsMultiInstaExperiment event, double value) {
+        Object[] row = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            switch (columnKinds[i]) {
+                case SENSOR_ID:
+                    row[i] = event.getSensorId();
+                    break;
+                case SENSOR_TIMESTAMP:
+                    row[i] = event.getSensorTimestamp();
+                    break;
+                case COUNT:
+                    row[i] = count;
+                    break;
+                default:
+                    row[i] = operand(columnKinds[i], 0, value);
+            }
+        }
+        return new Row(rowType, row);
+    }
+
+    private static int columnKind(String expr) {
+        String e = expr.replaceAll("\\s+", "");
+        switch (e) {
+            case "sensorId":
+                return SENSOR_ID;
+            case "sensorTimestamp":
+                return SENSOR_TIMESTAMP;
+            case "value":
+                return VALUE;
+            default:
+                return aggregateKind(e);
+        }
+    }
+
+    /** count(*), count(value), avg(value), ... (no spaces) → operand kind, -1 otherwise. */
+    private static int aggregateKind(String e) {
+        int open = e.indexOf('(');
+        if (open < 0 || !e.endsWith(")")) {
+            return -1;
+        }
+        String function = e.substring(0, open).toLowerCase(Locale.ROOT);
+        String argument = e.substring(open + 1, e.length() - 1);
+        if ("count".equals(function) && ("*".equals(argument) || "value".equals(argument))) {
+            return COUNT;
+        }
+        if (!"value".equals(argument)) {
+            return -1;
+        }
+        switch (function) {
+            case "avg":
+                return AVG;
+            case "sum":
+                return SUM;
+            case "min":
+                return MIN;
+            case "max":
+                return MAX;
+            default:
+                return -1;
+        }
+    }
+
+    private static boolean uses(int[] columnKinds, Test having, int kind) {
+        for (int k : columnKinds) {
+            if (k == kind) {
+                return true;
+            }
+        }
+        return having != null && having.uses(kind);
+    }
+
+    private static String text(Object o) {
+        return o == null ? "" : o.toString().trim();
+    }
+
+    private static List<String> splitTopLevel(String select) {
+        List<String> items = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < select.length(); i++) {
+            char c = select.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                items.add(select.substring(start, i));
+                start = i + 1;
+            }
+        }
+        items.add(select.substring(start));
+        return items;
+    }
+
+    // === Conditions: comparisons combined with and / or / not ===
+
+    private interface Test {
+        boolean test(IncrementalRule rule, double value);
+
+        boolean uses(int kind);
+    }
+
+    private static final class Comparison implements Test {
+        final int leftKind;
+        final double leftNumber;
+        final String op;
+        final int rightKind;
+        final double rightNumber;
+
+        Comparison(int leftKind, double leftNumber, String op, int rightKind, double rightNumber) {
+            this.leftKind = leftKind;
+            this.leftNumber = leftNumber;
+            this.op = op;
+            this.rightKind = rightKind;
+            this.rightNumber = rightNumber;
+        }
+
+        @Override
+        public boolean test(IncrementalRule rule, double value) {
+            double l = rule.operand(leftKind, leftNumber, value);
+            double r = rule.operand(rightKind, rightNumber, value);
+            switch (op) {
+                case "<":
+                    return l < r;
+                case "<=":
+                    return l <= r;
+                case ">":
+                    return l > r;
+                case ">=":
+                    return l >= r;
+                case "=":
+                    return l == r;
+                default:
+                    return l != r; // != and <>
+            }
+        }
+
+        @Override
+        public boolean uses(int kind) {
+            return leftKind == kind || rightKind == kind;
+        }
+    }
+
+    private static final class Logical implements Test {
+        final boolean and;
+        final Test left;
+        final Test right;
+
+        Logical(boolean and, Test left, Test right) {
+            this.and = and;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean test(IncrementalRule rule, double value) {
+            return and ? left.test(rule, value) && right.test(rule, value)
+                    : left.test(rule, value) || right.test(rule, value);
+        }
+
+        @Override
+        public boolean uses(int kind) {
+            return left.uses(kind) || right.uses(kind);
+        }
+    }
+
+    private static final class Not implements Test {
+        final Test inner;
+
+        Not(Test inner) {
+            this.inner = inner;
+        }
+
+        @Override
+        public boolean test(IncrementalRule rule, double value) {
+            return !inner.test(rule, value);
+        }
+
+        @Override
+        public boolean uses(int kind) {
+            return inner.uses(kind);
+        }
+    }
+
+    /**
+     * Recursive-descent parser for the supported subset; throws IllegalArgumentException
+     * for anything else. Conditions may only use value, having only aggregates.
+     */
+    private static final class Parser {
+        private static final Pattern NUMBER_TOKEN = Pattern.compile("[-+]?\\d+(\\.\\d+)?([eE][-+]?\\d+)?");
+
+        private final List<String> tokens = new ArrayList<>();
+        private final boolean aggregates;
+        private int pos;
+
+        Parser(String text, boolean aggregates) {
+            this.aggregates = aggregates;
+            int i = 0;
+            while (i < text.length()) {
+                char c = text.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '(' || c == ')') {
+                    tokens.add(String.valueOf(c));
+                    i++;
+                } else if ("<>=!".indexOf(c) >= 0) {
+                    String two = i + 1 < text.length() ? text.substring(i, i + 2) : "";
+                    String op = two.equals("<=") || two.equals(">=") || two.equals("<>") || two.equals("!=") ? two : String.valueOf(c);
+                    tokens.add(op);
+                    i += op.length();
+                } else if (Character.isLetter(c) || c == '_') {
+                    int end = i;
+                    while (end < text.length() && (Character.isLetterOrDigit(text.charAt(end)) || text.charAt(end) == '_')) {
+                        end++;
+                    }
+                    int after = end;
+                    while (after < text.length() && Character.isWhitespace(text.charAt(after))) {
+                        after++;
+                    }
+                    String word = text.substring(i, end);
+                    boolean keyword = word.equalsIgnoreCase("and") || word.equalsIgnoreCase("or") || word.equalsIgnoreCase("not");
+                    if (!keyword && after < text.length() && text.charAt(after) == '(') {
+                        int close = text.indexOf(')', after);
+                        if (close < 0) {
+                            throw new IllegalArgumentException("unbalanced");
+                        }
+                        tokens.add(word + text.substring(after, close + 1).replaceAll("\\s+", ""));
+                        i = close + 1;
+                    } else {
+                        tokens.add(word);
+                        i = end;
+                    }
+                } else {
+                    int end = i + 1;
+                    while (end < text.length() && (Character.isDigit(text.charAt(end)) || ".eE".indexOf(text.charAt(end)) >= 0
+                            || ("+-".indexOf(text.charAt(end)) >= 0 && "eE".indexOf(text.charAt(end - 1)) >= 0))) {
+                        end++;
+                    }
+                    String number = text.substring(i, end);
+                    if (!NUMBER_TOKEN.matcher(number).matches()) {
+                        throw new IllegalArgumentException("unsupported token " + number);
+                    }
+                    tokens.add(number);
+                    i = end;
+                }
+            }
+        }
+
+        Test parseAll() {
+            Test test = or();
+            if (pos != tokens.size()) {
+                throw new IllegalArgumentException("trailing " + tokens.get(pos));
+            }
+            return test;
+        }
+
+        private Test or() {
+            Test left = and();
+            while (keyword("or")) {
+                left = new Logical(false, left, and());
+            }
+            return left;
+        }
+
+        private Test and() {
+            Test left = not();
+            while (keyword("and")) {
+                left = new Logical(true, left, not());
+            }
+            return left;
+        }
+
+        private Test not() {
+            if (keyword("not")) {
+                return new Not(not());
+            }
+            if ("(".equals(peek())) {
+                pos++;
+                Test inner = or();
+                expect(")");
+                return inner;
+            }
+            return comparison();
+        }
+
+        private Test comparison() {
+            String left = next();
+            String op = next();
+            String right = next();
+            if (!Arrays.asList("<", "<=", ">", ">=", "=", "!=", "<>").contains(op)) {
+                throw new IllegalArgumentException("unsupported operator " + op);
+            }
+            int leftKind = operandKind(left);
+            int rightKind = operandKind(right);
+            return new Comparison(leftKind, leftKind == NUMBER ? Double.parseDouble(left) : 0,
+                    op, rightKind, rightKind == NUMBER ? Double.parseDouble(right) : 0);
+        }
+
+        private int operandKind(String token) {
+            if (NUMBER_TOKEN.matcher(token).matches()) {
+                return NUMBER;
+            }
+            int kind = "value".equals(token) ? VALUE : aggregateKind(token);
+            if (kind < 0 || (kind == VALUE) == aggregates) {
+                throw new IllegalArgumentException("unsupported operand " + token);
+            }
+            return kind;
+        }
+
+        private boolean keyword(String word) {
+            if (pos < tokens.size() && tokens.get(pos).equalsIgnoreCase(word)) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private String peek() {
+            return pos < tokens.size() ? tokens.get(pos) : null;
+        }
+
+        private String next() {
+            if (pos >= tokens.size()) {
+                throw new IllegalArgumentException("incomplete expression");
+            }
+            return tokens.get(pos++);
+        }
+
+        private void expect(String token) {
+            if (!token.equals(next())) {
+                throw new IllegalArgumentException("expected " + token);
+            }
+        }
+    }
+
+    // === Sliding min / max ===
+
+    /**
+     * Values in window order with every value that can no longer be the extreme
+     * dropped, so the front is always the window's min (or max).
+     */
+    private static final class MonotonicDeque {
+        final boolean min;
+        double[] items = new double[INITIAL_CAPACITY];
+        int head;
+        int size;
+
+        MonotonicDeque(boolean min) {
+            this.min = min;
+        }
+
+        void add(double value) {
+            // Double.compare orders -0.0 before 0.0, as Esper's sorted value set does
+            while (size > 0 && dominated(items[(head + size - 1) % items.length], value)) {
+                size--;
+            }
+            if (size == items.length) {
+                double[] grown = new double[items.length * 2];
+                for (int i = 0; i < size; i++) {
+                    grown[i] = items[(head + i) % items.length];
+                }
+                items = grown;
+                head = 0;
+            }
+            items[(head + size) % items.length] = value;
+            size++;
+        }
+
+        /** Equal values are kept, so an expiring value equal to the front is the front. */
+        private boolean dominated(double older, double newer) {
+            int c = Double.compare(newer, older);
+            return min ? c < 0 : c > 0;
+        }
+
+        /** The oldest window value left; drop it here if it is still the front. */
+        void removeOldest(double value) {
+            if (size > 0 && Double.compare(items[head], value) == 0) {
+                head = (head + 1) % items.length;
+                size--;
+            }
+        }
+
+        double peek() {
+            return items[head];
+        }
+    }
+
+    // === Output row ===
+
+    /**
+     * One output row, shaped like Esper's map events for the same select clause, so
+     * AlertEncoder, AlertSuppressor and the dispatcher take it unchanged.
+     */
+    static final class Row implements EventBean {
+        private final RowType type;
+        private final Object[] values;
+
+        Row(RowType type, Object[] values) {
+            this.type = type;
+            this.values = values;
+        }
+
+        public Object get(String property) {
+            int i = type.indexOf(property);
+            return i < 0 ? null : values[i];
+        }
+
+        /** The row as a map, as Esper's map events expose it. */
+        public Object getUnderlying() {
+            Map<String, Object> map = new HashMap<>();
+            for (int i = 0; i < values.length; i++) {
+                map.put(type.names[i], values[i]);
+            }
+            return map;
+        }
+
+        public EventType getEventType() {
+            return type;
+        }
+
+        public Object getFragment(String property) {
+            return null;
+        }
+    }
+
+    /**
+     * The rule's output type: the property names and types Esper gives the statement
+     * output for the same select clause (String sensorId and sensorTimestamp, Double
+     * value and avg/sum/min/max, Long counts), a Map underlying, no fragments.
+     */
+    static final class RowType implements EventType {
+        private final String[] names;
+        private final Class<?>[] types;
+        private final EventPropertyDescriptor[] descriptors;
+        private final EventTypeMetadata metadata;
+
+        RowType(String name, String[] names, int[] kinds) {
+            this.names = names;
+            this.types = new Class<?>[names.length];
+            this.descriptors = new EventPropertyDescriptor[names.length];
+            for (int i = 0; i < names.length; i++) {
+                types[i] = kinds[i] == SENSOR_ID || kinds[i] == SENSOR_TIMESTAMP ? String.class
+                        : kinds[i] == COUNT ? Long.class : Double.class;
+                descriptors[i] = new EventPropertyDescriptor(names[i], new EPTypeClass(types[i]),
+                        false, false, false, false, false);
+            }
+            this.metadata = new EventTypeMetadata(name, null, EventTypeTypeClass.STATEMENTOUT,
+                    EventTypeApplicationType.MAP, NameAccessModifier.TRANSIENT, EventTypeBusModifier.NONBUS,
+                    false, EventTypeIdPair.unassigned());
+        }
+
+        int indexOf(String property) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(property)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        public Class<?> getPropertyType(String property) {
+            int i = indexOf(property);
+            return i < 0 ? null : types[i];
+        }
+
+        public EPType getPropertyEPType(String property) {
+            int i = indexOf(property);
+            return i < 0 ? null : descriptors[i].getPropertyEPType();
+        }
+
+        public boolean isProperty(String property) {
+            return indexOf(property) >= 0;
+        }
+
+        public EventPropertyGetter getGetter(String property) {
+            int i = indexOf(property);
+            if (i < 0) {
+                return null;
+            }
+            return new EventPropertyGetter() {
+                public Object get(EventBean event) {
+                    return event.get(property);
+                }
+
+                public boolean isExistsProperty(EventBean event) {
+                    return true;
+                }
+
+                public Object getFragment(EventBean event) {
+                    return null;
+                }
+            };
+        }
+
+        public FragmentEventType getFragmentType(String property) {
+            return null;
+        }
+
+        public Class<?> getUnderlyingType() {
+            return Map.class;
+        }
+
+        public EPTypeClass getUnderlyingEPType() {
+            return new EPTypeClass(Map.class);
+        }
+
+        public String[] getPropertyNames() {
+            return names.clone();
+        }
+
+        public EventPropertyDescriptor[] getPropertyDescriptors() {
+            return descriptors.clone();
+        }
+
+        public EventPropertyDescriptor getPropertyDescriptor(String property) {
+            int i = indexOf(property);
+            return i < 0 ? null : descriptors[i];
+        }
+
+        public EventType[] getSuperTypes() {
+            return null;
+        }
+
+        public Iterator<EventType> getDeepSuperTypes() {
+            return Collections.emptyIterator();
+        }
+
+        public Set<EventType> getDeepSuperTypesAsSet() {
+            return Collections.emptySet();
+        }
+
+        public String getName() {
+            return metadata.getName();
+        }
+
+        public EventPropertyGetterMapped getGetterMapped(String property) {
+            return null;
+        }
+
+        public EventPropertyGetterIndexed getGetterIndexed(String property) {
+            return null;
+        }
+
+        public String getStartTimestampPropertyName() {
+            return null;
+        }
+
+        public String getEndTimestampPropertyName() {
+            return null;
+        }
+
+        public EventTypeMetadata getMetadata() {
+            return metadata;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+import com.espertech.esper.common.client.EventType;
+import com.espertech.esper.common.client.configuration.Configuration;
+import com.espertech.esper.compiler.client.EPCompilerProvider;
+import com.espertech.esper.runtime.client.EPDeployment;
+import com.espertech.esper.runtime.client.EPRuntime;
+import com.espertech.esper.runtime.client.EPRuntimeProvider;
+import com.espertech.esper.runtime.client.EPStatement;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Differential check for IncrementalRule: runs the same rules and the same reading
+ * stream through Esper and through an IncrementalRuleEngine and reports whether the
+ * alerts are identical (per rule: order, time and every selected value), plus
+ * retained heap and per-event latency for each, as RuleEplComparison does for the
+ * EPL modes.
+ *
+ * Rules: those of every contract in instances.json plus variants of each that use
+ * min/max/sum, count(value), not and or, replicated [instances] times (default 10)
+ * with distinct sensorIds. Rules the engine does not accept are left out of both
+ * runs and listed. The clock is external: mostly 0-1.5 s between readings, with
+ * same-millisecond bursts and gaps longer than the windows, so readings expire
+ * singly, in groups and all at once.
+ *
+ * Alerts also have to carry the same event type (property names and types, Map
+ * underlying) as Esper's. Exits with 1 if anything differs; test/IncrementalRuleCheckTest
+ * runs the same comparison under mvn test.
+ *
+ * Usage (from BrokerCEP/CEP):
+ *   java -cp "target/classes:$(cat target/cep-bridge.classpath)" IncrementalRuleCheck [instances] [events]
+ */
+public class IncrementalRuleCheck {
+
+    private static final String EVENT_TYPE = "SensorEventsMultiInstaExperiment";
+
+    public static void main(String[] args) throws Exception {
+        int instances = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int events = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        System.setProperty("log.level", System.getProperty("log.level", "WARN"));
+
+        // Compiled modules kept in memory: the check leaves no compiled-cache behind
+        System.exit(compare(instances, events, null) == 0 ? 0 : 1);
+    }
+
+    /**
+     * Runs both paths and prints the results.
+     *
+     * @param cacheDir directory for the Esper run's CompiledRuleCache, or null for in memory only
+     * @return the number of rules whose alerts or alert event types differ
+     */
+    public static int compare(int instances, int events, Path cacheDir) throws Exception {
+        List<Map<String, Object>> rules = new ArrayList<>();
+        for (Map<String, Object> rule : RuleFixtures.replicate(withVariants(RuleFixtures.instanceRules()), instances)) {
+            if (IncrementalRule.compile(rule) != null) {
+                rules.add(rule);
+            } else {
+                System.out.println("⏭️ Not incremental, left out: " + rule.get("contractId") + "/" + rule.get("id"));
+            }
+        }
+        List<String> sensorIds = new ArrayList<>();
+        for (Map<String, Object> rule : rules) {
+            if (!sensorIds.contains(rule.get("sensorId"))) {
+                sensorIds.add((String) rule.get("sensorId"));
+            }
+        }
+        System.out.println("📌 " + rules.size() + " rules, " + sensorIds.size() + " sensors, " + events + " readings");
+
+        Result esper = run(false, rules, sensorIds, events, cacheDir);
+        Result incremental = run(true, rules, sensorIds, events, cacheDir);
+
+        esper.print();
+        incremental.print();
+
+        // Compared per rule: Esper does not order the listeners of different statements
+        int differing = 0;
+        for (Map<String, Object> rule : rules) {
+            String key = rule.get("contractId") + "/" + rule.get("id");
+            List<String> expected = esper.alerts.getOrDefault(key, new ArrayList<>());
+            List<String> actual = incremental.alerts.getOrDefault(key, new ArrayList<>());
+            String expectedType = esper.types.get(key);
+            String actualType = incremental.types.get(key);
+            if (expected.equals(actual) && (expectedType == null ? actualType == null : expectedType.equals(actualType))) {
+                continue;
+            }
+            int i = 0;
+            while (i < Math.min(expected.size(), actual.size()) && expected.get(i).equals(actual.get(i))) {
+                i++;
+            }
+            if (differing++ < 5) {
+                System.out.println("❌ " + key + ": esper=" + expected.size() + " incremental=" + actual.size()
+                        + ", first difference at alert " + i);
+                System.out.println("   esper:       " + (i < expected.size() ? expected.get(i) : "-") + " " + expectedType);
+                System.out.println("   incremental: " + (i < actual.size() ? actual.get(i) : "-") + " " + actualType);
+            }
+        }
+        if (differing > 0) {
+            System.out.println("❌ Alerts differ for " + differing + " rule(s)");
+            return differing;
+        }
+        System.out.println("✅ Alerts identical (" + incremental.count + ")");
+        System.out.printf("📉 Retained heap: %.1f%% less, per-event latency: %.1f%% less%n",
+                100.0 * (esper.retainedBytes - incremental.retainedBytes) / Math.max(1, esper.retainedBytes),
+                100.0 * (esper.nanosPerEvent() - incremental.nanosPerEvent()) / Math.max(1e-9, esper.nanosPerEvent()));
+        return 0;
+    }
+
+    private static final class Result {
+        final String mode;
+        final Map<String, List<String>> alerts = new TreeMap<>(); // per rule key, in firing order
+        final Map<String, String> types = new TreeMap<>(); // per rule key: alert property names and types
+        long count;
+        long retainedBytes;
+        long sendNanos;
+        int events;
+
+        Result(String mode) {
+            this.mode = mode;
+        }
+
+        double nanosPerEvent() {
+            return events == 0 ? 0 : (double) sendNanos / events;
+        }
+
+        void print() {
+            System.out.printf("🔎 %-11s alerts=%d retainedHeap=%.1f MB avgSend=%.0f ns/event%n",
+                    mode, count, retainedBytes / (1024.0 * 1024.0), nanosPerEvent());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Result run(boolean fastPath, List<Map<String, Object>> rules, List<String> sensorIds, int events,
+                              Path cacheDir) throws Exception {
+        Result result = new Result(fastPath ? "incremental" : "esper");
+
+        Configuration config = new Configuration();
+        config.getCommon().addEventType(EVENT_TYPE, SensorEventsMultiInstaExperiment.class);
+        config.getRuntime().getThreading().setInternalTimerEnabled(false);
+
+        long baseline = usedHeap();
+        EPRuntime runtime = fastPath ? null : EPRuntimeProvider.getRuntime("incremental-check", config);
+        IncrementalRuleEngine engine = fastPath ? new IncrementalRuleEngine() : null;
+        CompiledRuleCache ruleCache = fastPath ? null : new CompiledRuleCache(
+                EPCompilerProvider.getCompiler(), config, EVENT_TYPE, SensorEventsMultiInstaExperiment.class, cacheDir);
+        if (runtime != null) {
+            runtime.getEventService().advanceTime(0);
+        }
+
+        for (Map<String, Object> rule : rules) {
+            String key = rule.get("contractId") + "/" + rule.get("id");
+            // Rows compared as sorted maps: Esper's map events and IncrementalRule rows
+            List<String> fired = result.alerts.computeIfAbsent(key, k -> new ArrayList<>());
+            RuleDeploymentManager.AlertListener record = (alert, now) -> {
+                fired.add(now + "|" + new TreeMap<>((Map<String, Object>) alert.getUnderlying()));
+                result.types.computeIfAbsent(key, k -> describe(alert.getEventType()));
+                result.count++;
+            };
+            if (fastPath) {
+                if (!engine.deploy(key, (String) rule.get("contractId"), rule, (names, contractId, r) -> record)) {
+                    throw new IllegalStateException("Engine declined " + key);
+                }
+            } else {
+                EPDeployment deployment = ruleCache.deploy(runtime, rule);
+                for (EPStatement stmt : deployment.getStatements()) {
+                    RuleDeploymentManager.attach(stmt, record);
+                }
+            }
+        }
+
+        // Same seed for both runs: identical reading stream and clock
+        Random random = new Random(42);
+        long time = 0;
+        for (int i = 0; i < events; i++) {
+            String sensorId = sensorIds.get(random.nextInt(sensorIds.size()));
+            double value = Math.round((random.nextDouble() * 200 - 100) * 10) / 10.0;
+            int step = random.nextInt(100);
+            if (step == 0) {
+                time += 30 * 60_000L + random.nextInt(60_000); // gap beyond every window
+            } else if (step >= 10) {
+                time += random.nextInt(1500); // otherwise the clock stands still: same-millisecond burst
+            }
+            SensorEventsMultiInstaExperiment event = new SensorEventsMultiInstaExperiment(sensorId, value, Long.toString(time));
+
+            long start = System.nanoTime();
+            if (fastPath) {
+                engine.send(event, time);
+            } else {
+                runtime.getEventService().advanceTime(time);
+                runtime.getEventService().sendEventBean(event, EVENT_TYPE);
+            }
+            result.sendNanos += System.nanoTime() - start;
+        }
+        result.events = events;
+        result.retainedBytes = usedHeap() - baseline;
+
+        if (runtime != null) {
+            runtime.destroy();
+        }
+        return result;
+    }
+
+    private static String describe(EventType type) {
+        Map<String, String> properties = new TreeMap<>();
+        for (String name : type.getPropertyNames()) {
+            properties.put(name, type.getPropertyType(name).getSimpleName());
+        }
+        return type.getUnderlyingType().getSimpleName() + properties;
+    }
+
+    /** Each rule plus variants covering the rest of the incremental shape. */
+    private static List<Map<String, Object>> withVariants(List<Map<String, Object>> rules) {
+        List<Map<String, Object>> all = new ArrayList<>();
+        for (Map<String, Object> rule : rules) {
+            all.add(rule);
+            all.add(variant(rule, "minMax", "value > -60",
+                    "count(*) >= 3 and (max(value) >= 90 or min(value) < -50)",
+                    "sensorId, sensorTimestamp, value, count(*) as cnt, min(value) as lo, max(value) as hi, sum(value) as total"));
+            all.add(variant(rule, "notOr", "not (value < -20) or value <= -95",
+                    "avg(value) > 40 or count(value) > 6",
+                    "sensorId, value, count(value) as cnt, avg(value) as avgValue, sum(value) as total"));
+            all.add(variant(rule, "noHaving", "value <> 0",
+                    null,
+                    "sensorTimestamp, avg(value) as avgValue, max(value) as hi"));
+        }
+        return all;
+    }
+
+    private static Map<String, Object> variant(Map<String, Object> rule, String suffix, String condition,
+                                               String having, String select) {
+        Map<String, Object> copy = new LinkedHashMap<>(rule);
+        copy.put("id", rule.get("id") + "_" + suffix);
+        copy.put("sensorId", rule.get("sensorId") + "_" + suffix);
+        copy.put("condition", condition);
+        if (having == null) {
+            copy.remove("having");
+        } else {
+            copy.put("having", having);
+        }
+        copy.put("select", select);
+        return copy;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
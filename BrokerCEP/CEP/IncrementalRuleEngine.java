@@ -0,0 +1,117 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The IncrementalRules deployed on one bridge, indexed by sensor.
+ *
+ * send() hands a reading to the incremental rules of its sensor: one array read by
+ * its SensorIds key, no filter evaluation and no allocation unless a rule fires. The
+ * bridge calls it next to sendEventBean, with the runtime's current time, so rules
+ * see the same clock on both paths (event time and checkpoint restores included).
+ *
+ * deploy() puts a rule on the fast path if IncrementalRule.compile() accepts it;
+ * otherwise the caller deploys it to Esper as before. -Dcep.incremental=false keeps
+ * every rule on Esper. The engine needs one clock, so the bridge uses it only with a
+ * single runtime (not with -Dcep.shards).
+ */
+public class IncrementalRuleEngine {
+
+    public static final boolean ENABLED = !"false".equals(System.getProperty("cep.incremental"));
+
+    /** Prefix of the deployment ids reported for rules on the fast path. */
+    public static final String DEPLOYMENT_PREFIX = "incremental:";
+
+    private final Map<String, IncrementalRule> rules = new HashMap<>(); // guarded by this
+    private volatile IncrementalRule[][] bySensor = new IncrementalRule[0][];
+
+    public IncrementalRuleEngine() {
+        BridgeMetrics.watchIncremental(this);
+    }
+
+    /**
+     * Deploys the rule under key (contractId/ruleId) if it has the incremental shape,
+     * with the listener the binder returns. Returns false if the rule needs Esper.
+     */
+    public boolean deploy(String key, String contractId, Map<String, Object> rule,
+                          RuleDeploymentManager.ListenerBinder binder) {
+        IncrementalRule compiled = IncrementalRule.compile(rule);
+        if (compiled == null || SensorIds.register(compiled.sensorId()) == SensorIds.NONE) {
+            return false;
+        }
+        compiled.setListener(binder.bind(compiled.propertyNames(), contractId, rule));
+        synchronized (this) {
+            IncrementalRule previous = rules.put(key, compiled);
+            if (previous != null) {
+                index(previous, false);
+            }
+            index(compiled, true);
+        }
+        return true;
+    }
+
+    public synchronized boolean undeploy(String key) {
+        IncrementalRule rule = rules.remove(key);
+        if (rule == null) {
+            return false;
+        }
+        index(rule, false);
+        return true;
+    }
+
+    private void index(IncrementalRule rule, boolean add) {
+        int sensor = SensorIds.keyOf(rule.sensorId()); // registered by deploy()
+        IncrementalRule[][] table = bySensor;
+        if (sensor >= table.length) {
+            table = Arrays.copyOf(table, Math.max(sensor + 1, table.length * 2));
+        } else {
+            table = table.clone();
+        }
+        List<IncrementalRule> list = new ArrayList<>();
+        if (table[sensor] != null) {
+            list.addAll(Arrays.asList(table[sensor]));
+        }
+        if (add) {
+            list.add(rule);
+        } else {
+            list.remove(rule);
+        }
+        table[sensor] = list.isEmpty() ? null : list.toArray(new IncrementalRule[0]);
+        bySensor = table; // readers see the old or the new table, never a partial one
+    }
+
+    /** Evaluates the reading against the incremental rules of its sensor at runtime time now. */
+    public void send(SensorEventsMultiInstaExperiment event, long now) {
+        int sensor = event.sensorKey();
+        if (sensor == SensorIds.NONE) {
+            // Created before its sensor was registered (or never will be): look up once more
+            sensor = SensorIds.keyOf(event.getSensorId());
+        }
+        IncrementalRule[][] table = bySensor;
+        if (sensor < 0 || sensor >= table.length) {
+            return;
+        }
+        IncrementalRule[] sensorRules = table[sensor];
+        if (sensorRules == null) {
+            return;
+        }
+        for (IncrementalRule rule : sensorRules) {
+            rule.onEvent(event, now);
+        }
+    }
+
+    public synchronized int ruleCount() {
+        return rules.size();
+    }
+
+    /** Readings held in all incremental windows. */
+    public synchronized long windowedReadings() {
+        long total = 0;
+        for (IncrementalRule rule : rules.values()) {
+            total += rule.windowSize();
+        }
+        return total;
+    }
+}
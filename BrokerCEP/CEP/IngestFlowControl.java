@@ -0,0 +1,305 @@
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.Delivery;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Acknowledgement, prefetch and load shedding for the sensor_data consumer.
+ *
+ * With auto-ack (the default) the broker pushes deliveries as fast as it can and a
+ * reading is gone once delivered, whether or not it reached Esper. With
+ * -Dingest.manualAck=true each delivery is acked after its readings were sent to
+ * Esper, and the broker keeps at most -Dingest.prefetch (default 500) unacked
+ * deliveries in flight, so a burst waits in the queue instead of in client memory.
+ * How a delivery is settled depends on its Outcome:
+ *
+ *   PROCESSED  acked
+ *   MALFORMED  the body cannot be decoded: moved to the dead-letter queue at once
+ *   FAILED     processing failed before any reading reached Esper: requeued once,
+ *              moved to the dead-letter queue if it fails again
+ *   PARTIAL    processing failed after some readings of a batch reached Esper:
+ *              acked (a requeue would send those twice) and a copy is moved to the
+ *              dead-letter queue with "x-readings-processed" set to the number of
+ *              leading readings that were handled (sent to Esper or rejected), so
+ *              only the rest needs replaying
+ *
+ * In checkpoint mode (WindowCheckpointer) consumption is always manual: deliveries
+ * are handed to the checkpointer instead of being acked, and the prefetch applies
+ * only when -Dingest.prefetch is set explicitly (it then also bounds the deliveries
+ * per checkpoint interval).
+ *
+ * Sustained overload is detected per ingestion partition: a partition is overloaded
+ * once its queue is -Dingest.shedHigh full (default 0.8) and stays so until it has
+ * drained to -Dingest.shedLow (default 0.5). While a partition is overloaded,
+ * SensorIngestionPipeline sheds according to -Dingest.shed:
+ *
+ *   none         nothing is shed; a full partition blocks the consumer (default)
+ *   latest       only the latest delivery per sensor is kept: a newer one replaces
+ *                the one still queued
+ *   downsample   deliveries of low-priority sensors (sensorId prefixes in
+ *                -Dingest.lowPriority, comma separated) are thinned to one in
+ *                -Dingest.downsample (default 10); other sensors are not touched
+ *
+ * Batch envelopes hold readings of several sensors and are exempt from latest and
+ * downsample (they queue, or block, as without shedding); dead-letter sheds them
+ * whole.
+ *   dead-letter  new deliveries go to the dead-letter queue until the partition
+ *                has drained
+ *
+ * Shed deliveries are acked (nothing is requeued) and counted per policy. The
+ * dead-letter queue is -Dingest.deadLetterQueue (default sensor_data.dead); messages
+ * keep their properties and body and get an "x-shed-reason" header (overload,
+ * malformed, failed or partial), so they can be inspected or shovelled back into
+ * sensor_data once the load has passed.
+ */
+public class IngestFlowControl {
+
+    public enum Shed { NONE, LATEST, DOWNSAMPLE, DEAD_LETTER }
+
+    /** How processing a delivery ended; see the class comment for how each is settled. */
+    public enum Outcome { PROCESSED, MALFORMED, FAILED, PARTIAL }
+
+    private static final boolean MANUAL_ACK = Boolean.getBoolean("ingest.manualAck");
+    private static final Integer PREFETCH = Integer.getInteger("ingest.prefetch");
+    private static final int DEFAULT_PREFETCH = 500;
+    private static final double SHED_HIGH = Double.parseDouble(System.getProperty("ingest.shedHigh", "0.8"));
+    private static final double SHED_LOW = Double.parseDouble(System.getProperty("ingest.shedLow", "0.5"));
+    private static final int DOWNSAMPLE = Math.max(1, Integer.getInteger("ingest.downsample", 10));
+    private static final String[] LOW_PRIORITY = System.getProperty("ingest.lowPriority", "").trim().isEmpty()
+            ? new String[0] : System.getProperty("ingest.lowPriority").trim().split("\\s*,\\s*");
+    public static final String DEAD_LETTER_QUEUE = System.getProperty("ingest.deadLetterQueue", "sensor_data.dead");
+
+    private final Shed shed;
+    private final LongConsumer checkpointAck;
+    private final ConcurrentSkipListMap<String, LongAdder> shedCounts = new ConcurrentSkipListMap<>();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+    private final AtomicInteger overloaded = new AtomicInteger();
+
+    private volatile Supplier<Channel> ackChannel = () -> null;
+    private Channel deadLetterChannel;
+
+    /** Auto-ack unless -Dingest.manualAck; shedding per -Dingest.shed. */
+    public IngestFlowControl() {
+        this(null);
+    }
+
+    /**
+     * @param checkpointAck receives the delivery tags of finished deliveries instead of
+     *                      acking them (WindowCheckpointer::processed), or null
+     */
+    public IngestFlowControl(LongConsumer checkpointAck) {
+        this(Shed.valueOf(System.getProperty("ingest.shed", "none").trim().toUpperCase().replace('-', '_')), checkpointAck);
+    }
+
+    public IngestFlowControl(Shed shed, LongConsumer checkpointAck) {
+        this.shed = shed;
+        this.checkpointAck = checkpointAck;
+        BridgeMetrics.watchIngest(this);
+    }
+
+    /** Whether sensor_data is consumed with auto-ack. */
+    public boolean autoAck() {
+        return !MANUAL_ACK && checkpointAck == null;
+    }
+
+    /** The basicQos prefetch for the consumer channel, 0 for none. */
+    public int prefetch() {
+        if (autoAck()) {
+            return 0;
+        }
+        if (PREFETCH != null) {
+            return Math.max(0, PREFETCH);
+        }
+        return checkpointAck == null ? DEFAULT_PREFETCH : 0;
+    }
+
+    /**
+     * Starts acking on the consuming channel and opens the dead-letter channel if
+     * anything can be dead-lettered. Call before deliveries arrive.
+     */
+    public void start(Channel consumerChannel, Connection connection) throws IOException {
+        start(() -> consumerChannel, connection);
+    }
+
+    /** As above, for a consuming channel that is created later (PartitionCoordinator). */
+    public void start(Supplier<Channel> consumerChannel, Connection connection) throws IOException {
+        this.ackChannel = consumerChannel;
+        if (!autoAck() || shed == Shed.DEAD_LETTER) {
+            deadLetterChannel = connection.createChannel();
+            deadLetterChannel.queueDeclare(DEAD_LETTER_QUEUE, true, false, false, null);
+        }
+        System.out.println("🚦 sensor_data: " + (autoAck() ? "auto-ack"
+                : (checkpointAck != null ? "acked by checkpoints" : "manual ack") + ", prefetch " + (prefetch() > 0 ? prefetch() : "unlimited"))
+                + ", shedding " + shed.name().toLowerCase().replace('_', '-'));
+    }
+
+    public Shed policy() {
+        return shed;
+    }
+
+    public boolean shedding() {
+        return shed != Shed.NONE;
+    }
+
+    /** Queue depth at which a partition of the given capacity becomes overloaded. */
+    int highMark(int capacity) {
+        return Math.max(1, (int) Math.ceil(capacity * SHED_HIGH));
+    }
+
+    /** Queue depth at which an overloaded partition recovers. */
+    int lowMark(int capacity) {
+        return Math.min(highMark(capacity) - 1, (int) Math.floor(capacity * SHED_LOW));
+    }
+
+    int downsampleEvery() {
+        return DOWNSAMPLE;
+    }
+
+    boolean isLowPriority(String sensorId) {
+        if (sensorId == null) {
+            return false;
+        }
+        for (String prefix : LOW_PRIORITY) {
+            if (sensorId.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void overloadChanged(boolean nowOverloaded) {
+        int partitions = nowOverloaded ? overloaded.incrementAndGet() : overloaded.decrementAndGet();
+        if (nowOverloaded) {
+            BridgeLog.warn("ingest", "⚠️ Ingestion partition overloaded ({} now), shedding: {}", partitions,
+                    shed.name().toLowerCase().replace('_', '-'));
+        } else {
+            BridgeLog.info("ingest", "✅ Ingestion partition recovered ({} still overloaded)", partitions);
+        }
+    }
+
+    /** Called by the pipeline for a delivery it does not process. */
+    void shed(Delivery message, Shed policy) {
+        shedCounts.computeIfAbsent(policy.name().toLowerCase().replace('_', '-'), p -> new LongAdder()).increment();
+        if (policy == Shed.DEAD_LETTER) {
+            deadLetter(message, "overload", -1);
+        }
+        finished(message);
+    }
+
+    /**
+     * Called once a delivery has been processed. PROCESSED means its readings reached
+     * Esper (or were rejected on purpose, e.g. unknown sensors); readingsProcessed is
+     * only read for PARTIAL.
+     */
+    public void completed(Delivery message, Outcome outcome, int readingsProcessed) {
+        if (autoAck()) {
+            return;
+        }
+        switch (outcome) {
+            case MALFORMED:
+                deadLetter(message, "malformed", -1);
+                break;
+            case FAILED:
+                if (checkpointAck == null && !message.getEnvelope().isRedeliver()) {
+                    retried.increment();
+                    settle(message, false, true);
+                    return;
+                }
+                deadLetter(message, "failed", -1);
+                break;
+            case PARTIAL:
+                deadLetter(message, "partial", readingsProcessed);
+                break;
+            default:
+                break;
+        }
+        finished(message);
+    }
+
+    private void finished(Delivery message) {
+        if (checkpointAck != null) {
+            checkpointAck.accept(message.getEnvelope().getDeliveryTag());
+        } else if (!autoAck()) {
+            settle(message, true, false);
+        }
+    }
+
+    private void settle(Delivery message, boolean ack, boolean requeue) {
+        Channel channel = ackChannel.get();
+        if (channel == null) {
+            return;
+        }
+        try {
+            if (ack) {
+                channel.basicAck(message.getEnvelope().getDeliveryTag(), false);
+            } else {
+                channel.basicNack(message.getEnvelope().getDeliveryTag(), false, requeue);
+            }
+        } catch (IOException | RuntimeException e) {
+            // A closed channel: the broker redelivers the message to the next consumer
+            BridgeLog.warn("ingest", "⚠️ Could not settle delivery {}: {}", message.getEnvelope().getDeliveryTag(), e.getMessage());
+        }
+    }
+
+    /** readingsProcessed: the "x-readings-processed" header, or -1 for none. */
+    private void deadLetter(Delivery message, String reason, int readingsProcessed) {
+        Channel channel = deadLetterChannel;
+        if (channel == null) {
+            return;
+        }
+        AMQP.BasicProperties props = message.getProperties() != null ? message.getProperties() : new AMQP.BasicProperties();
+        Map<String, Object> headers = props.getHeaders() == null ? new HashMap<>() : new HashMap<>(props.getHeaders());
+        headers.put("x-shed-reason", reason);
+        if (readingsProcessed >= 0) {
+            headers.put("x-readings-processed", readingsProcessed);
+        }
+        try {
+            synchronized (channel) {
+                channel.basicPublish("", DEAD_LETTER_QUEUE, props.builder().headers(headers).build(), message.getBody());
+            }
+            deadLettered.increment();
+        } catch (IOException | RuntimeException e) {
+            BridgeLog.error("ingest", e, "❌ Could not dead-letter a delivery: {}", e.getMessage());
+        }
+    }
+
+    // === Metrics ===
+
+    /** Shed deliveries per policy name. */
+    public Map<String, Long> shedCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        shedCounts.forEach((policy, count) -> counts.put(policy, count.sum()));
+        return counts;
+    }
+
+    public long shedTotal() {
+        long total = 0;
+        for (LongAdder count : shedCounts.values()) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    public long retriedCount() {
+        return retried.sum();
+    }
+
+    public long deadLetteredCount() {
+        return deadLettered.sum();
+    }
+
+    public int overloadedPartitions() {
+        return overloaded.get();
+    }
+}
@@ -0,0 +1,349 @@
+import com.espertech.esper.common.client.configuration.Configuration;
+import com.espertech.esper.compiler.client.EPCompilerProvider;
+import com.espertech.esper.runtime.client.EPDeployment;
+import com.espertech.esper.runtime.client.EPRuntime;
+import com.espertech.esper.runtime.client.EPRuntimeProvider;
+import com.espertech.esper.runtime.client.EPStatement;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end load test of the multi-instance bridge on a single box.
+ *
+ * For every step of -Dload.instances (default 1,10,100,1000) it builds N contract
+ * instances from the rules templates (rulesMeatSale*.json and rulesVaccine*.json,
+ * alternating, each instance with its own sensorIds), wires the bridge the way
+ * EsperBridgeMultiInstaExperiment does (ingestion pipeline + ingest(),
+ * alertListener(), AlertDispatcher, AlertPublisher) against an InProcessBroker, and then
+ * publishes synthetic temperature/humidity readings to sensor_data at
+ * -Dload.rate readings/s (default 10000) for -Dload.durationSec (default 30)
+ * after -Dload.warmupSec (default 5).
+ *
+ * Reported per step: offered and processed readings/s, alerts, alert latency
+ * percentiles (reading published → alert delivered from the alerts exchange,
+ * carried through the alert's sensorTimestamp), heap after GC with all rules
+ * deployed, and the sensor_data backlog left at the end (a growing backlog means
+ * the rate is not sustained). -Dload.report=file.csv also writes the rows as CSV.
+ * The time to deploy all rules and the metaspace growth it caused are reported too;
+ * compare runs with -Dcep.ruleTemplates=false to see what shared rule templates
+ * save (see CompiledRuleCache). Run with -Dcep.compileCache=off to time compilation.
+ *
+ * The consumer honours the IngestFlowControl settings (-Dingest.manualAck,
+ * -Dingest.prefetch, -Dingest.shed, ...); deliveries shed under overload are
+ * reported in the "shed" column, so a rate above capacity shows what each shedding
+ * policy gives up instead of a growing backlog.
+ *
+ * With -Dcep.shards=K (K > 1) each step runs the instances on a ShardedEngine
+ * (contracts hashed over K runtimes), as the bridge does in sharded mode.
+ * Otherwise rules of the incremental shape run on an IncrementalRuleEngine, as in
+ * the bridge; -Dcep.incremental=false measures the same rules on Esper alone.
+ *
+ * Values per sensorType: -Dload.temperature=mean,stddev (default 3,2),
+ * -Dload.humidity=mean,stddev (default 87,3), -Dload.distribution=normal|uniform
+ * (uniform = mean ± 2 stddev). Synthetic sensors are trusted in
+ * SensorIdentityCache; no wallet is involved.
+ *
+ * Usage (from BrokerCEP/CEP):
+ *   java -Dload.instances=1,10,100 -Dload.rate=20000 -cp ".:esper-9.0.0/*:esper-9.0.0/dependencies/*" LoadGenerator
+ */
+public class LoadGenerator {
+
+    private static final String EVENT_TYPE = "SensorEventsMultiInstaExperiment";
+    private static final String SENSOR_QUEUE = "sensor_data";
+
+    private static final int SHARDS = Integer.getInteger("cep.shards", 1);
+    private static final int RATE = Integer.getInteger("load.rate", 10_000);
+    private static final int WARMUP_SEC = Integer.getInteger("load.warmupSec", 5);
+    private static final int DURATION_SEC = Integer.getInteger("load.durationSec", 30);
+    private static final String DISTRIBUTION = System.getProperty("load.distribution", "normal");
+    private static final double[] TEMPERATURE = meanAndStddev("load.temperature", "3,2");
+    private static final double[] HUMIDITY = meanAndStddev("load.humidity", "87,3");
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    public static void main(String[] args) throws Exception {
+        // Per-reading console output would dominate the measurement
+        System.setProperty("log.level", System.getProperty("log.level", "WARN"));
+
+        List<List<Map<String, Object>>> templates = new ArrayList<>();
+        templates.add(loadTemplate("rulesMeatSale*.json"));
+        templates.add(loadTemplate("rulesVaccine*.json"));
+
+        List<String> rows = new ArrayList<>();
+        rows.add("instances,rules,offeredPerSec,processedPerSec,alerts,p50Ms,p90Ms,p99Ms,p999Ms,heapMb,backlog,shed,deployMs,metaspaceMb");
+        System.out.printf("%9s %6s %10s %11s %8s %8s %8s %8s %8s %8s %8s %8s %9s %9s%n",
+                "instances", "rules", "offered/s", "processed/s", "alerts",
+                "p50 ms", "p90 ms", "p99 ms", "p999 ms", "heap MB", "backlog", "shed", "deploy ms", "meta MB");
+
+        for (String step : System.getProperty("load.instances", "1,10,100,1000").split(",")) {
+            String row = runStep(Integer.parseInt(step.trim()), templates);
+            rows.add(row);
+        }
+
+        String report = System.getProperty("load.report");
+        if (report != null) {
+            try (PrintWriter out = new PrintWriter(new FileWriter(report))) {
+                rows.forEach(out::println);
+            }
+            System.out.println("📄 Report written to " + report);
+        }
+        System.exit(0);
+    }
+
+    private static String runStep(int instances, List<List<Map<String, Object>>> templates) throws Exception {
+        InProcessBroker broker = new InProcessBroker();
+
+        Configuration config = new Configuration();
+        config.getCommon().addEventType(EVENT_TYPE, SensorEventsMultiInstaExperiment.class);
+        EPRuntime runtime = SHARDS > 1 ? null : EPRuntimeProvider.getRuntime("load-" + instances, config);
+        ShardedEngine engine = SHARDS > 1 ? new ShardedEngine(SHARDS, config, EVENT_TYPE) : null;
+        CompiledRuleCache ruleCache = new CompiledRuleCache(
+                EPCompilerProvider.getCompiler(), config, EVENT_TYPE, SensorEventsMultiInstaExperiment.class);
+        AlertPublisher alertPublisher = AlertPublisher.forAlerts(broker::newConnection);
+        AlertDispatcher alertDispatcher = new AlertDispatcher(alertPublisher);
+        // Same fast path as the bridge: single runtime only
+        IncrementalRuleEngine incremental = IncrementalRuleEngine.ENABLED && engine == null ? new IncrementalRuleEngine() : null;
+        RuleDeploymentManager.ListenerBinder binder = (propertyNames, contractId, rule) ->
+                EsperBridgeMultiInstaExperiment.alertListener(propertyNames, contractId, rule, alertDispatcher);
+
+        // N instances, deployed and bound exactly like the bridge does it
+        List<String> sensorIds = new ArrayList<>();
+        List<String> sensorTypes = new ArrayList<>();
+        Map<String, String> sensorRoutes = new LinkedHashMap<>();
+        int rules = 0;
+        long metaspaceBefore = metaspaceUsed();
+        long deployStart = System.nanoTime();
+        for (int i = 0; i < instances; i++) {
+            for (Map<String, Object> rule : RuleFixtures.instance(templates.get(i % templates.size()), i)) {
+                String contractId = (String) rule.get("contractId");
+
+                if (incremental == null || !incremental.deploy(contractId + "/" + rule.get("id"), contractId, rule, binder)) {
+                    EPRuntime target = engine != null ? engine.runtimeFor(contractId) : runtime;
+                    EPDeployment deployment = ruleCache.deploy(target, rule);
+                    for (EPStatement stmt : deployment.getStatements()) {
+                        RuleDeploymentManager.attach(stmt, binder.bind(stmt.getEventType().getPropertyNames(), contractId, rule));
+                    }
+                }
+                SensorIdentityCache.trust((String) rule.get("sensorId"));
+                sensorIds.add((String) rule.get("sensorId"));
+                sensorRoutes.put((String) rule.get("sensorId"), contractId);
+                sensorTypes.add(String.valueOf(rule.get("sensorType")));
+                rules++;
+            }
+        }
+        long deployMillis = (System.nanoTime() - deployStart) / 1_000_000;
+        double metaspaceMb = (metaspaceUsed() - metaspaceBefore) / (1024.0 * 1024.0);
+
+        EsperBridgeMultiInstaExperiment.EventSink sink;
+        if (engine != null) {
+            engine.route(sensorRoutes);
+            sink = event -> {
+                engine.send(event.getSensorId(), event);
+                return true;
+            };
+        } else if (incremental != null) {
+            sink = event -> {
+                incremental.send(event, runtime.getEventService().getCurrentTime());
+                runtime.getEventService().sendEventBean(event, EVENT_TYPE);
+                return true;
+            };
+        } else {
+            sink = event -> {
+                runtime.getEventService().sendEventBean(event, EVENT_TYPE);
+                return true;
+            };
+        }
+
+        // Sensor side: the bridge's consumer + ingestion pipeline
+        Connection bridgeConn = broker.newConnection();
+        Channel bridgeChannel = bridgeConn.createChannel();
+        bridgeChannel.queueDeclare(SENSOR_QUEUE, true, false, false, null);
+        IngestFlowControl flow = new IngestFlowControl();
+        if (flow.prefetch() > 0) {
+            bridgeChannel.basicQos(flow.prefetch());
+        }
+        flow.start(bridgeChannel, bridgeConn);
+        SensorIngestionPipeline pipeline = new SensorIngestionPipeline(
+                message -> EsperBridgeMultiInstaExperiment.ingest(sink, message, flow), flow);
+        bridgeChannel.basicConsume(SENSOR_QUEUE, flow.autoAck(), (tag, message) -> {
+            try {
+                pipeline.submit(message);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, tag -> {});
+
+        // Alert side: what alertSubscriber.js would see
+        LatencyHistogram latency = new LatencyHistogram();
+        AtomicLong alerts = new AtomicLong();
+        AtomicBoolean measuring = new AtomicBoolean();
+        Connection alertConn = broker.newConnection();
+        Channel alertChannel = alertConn.createChannel();
+        alertChannel.exchangeDeclare(AlertPublisher.ALERTS_EXCHANGE, AlertPublisher.ALERTS_EXCHANGE_TYPE, true);
+        String alertQueue = alertChannel.queueDeclare().getQueue();
+        alertChannel.queueBind(alertQueue, AlertPublisher.ALERTS_EXCHANGE, AlertPublisher.ALL_ALERTS);
+        alertChannel.basicConsume(alertQueue, true, (tag, message) -> {
+            long sentNanos = sensorTimestampOf(message.getBody());
+            if (measuring.get()) {
+                alerts.incrementAndGet();
+                if (sentNanos > 0) {
+                    latency.recordSince(sentNanos);
+                }
+            }
+        }, tag -> {});
+
+        // Drive the load: warm-up, then the measured window
+        Connection genConn = broker.newConnection();
+        Channel genChannel = genConn.createChannel();
+        Random random = new Random(42);
+        drive(genChannel, sensorIds, sensorTypes, random, WARMUP_SEC);
+
+        long acceptedBefore = BridgeMetrics.READINGS_ACCEPTED.sum();
+        long shedBefore = flow.shedTotal();
+        measuring.set(true);
+        long offered = drive(genChannel, sensorIds, sensorTypes, random, DURATION_SEC);
+        long processed = BridgeMetrics.READINGS_ACCEPTED.sum() - acceptedBefore;
+        long shed = flow.shedTotal() - shedBefore;
+        long backlog = broker.depth(SENSOR_QUEUE);
+        measuring.set(false);
+
+        // Let the backlog drain so the heap figure reflects steady rule state, not queued messages
+        long drainUntil = System.currentTimeMillis() + 10_000;
+        while (broker.depth(SENSOR_QUEUE) > 0 && System.currentTimeMillis() < drainUntil) {
+            Thread.sleep(50);
+        }
+        long heap = usedHeap();
+
+        genConn.close();
+        alertConn.close();
+        bridgeConn.close();
+        pipeline.close();
+        alertDispatcher.close();
+        alertPublisher.close();
+        if (engine != null) {
+            engine.close();
+        } else {
+            runtime.destroy();
+        }
+
+        double p50 = latency.percentile(0.5) / 1e6;
+        double p90 = latency.percentile(0.9) / 1e6;
+        double p99 = latency.percentile(0.99) / 1e6;
+        double p999 = latency.percentile(0.999) / 1e6;
+        double heapMb = heap / (1024.0 * 1024.0);
+        System.out.printf("%9d %6d %10.0f %11.0f %8d %8.2f %8.2f %8.2f %8.2f %8.1f %8d %8d %9d %9.1f%n",
+                instances, rules, (double) offered / DURATION_SEC, (double) processed / DURATION_SEC,
+                alerts.get(), p50, p90, p99, p999, heapMb, backlog, shed, deployMillis, metaspaceMb);
+        return String.format(Locale.ROOT, "%d,%d,%.1f,%.1f,%d,%.3f,%.3f,%.3f,%.3f,%.1f,%d,%d,%d,%.1f",
+                instances, rules, (double) offered / DURATION_SEC, (double) processed / DURATION_SEC,
+                alerts.get(), p50, p90, p99, p999, heapMb, backlog, shed, deployMillis, metaspaceMb);
+    }
+
+    /** Publishes readings at RATE per second for the given time; returns how many were sent. */
+    private static long drive(Channel channel, List<String> sensorIds, List<String> sensorTypes,
+                              Random random, int seconds) throws IOException {
+        long start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+        long sent = 0;
+        long now;
+        while ((now = System.nanoTime()) < end) {
+            long due = (now - start) * RATE / 1_000_000_000L;
+            while (sent < due) {
+                int s = random.nextInt(sensorIds.size());
+                publishReading(channel, sensorIds.get(s), valueFor(sensorTypes.get(s), random));
+                sent++;
+            }
+            LockSupport.parkNanos(200_000L);
+        }
+        return sent;
+    }
+
+    private static void publishReading(Channel channel, String sensorId, double value) throws IOException {
+        // The timestamp carries the publish time (nanoTime) so alerts can be timed end to end
+        String body = "{\"sensorId\":\"" + sensorId + "\",\"value\":" + value
+                + ",\"timestamp\":\"" + System.nanoTime() + "\"}";
+        AMQP.BasicProperties props = new AMQP.BasicProperties.Builder()
+                .contentType(SensorMessageDecoder.CONTENT_TYPE_JSON)
+                .headers(Collections.singletonMap("sensorId", sensorId))
+                .build();
+        channel.basicPublish("", SENSOR_QUEUE, props, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static double valueFor(String sensorType, Random random) {
+        double[] params = "humidity".equals(sensorType) ? HUMIDITY : TEMPERATURE;
+        double deviation = "uniform".equals(DISTRIBUTION)
+                ? (random.nextDouble() * 4 - 2) * params[1]
+                : random.nextGaussian() * params[1];
+        return Math.round((params[0] + deviation) * 10) / 10.0;
+    }
+
+    private static long sensorTimestampOf(byte[] alert) {
+        try (JsonParser p = JSON.createParser(alert)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                return 0;
+            }
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                p.nextToken();
+                if ("sensorTimestamp".equals(field)) {
+                    return Long.parseLong(p.getText());
+                }
+                p.skipChildren();
+            }
+        } catch (IOException | NumberFormatException ignored) {
+            // Legacy text alerts or rules without sensorTimestamp: counted, not timed
+        }
+        return 0;
+    }
+
+    private static List<Map<String, Object>> loadTemplate(String glob) throws IOException {
+        System.out.println("📄 Template " + RuleFixtures.templateFile(glob).getFileName());
+        return RuleFixtures.template(glob);
+    }
+
+    private static double[] meanAndStddev(String property, String defaults) {
+        String[] parts = System.getProperty(property, defaults).split(",");
+        return new double[]{Double.parseDouble(parts[0].trim()), Double.parseDouble(parts[1].trim())};
+    }
+
+    /** Used metaspace (generated rule classes live there), or 0 where the pool does not exist. */
+    private static long metaspaceUsed() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if ("Metaspace".equals(pool.getName())) {
+                return pool.getUsage().getUsed();
+            }
+        }
+        return 0;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,334 @@
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.Delivery;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Partitioned scale-out: several bridge nodes share the sensor stream without
+ * splitting any sensor's readings between them.
+ *
+ * Sensors map to a fixed number of partitions (-Dcep.partitions), each with its own
+ * queue "sensor_data.p&lt;n&gt;" bound to the direct exchange "sensor_data.partitioned"
+ * under routing key "&lt;n&gt;". The partition of a sensor is
+ *   h = sensorId.hashCode(); ((h ^ (h &gt;&gt;&gt; 16)) &amp; 0x7fffffff) % partitions
+ * so publishers can route directly; otherwise one node runs the router
+ * (-Dcep.partitionRouter=true), which moves sensor_data messages to their partition.
+ *
+ * Nodes announce themselves with heartbeats on the fanout exchange "bridge.nodes"
+ * (-Dcep.heartbeatMs, default 1000; a node is gone after 3 missed beats, or at once
+ * when it leaves cleanly). Partitions are assigned to the live nodes by rendezvous
+ * hashing, so a join or leave only moves the partitions that must move. Every node
+ * computes the same assignment from the same live set, without a coordinator.
+ *
+ * On a change a node first cancels the partitions it lost, then runs the change
+ * listeners (RuleDeploymentManager.sync() with an owns() rule filter, so only rules of
+ * owned sensors stay deployed), then subscribes to the partitions it gained. The
+ * partition queues are single-active-consumer queues: a new owner waits as standby
+ * until the previous owner has cancelled, so a partition is never consumed by two
+ * nodes at once. Window state of a moved sensor starts empty on its new node.
+ */
+public class PartitionCoordinator implements AutoCloseable {
+
+    /** Takes one delivery from an owned partition (e.g. SensorIngestionPipeline::submit). */
+    public interface DeliveryHandler {
+        void handle(Delivery message) throws InterruptedException;
+    }
+
+    public static final String PARTITION_EXCHANGE = "sensor_data.partitioned";
+    private static final String NODES_EXCHANGE = "bridge.nodes";
+    private static final long HEARTBEAT_MS = Long.getLong("cep.heartbeatMs", 1000L);
+    private static final int MISSED_HEARTBEATS = 3;
+
+    private final int partitions;
+    private final String nodeId;
+    private final Map<String, Long> lastSeen = new ConcurrentHashMap<>();
+    private final Map<Integer, String> consumerTags = new HashMap<>();
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "partition-coordinator");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile Set<Integer> owned = Collections.emptySet();
+    private volatile boolean claiming;
+    private boolean left;
+    private Channel control;
+    private Channel consumer;
+    private DeliveryHandler handler;
+    private boolean autoAck = true;
+    private int prefetch;
+
+    public PartitionCoordinator(int partitions) {
+        this(partitions, System.getProperty("cep.nodeId", ManagementFactory.getRuntimeMXBean().getName()));
+    }
+
+    public PartitionCoordinator(int partitions, String nodeId) {
+        this.partitions = partitions;
+        this.nodeId = nodeId;
+    }
+
+    public static int partitionOf(String sensorId, int partitions) {
+        if (sensorId == null) {
+            return 0;
+        }
+        int h = sensorId.hashCode();
+        h ^= (h >>> 16);
+        return (h & 0x7fffffff) % partitions;
+    }
+
+    public static String queueName(int partition) {
+        return "sensor_data.p" + partition;
+    }
+
+    /** Declares the partition exchange and queues (idempotent; every node and the router call it). */
+    public static void declareTopology(Channel channel, int partitions) throws Exception {
+        channel.exchangeDeclare(PARTITION_EXCHANGE, "direct", true);
+        Map<String, Object> args = Collections.singletonMap("x-single-active-consumer", true);
+        for (int p = 0; p < partitions; p++) {
+            channel.queueDeclare(queueName(p), true, false, false, args);
+            channel.queueBind(queueName(p), PARTITION_EXCHANGE, String.valueOf(p));
+        }
+    }
+
+    /**
+     * Moves messages from the shared sensor queue to their partition. Run it on one
+     * node only: two routers would interleave a sensor's readings.
+     */
+    public static Channel startRouter(Connection connection, String sourceQueue, int partitions) throws Exception {
+        Channel channel = connection.createChannel();
+        declareTopology(channel, partitions);
+        channel.queueDeclare(sourceQueue, true, false, false, null);
+        channel.basicConsume(sourceQueue, true, (tag, message) -> {
+            int p = partitionOf(SensorIngestionPipeline.partitionKey(message), partitions);
+            channel.basicPublish(PARTITION_EXCHANGE, String.valueOf(p), message.getProperties(), message.getBody());
+        }, tag -> {});
+        System.out.println("🔀 Partition router: " + sourceQueue + " → " + partitions + " partition queue(s).");
+        return channel;
+    }
+
+    /** Consume partitions with manual ack (acks then go through consumerChannel()); call before start(). */
+    public void setAutoAck(boolean autoAck) {
+        this.autoAck = autoAck;
+    }
+
+    /** basicQos prefetch per partition consumer (manual ack only, 0 = unlimited); call before start(). */
+    public void setPrefetch(int prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    /** The channel all partition consumers share. */
+    public Channel consumerChannel() {
+        return consumer;
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+
+    public boolean owns(String sensorId) {
+        return owned.contains(partitionOf(sensorId, partitions));
+    }
+
+    public Set<Integer> ownedPartitions() {
+        return owned;
+    }
+
+    /** Runs after the owned partition set changed, before the gained partitions are consumed. */
+    public void onChange(Runnable listener) {
+        changeListeners.add(listener);
+    }
+
+    /** Joins the cluster: announces this node, waits to hear the others, then claims partitions. */
+    public void start(Connection connection, DeliveryHandler handler) throws Exception {
+        this.handler = handler;
+        this.control = connection.createChannel();
+        this.consumer = connection.createChannel();
+        if (!autoAck && prefetch > 0) {
+            consumer.basicQos(prefetch);
+        }
+        declareTopology(control, partitions);
+
+        control.exchangeDeclare(NODES_EXCHANGE, "fanout", false);
+        String inbox = control.queueDeclare().getQueue();
+        control.queueBind(inbox, NODES_EXCHANGE, "");
+        control.basicConsume(inbox, true, (tag, message) -> {
+            String other = new String(message.getBody(), StandardCharsets.UTF_8);
+            boolean leaving = message.getProperties() != null && "leave".equals(message.getProperties().getType());
+            boolean changed = leaving ? lastSeen.remove(other) != null : lastSeen.put(other, System.currentTimeMillis()) == null;
+            if (changed && !other.equals(nodeId) && !ticker.isShutdown()) {
+                ticker.execute(this::rebalance);
+            }
+        }, tag -> {});
+
+        lastSeen.put(nodeId, System.currentTimeMillis());
+        announce("heartbeat");
+        Thread.sleep(2 * HEARTBEAT_MS); // discovery: learn the live nodes before claiming anything
+        claiming = true;
+        rebalance();
+        ticker.scheduleWithFixedDelay(() -> {
+            announce("heartbeat");
+            long cutoff = System.currentTimeMillis() - MISSED_HEARTBEATS * HEARTBEAT_MS;
+            if (lastSeen.entrySet().removeIf(e -> !e.getKey().equals(nodeId) && e.getValue() < cutoff)) {
+                rebalance();
+            }
+        }, HEARTBEAT_MS, HEARTBEAT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void announce(String type) {
+        try {
+            control.basicPublish(NODES_EXCHANGE, "", new AMQP.BasicProperties.Builder().type(type).build(),
+                    nodeId.getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            BridgeLog.warn("partition", "⚠️ Node heartbeat failed: {}", e.getMessage());
+        }
+    }
+
+    /** Rendezvous hashing: each partition goes to the live node with the highest weight for it. */
+    static String ownerOf(int partition, Iterable<String> liveNodes) {
+        String owner = null;
+        long best = Long.MIN_VALUE;
+        for (String node : liveNodes) {
+            long w = weight(node, partition);
+            if (owner == null || w > best || (w == best && node.compareTo(owner) < 0)) {
+                owner = node;
+                best = w;
+            }
+        }
+        return owner;
+    }
+
+    private static long weight(String node, int partition) {
+        long h = node.hashCode() * 0x9E3779B97F4A7C15L + partition;
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= (h >>> 33);
+        return h;
+    }
+
+    private synchronized void rebalance() {
+        if (!claiming) {
+            return;
+        }
+        Set<String> live = new TreeSet<>(lastSeen.keySet());
+        live.add(nodeId);
+        Set<Integer> target = new TreeSet<>();
+        for (int p = 0; p < partitions; p++) {
+            if (nodeId.equals(ownerOf(p, live))) {
+                target.add(p);
+            }
+        }
+        Set<Integer> previous = owned;
+        if (target.equals(previous)) {
+            return;
+        }
+
+        List<Integer> lost = new ArrayList<>();
+        for (Integer p : previous) {
+            if (!target.contains(p)) {
+                lost.add(p);
+                cancel(p);
+            }
+        }
+
+        owned = Collections.unmodifiableSet(target);
+        for (Runnable listener : changeListeners) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                BridgeLog.error("partition", e, "❌ Partition change listener failed: {}", e.getMessage());
+            }
+        }
+
+        List<Integer> gained = new ArrayList<>();
+        for (Integer p : target) {
+            if (!previous.contains(p)) {
+                gained.add(p);
+                subscribe(p);
+            }
+        }
+        System.out.println("🧭 Node " + nodeId + " owns " + target.size() + "/" + partitions
+                + " partition(s) (+" + gained.size() + " -" + lost.size() + "), live nodes: " + live);
+    }
+
+    private void subscribe(int partition) {
+        try {
+            String tag = consumer.basicConsume(queueName(partition), autoAck, (t, message) -> {
+                try {
+                    handler.handle(message);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, t -> {});
+            consumerTags.put(partition, tag);
+        } catch (Exception e) {
+            BridgeLog.error("partition", e, "❌ Could not consume partition {}: {}", partition, e.getMessage());
+        }
+    }
+
+    private void cancel(int partition) {
+        String tag = consumerTags.remove(partition);
+        if (tag == null) {
+            return;
+        }
+        try {
+            consumer.basicCancel(tag);
+        } catch (Exception e) {
+            BridgeLog.warn("partition", "⚠️ Could not cancel partition {}: {}", partition, e.getMessage());
+        }
+    }
+
+    /**
+     * Leaves the cluster: cancels all partition consumers and tells the other nodes to
+     * take the partitions over. The consumer channel stays open, so deliveries already
+     * received can still be acked on it (a final checkpoint); close() closes it.
+     */
+    public void leave() {
+        ticker.shutdownNow();
+        synchronized (this) {
+            if (left) {
+                return;
+            }
+            left = true;
+            claiming = false;
+            for (Integer p : new ArrayList<>(consumerTags.keySet())) {
+                cancel(p);
+            }
+            owned = Collections.emptySet();
+        }
+        if (control != null) {
+            announce("leave");
+        }
+    }
+
+    /** Leaves the cluster (if not done yet) and closes both channels; unacked deliveries go back to the queues. */
+    @Override
+    public void close() {
+        leave();
+        try {
+            if (consumer != null && consumer.isOpen()) {
+                consumer.close();
+            }
+            if (control != null && control.isOpen()) {
+                control.close();
+            }
+        } catch (Exception ignored) {}
+    }
+}
@@ -0,0 +1,137 @@
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs partitioned mode against an InProcessBroker: three bridge nodes join one
+ * after another, one leaves, while a publisher streams numbered readings for
+ * -Dcheck.sensors sensors (default 200) through the partition router.
+ *
+ * Checks that
+ *   - every reading is handled exactly once,
+ *   - each sensor's readings are handled in publish order, across handoffs,
+ *   - a partition is never consumed by two nodes at the same time,
+ *   - the final assignment covers every partition exactly once.
+ * Esper is not involved: the nodes record deliveries instead of ingesting them.
+ *
+ * Usage (from BrokerCEP/CEP):
+ *   java -cp ".:esper-9.0.0/*:esper-9.0.0/dependencies/*" PartitionScaleOutCheck
+ */
+public class PartitionScaleOutCheck {
+
+    private static final int PARTITIONS = Integer.getInteger("cep.partitions", 16);
+    private static final int SENSORS = Integer.getInteger("check.sensors", 200);
+    private static final String SENSOR_QUEUE = "sensor_data";
+
+    private static final Map<String, Long> lastSeq = new ConcurrentHashMap<>();
+    private static final Map<Integer, String> consuming = new ConcurrentHashMap<>();
+    private static final AtomicLong handled = new AtomicLong();
+    private static final List<String> failures = Collections.synchronizedList(new ArrayList<>());
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("cep.heartbeatMs", System.getProperty("cep.heartbeatMs", "200"));
+
+        InProcessBroker broker = new InProcessBroker();
+        PartitionCoordinator.startRouter(broker.newConnection(), SENSOR_QUEUE, PARTITIONS);
+
+        AtomicBoolean publishing = new AtomicBoolean(true);
+        AtomicLong published = new AtomicLong();
+        Thread publisher = new Thread(() -> publish(broker, publishing, published), "check-publisher");
+        publisher.start();
+
+        List<PartitionCoordinator> nodes = new ArrayList<>();
+        nodes.add(startNode(broker, "node-A"));
+        Thread.sleep(1500);
+        nodes.add(startNode(broker, "node-B"));
+        Thread.sleep(1500);
+        nodes.add(startNode(broker, "node-C"));
+        Thread.sleep(1500);
+        nodes.remove(1).close();
+        Thread.sleep(1500);
+
+        publishing.set(false);
+        publisher.join();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (handled.get() < published.get() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+
+        if (handled.get() != published.get()) {
+            failures.add("published " + published.get() + " readings but handled " + handled.get());
+        }
+        Set<Integer> covered = new HashSet<>();
+        for (PartitionCoordinator node : nodes) {
+            for (Integer p : node.ownedPartitions()) {
+                if (!covered.add(p)) {
+                    failures.add("partition " + p + " owned by more than one node");
+                }
+            }
+            System.out.println(node.nodeId() + " owns " + node.ownedPartitions());
+        }
+        if (covered.size() != PARTITIONS) {
+            failures.add("only " + covered.size() + "/" + PARTITIONS + " partitions owned");
+        }
+        nodes.forEach(PartitionCoordinator::close);
+
+        System.out.println("published=" + published.get() + " handled=" + handled.get());
+        if (failures.isEmpty()) {
+            System.out.println("✅ PASS");
+            System.exit(0);
+        }
+        failures.stream().limit(20).forEach(f -> System.out.println("❌ " + f));
+        System.exit(1);
+    }
+
+    private static PartitionCoordinator startNode(InProcessBroker broker, String nodeId) throws Exception {
+        PartitionCoordinator node = new PartitionCoordinator(PARTITIONS, nodeId);
+        node.start(broker.newConnection(), message -> {
+            String[] reading = new String(message.getBody(), StandardCharsets.UTF_8).split(":");
+            int partition = PartitionCoordinator.partitionOf(reading[0], PARTITIONS);
+
+            String other = consuming.putIfAbsent(partition, nodeId);
+            if (other != null && !other.equals(nodeId)) {
+                failures.add("partition " + partition + " consumed by " + nodeId + " while " + other + " is consuming");
+            }
+            long seq = Long.parseLong(reading[1]);
+            Long previous = lastSeq.put(reading[0], seq);
+            if (previous != null && previous >= seq) {
+                failures.add(reading[0] + " reading " + seq + " handled after " + previous + " (by " + nodeId + ")");
+            }
+            handled.incrementAndGet();
+            consuming.remove(partition, nodeId);
+        });
+        return node;
+    }
+
+    private static void publish(InProcessBroker broker, AtomicBoolean publishing, AtomicLong published) {
+        try {
+            Channel channel = broker.newConnection().createChannel();
+            channel.queueDeclare(SENSOR_QUEUE, true, false, false, null);
+            long seq = 0;
+            while (publishing.get()) {
+                for (int s = 0; s < SENSORS; s++) {
+                    String sensorId = "sensor-" + s;
+                    AMQP.BasicProperties props = new AMQP.BasicProperties.Builder()
+                            .headers(Collections.singletonMap("sensorId", sensorId))
+                            .build();
+                    channel.basicPublish("", SENSOR_QUEUE, props, (sensorId + ":" + seq).getBytes(StandardCharsets.UTF_8));
+                    published.incrementAndGet();
+                }
+                seq++;
+                Thread.sleep(20);
+            }
+        } catch (Exception e) {
+            failures.add("publisher failed: " + e);
+        }
+    }
+}
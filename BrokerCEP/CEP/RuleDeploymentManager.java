@@ -0,0 +1,396 @@
+import com.espertech.esper.common.client.EventBean;
+import com.espertech.esper.runtime.client.EPDeployment;
+import com.espertech.esper.runtime.client.EPRuntime;
+import com.espertech.esper.runtime.client.EPStatement;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+
+/**
+ * Tracks one Esper deployment per (contractId, ruleId) and keeps them in sync with
+ * instances.json and the rules&lt;contractId&gt;.json files.
+ *
+ * sync() diffs the desired rules against what is deployed: new rules are deployed,
+ * rules whose JSON changed are redeployed, rules (or whole contracts) that
+ * disappeared are undeployed. Untouched deployments are never undeployed, so the
+ * other instances keep their time-window state and ingestion continues.
+ *
+ * Changes are picked up from a watcher on the working directory, and from a local
+ * admin endpoint (127.0.0.1, -Dcep.adminPort, default 8081):
+ *   GET    /deployments            current (contractId, ruleId) -> deploymentId
+ *   POST   /reload                 re-read instances.json and all rules files
+ *   POST   /instances/{contractId} add/refresh an instance (persisted to instances.json)
+ *   DELETE /instances/{contractId} undeploy an instance (persisted to instances.json)
+ *
+ * An optional rule filter restricts what this node deploys (partitioned mode: only
+ * rules whose sensor is in a partition the node owns); rules that stop passing it are
+ * undeployed by the next sync().
+ *
+ * With an IncrementalRuleEngine set, a rule the engine can evaluate by itself
+ * (IncrementalRule) is deployed there instead of to Esper; it is listed with a
+ * deployment id of "incremental:" + key and behaves like any other deployment.
+ */
+public class RuleDeploymentManager {
+
+    /** Receives a rule's alerts: one output row per firing, at runtime time now. */
+    public interface AlertListener {
+        void fire(EventBean alert, long now);
+    }
+
+    /** Creates the alert listener of a freshly deployed rule, given its select's property names. */
+    public interface ListenerBinder {
+        AlertListener bind(String[] propertyNames, String contractId, Map<String, Object> rule);
+    }
+
+    /** Picks the runtime an instance's rules are deployed to (a single runtime unless sharded). */
+    public interface RuntimeSelector {
+        EPRuntime runtimeFor(String contractId);
+    }
+
+    private static final int ADMIN_PORT = Integer.getInteger("cep.adminPort", 8081);
+    private static final String INSTANCES_FILE = "instances.json";
+
+    private final RuntimeSelector runtimes;
+    private final CompiledRuleCache ruleCache;
+    private final String eventType;
+    private final ListenerBinder binder;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+    private volatile Predicate<Map<String, Object>> ruleFilter = rule -> true;
+    private volatile IncrementalRuleEngine incremental;
+
+    /** key = contractId + "/" + ruleId */
+    private final Map<String, Deployed> deployed = new TreeMap<>();
+
+    private static final class Deployed {
+        final String deploymentId;
+        final Map<String, Object> rule;
+        final EPRuntime runtime;
+        final boolean incremental;
+
+        Deployed(String deploymentId, Map<String, Object> rule, EPRuntime runtime, boolean incremental) {
+            this.deploymentId = deploymentId;
+            this.rule = rule;
+            this.runtime = runtime;
+            this.incremental = incremental;
+        }
+    }
+
+    public RuleDeploymentManager(EPRuntime runtime, CompiledRuleCache ruleCache, String eventType, ListenerBinder binder) {
+        this(contractId -> runtime, ruleCache, eventType, binder);
+    }
+
+    /**
+     * Deploys each instance to the runtime chosen by the selector. When the selector's
+     * answer for an instance changes, the next sync() moves its rules to the new runtime.
+     */
+    public RuleDeploymentManager(RuntimeSelector runtimes, CompiledRuleCache ruleCache, String eventType, ListenerBinder binder) {
+        this.runtimes = runtimes;
+        this.ruleCache = ruleCache;
+        this.eventType = eventType;
+        this.binder = binder;
+    }
+
+    /** Brings the runtime in line with instances.json; returns the number of deployments changed. */
+    public synchronized int sync() throws Exception {
+        return sync(readInstances());
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized int sync(List<String> contractIds) {
+        // Desired state: key -> rule, for every rule of every listed instance
+        Map<String, Map<String, Object>> desired = new LinkedHashMap<>();
+        Set<String> unreadable = new HashSet<>();
+        for (String contractId : contractIds) {
+            String rulesFile = "rules" + contractId + ".json";
+            try {
+                Map<?, ?> rulesConfig = mapper.readValue(new File(rulesFile), Map.class);
+                List<Map<String, Object>> rules = (List<Map<String, Object>>) rulesConfig.get("rules");
+                if (rules == null || rules.isEmpty()) {
+                    System.err.println("⚠️ No rules found in " + rulesFile + " (contractId=" + contractId + ")");
+                    continue;
+                }
+                for (Map<String, Object> rule : rules) {
+                    if (ruleFilter.test(rule)) {
+                        desired.put(key(contractId, rule), rule);
+                    }
+                }
+            } catch (java.io.FileNotFoundException fnf) {
+                System.err.println("⚠️ Missing rules file: " + rulesFile + " (skipping contractId=" + contractId + ")");
+            } catch (Exception e) {
+                // Probably a file being rewritten: keep whatever is deployed for this contract
+                System.err.println("❌ Failed reading rules for contractId=" + contractId + ": " + e.getMessage());
+                unreadable.add(contractId);
+            }
+        }
+
+        int changes = 0;
+
+        // Undeploy rules that are gone, changed, or placed on another runtime
+        for (String key : new ArrayList<>(deployed.keySet())) {
+            Deployed d = deployed.get(key);
+            Map<String, Object> want = desired.get(key);
+            if (unreadable.contains(contractOf(key))
+                    || (want != null && want.equals(d.rule) && d.runtime == runtimes.runtimeFor(contractOf(key)))) {
+                continue;
+            }
+            if (undeploy(key)) {
+                changes++;
+            }
+        }
+
+        // Deploy rules that are new (or were just undeployed because they changed)
+        for (Map.Entry<String, Map<String, Object>> e : desired.entrySet()) {
+            if (!deployed.containsKey(e.getKey()) && deploy(contractOf(e.getKey()), e.getValue())) {
+                changes++;
+            }
+        }
+
+        if (changes > 0) {
+            System.out.println("🔁 Rule sync: " + changes + " change(s), " + deployed.size() + " deployment(s) active.");
+            changeListeners.forEach(Runnable::run);
+        }
+        return changes;
+    }
+
+    private boolean deploy(String contractId, Map<String, Object> rule) {
+        String key = key(contractId, rule);
+        try {
+            SensorIds.register((String) rule.get("sensorId")); // dense ids for the sensors rules watch
+            EPRuntime runtime = runtimes.runtimeFor(contractId);
+            IncrementalRuleEngine engine = incremental;
+            if (engine != null && engine.deploy(key, contractId, rule, binder)) {
+                deployed.put(key, new Deployed(IncrementalRuleEngine.DEPLOYMENT_PREFIX + key, rule, runtime, true));
+                System.out.println("✅ Rule deployed (incremental): contractId=" + contractId + ", ruleId=" + rule.get("id"));
+                return true;
+            }
+            EPDeployment deployment = ruleCache.deploy(runtime, rule); // shared template, sensorId bound per instance
+            for (EPStatement stmt : deployment.getStatements()) {
+                attach(stmt, binder.bind(stmt.getEventType().getPropertyNames(), contractId, rule));
+            }
+            deployed.put(key, new Deployed(deployment.getDeploymentId(), rule, runtime, false));
+            System.out.println("✅ Rule deployed: contractId=" + contractId + ", ruleId=" + rule.get("id"));
+            return true;
+        } catch (Exception e) {
+            System.err.println("❌ Failed deploying rule " + key + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean undeploy(String key) {
+        Deployed d = deployed.get(key);
+        try {
+            if (d.incremental) {
+                incremental.undeploy(key);
+            } else {
+                d.runtime.getDeploymentService().undeploy(d.deploymentId);
+                BridgeMetrics.forgetDeployment(d.deploymentId);
+            }
+            deployed.remove(key);
+            System.out.println("🗑️ Rule undeployed: " + key);
+            return true;
+        } catch (Exception e) {
+            System.err.println("❌ Failed undeploying rule " + key + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    public synchronized Map<String, String> deployments() {
+        Map<String, String> view = new TreeMap<>();
+        deployed.forEach((k, d) -> view.put(k, d.deploymentId));
+        return view;
+    }
+
+    /** Deployed rules grouped by contractId. */
+    public synchronized Map<String, List<Map<String, Object>>> rulesByContract() {
+        Map<String, List<Map<String, Object>>> view = new TreeMap<>();
+        deployed.forEach((k, d) -> view.computeIfAbsent(contractOf(k), c -> new ArrayList<>()).add(d.rule));
+        return view;
+    }
+
+    /** Deploys only rules accepted by the filter (takes effect on the next sync()). */
+    public void setRuleFilter(Predicate<Map<String, Object>> ruleFilter) {
+        this.ruleFilter = ruleFilter;
+    }
+
+    /**
+     * Puts rules the engine accepts on the incremental path (set before the first
+     * sync(); the engine must see the readings of the runtime its rules would use).
+     */
+    public void setIncremental(IncrementalRuleEngine incremental) {
+        this.incremental = incremental;
+    }
+
+    /** Delivers the statement's output rows to the listener, at the runtime's current time. */
+    public static void attach(EPStatement stmt, AlertListener listener) {
+        stmt.addListener((newData, oldData, s, r) -> listener.fire(newData[0], r.getEventService().getCurrentTime()));
+    }
+
+    /** Runs after every sync() that changed at least one deployment. */
+    public void onChange(Runnable listener) {
+        changeListeners.add(listener);
+    }
+
+    /** Adds (or refreshes) an instance and persists it to instances.json. */
+    public synchronized int addInstance(String contractId) throws Exception {
+        Set<String> ids = new LinkedHashSet<>(readInstances());
+        if (ids.add(contractId)) {
+            writeInstances(new ArrayList<>(ids));
+        }
+        return sync(new ArrayList<>(ids));
+    }
+
+    /** Undeploys an instance and removes it from instances.json. */
+    public synchronized int removeInstance(String contractId) throws Exception {
+        Set<String> ids = new LinkedHashSet<>(readInstances());
+        if (ids.remove(contractId)) {
+            writeInstances(new ArrayList<>(ids));
+        }
+        return sync(new ArrayList<>(ids));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> readInstances() throws IOException {
+        Map<?, ?> instancesConfig = mapper.readValue(new File(INSTANCES_FILE), Map.class);
+        List<String> contractIds = (List<String>) instancesConfig.get("contractIds");
+        return contractIds == null ? new ArrayList<>() : contractIds;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeInstances(List<String> contractIds) throws IOException {
+        Map<String, Object> instancesConfig = new LinkedHashMap<>(mapper.readValue(new File(INSTANCES_FILE), Map.class));
+        instancesConfig.put("contractIds", contractIds);
+        mapper.writer(SerializationFeature.INDENT_OUTPUT).writeValue(new File(INSTANCES_FILE), instancesConfig);
+    }
+
+    private static String key(String contractId, Map<String, Object> rule) {
+        return contractId + "/" + rule.get("id");
+    }
+
+    private static String contractOf(String key) {
+        return key.substring(0, key.lastIndexOf('/'));
+    }
+
+    // === Hot reload: watch instances.json and rules*.json ===
+
+    public void startWatcher() {
+        Path dir = Paths.get("").toAbsolutePath();
+        Thread watcher = new Thread(() -> {
+            try (WatchService ws = FileSystems.getDefault().newWatchService()) {
+                dir.register(ws,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+
+                while (true) {
+                    WatchKey key = ws.take();
+                    boolean relevant = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        String name = String.valueOf(event.context());
+                        if (name.equals(INSTANCES_FILE) || (name.startsWith("rules") && name.endsWith(".json"))) {
+                            relevant = true;
+                        }
+                    }
+                    key.reset();
+
+                    if (relevant) {
+                        Thread.sleep(300); // debounce editors/writers that touch the file several times
+                        try {
+                            sync();
+                        } catch (Exception e) {
+                            System.err.println("❌ Rule sync failed: " + e.getMessage());
+                        }
+                    }
+                }
+            } catch (InterruptedException ignored) {
+            } catch (IOException e) {
+                System.err.println("⚠️ Rules watcher stopped: " + e.getMessage());
+            }
+        }, "rules-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    // === Local admin endpoint ===
+
+    public HttpServer startAdminEndpoint() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), ADMIN_PORT), 0);
+
+        server.createContext("/deployments", ex -> {
+            respond(ex, 200, mapper.writerWithDefaultPrettyPrinter().writeValueAsString(deployments()));
+        });
+
+        server.createContext("/reload", ex -> {
+            if (!"POST".equals(ex.getRequestMethod())) {
+                respond(ex, 405, "{\"error\":\"use POST\"}");
+                return;
+            }
+            try {
+                respond(ex, 200, "{\"changes\":" + sync() + "}");
+            } catch (Exception e) {
+                respond(ex, 500, "{\"error\":" + mapper.writeValueAsString(String.valueOf(e.getMessage())) + "}");
+            }
+        });
+
+        server.createContext("/instances/", ex -> {
+            String contractId = ex.getRequestURI().getPath().substring("/instances/".length());
+            if (contractId.isEmpty() || contractId.contains("/") || contractId.contains("..")) {
+                respond(ex, 400, "{\"error\":\"invalid contractId\"}");
+                return;
+            }
+            try {
+                int changes;
+                if ("POST".equals(ex.getRequestMethod()) || "PUT".equals(ex.getRequestMethod())) {
+                    changes = addInstance(contractId);
+                } else if ("DELETE".equals(ex.getRequestMethod())) {
+                    changes = removeInstance(contractId);
+                } else {
+                    respond(ex, 405, "{\"error\":\"use POST or DELETE\"}");
+                    return;
+                }
+                respond(ex, 200, "{\"contractId\":" + mapper.writeValueAsString(contractId) + ",\"changes\":" + changes + "}");
+            } catch (Exception e) {
+                respond(ex, 500, "{\"error\":" + mapper.writeValueAsString(String.valueOf(e.getMessage())) + "}");
+            }
+        });
+
+        server.start();
+        System.out.println("🛠️ Rule admin endpoint on http://127.0.0.1:" + ADMIN_PORT);
+        return server;
+    }
+
+    private static void respond(HttpExchange ex, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Turns one rule from rules*.json into an EPL statement.
+ *
+ * By default the sensorId equality and the rule condition are pushed into the
+ * stream filter, e.g.
+ *
+ *   select ... from SensorEvents(sensorId = 's1' and (value > 2)).win:time(10 min) group by sensorId having ...
+ *
+ * so Esper's filter index hands each event only to the statements of its own
+ * sensor, and time windows retain matching events only. The older form, with
+ * the same predicate in a where clause behind an unfiltered window, is kept as
+ * "legacy" mode (-Dcep.eplMode=legacy) for comparison; both produce the same alerts.
+ *
+ * buildTemplate() writes the sensorId as the substitution parameter ?:sensorId:string
+ * instead of a literal. Contract instances created from the same rules file then
+ * share one template text, which CompiledRuleCache compiles once and deploys per
+ * instance with the instance's sensorId.
+ */
+public class RuleEplBuilder {
+
+    public static final String MODE_FILTER = "filter";
+    public static final String MODE_LEGACY = "legacy";
+
+    /** Name of the substitution parameter a template takes the rule's sensorId from. */
+    public static final String SENSOR_PARAM = "sensorId";
+
+    private static final String DEFAULT_MODE = System.getProperty("cep.eplMode", MODE_FILTER);
+
+    private static final Pattern TIME_WINDOW = Pattern.compile("^\\s*time\\s*\\((.*)\\)\\s*$");
+    private static final Pattern TIME_PART = Pattern.compile(
+            "(\\d+(?:\\.\\d+)?)\\s*(milliseconds?|msec|ms|seconds?|sec|s|minutes?|min|hours?|hr|h|days?|d)\\b");
+
+    public static String build(Map<String, Object> rule, String eventType) {
+        return build(rule, eventType, DEFAULT_MODE);
+    }
+
+    public static String build(Map<String, Object> rule, String eventType, String mode) {
+        return build(rule, eventType, mode, false);
+    }
+
+    /** The rule's EPL with its sensorId as a substitution parameter (see SENSOR_PARAM). */
+    public static String buildTemplate(Map<String, Object> rule, String eventType) {
+        return build(rule, eventType, DEFAULT_MODE, true);
+    }
+
+    private static String build(Map<String, Object> rule, String eventType, String mode, boolean template) {
+        String condition = (String) rule.get("condition");
+        String window = (String) rule.get("window");
+        String having = (String) rule.get("having");
+        String select = (String) rule.get("select");
+        String ruleSensorId = (String) rule.get("sensorId");
+
+        boolean hasAggregate = hasAggregate(select);
+        boolean hasWindow = (window != null && !window.trim().isEmpty());
+        boolean hasHaving = (having != null && !having.trim().isEmpty());
+        boolean hasCondition = (condition != null && !condition.trim().isEmpty());
+
+        // Force per-rule sensor filtering (prevents temperatureRule matching lightExposure, etc.)
+        String sensorValue = template ? "?:" + SENSOR_PARAM + ":string" : "'" + ruleSensorId.replace("'", "''") + "'";
+        String predicate = "sensorId = " + sensorValue
+                + (hasCondition ? " and (" + condition.trim() + ")" : "");
+
+        String epl;
+        if (MODE_LEGACY.equals(mode)) {
+            String stream = hasWindow ? eventType + ".win:" + window.trim() : eventType;
+            epl = "select " + select + " from " + stream + " where " + predicate;
+        } else {
+            String stream = eventType + "(" + predicate + ")" + (hasWindow ? ".win:" + window.trim() : "");
+            epl = "select " + select + " from " + stream;
+        }
+
+        if (hasWindow && hasAggregate) {
+            epl += " group by sensorId";
+        }
+        if (hasHaving) {
+            epl += " having " + having.trim();
+        }
+        return epl;
+    }
+
+    static boolean hasAggregate(String select) {
+        return select.contains("count(")
+                || select.contains("avg(")
+                || select.contains("sum(")
+                || select.contains("max(")
+                || select.contains("min(");
+    }
+
+    /**
+     * Milliseconds of an Esper time period such as "10 min" or "1 hour 30 sec"; a bare
+     * number is taken as milliseconds. Returns -1 if nothing could be read.
+     */
+    public static long periodMillis(String period) {
+        if (period == null || period.trim().isEmpty()) {
+            return -1;
+        }
+        String text = period.trim().toLowerCase();
+        if (text.matches("\\d+")) {
+            return Long.parseLong(text);
+        }
+        double millis = 0;
+        Matcher part = TIME_PART.matcher(text);
+        while (part.find()) {
+            double n = Double.parseDouble(part.group(1));
+            String unit = part.group(2);
+            if (unit.startsWith("ms") || unit.startsWith("milli")) {
+                millis += n;
+            } else if (unit.startsWith("s")) {
+                millis += n * 1000;
+            } else if (unit.startsWith("m")) {
+                millis += n * 60_000;
+            } else if (unit.startsWith("h")) {
+                millis += n * 3_600_000;
+            } else {
+                millis += n * 86_400_000;
+            }
+        }
+        return millis > 0 ? (long) millis : -1;
+    }
+
+    /** Length of a "time(...)" window in milliseconds, or -1 for other (or no) windows. */
+    public static long timeWindowMillis(String window) {
+        Matcher time = window == null ? null : TIME_WINDOW.matcher(window);
+        return time != null && time.matches() ? periodMillis(time.group(1)) : -1;
+    }
+}
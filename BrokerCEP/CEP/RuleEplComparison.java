@@ -0,0 +1,134 @@
+import com.espertech.esper.common.client.EPCompiled;
+import com.espertech.esper.common.client.configuration.Configuration;
+import com.espertech.esper.compiler.client.CompilerArguments;
+import com.espertech.esper.compiler.client.EPCompiler;
+import com.espertech.esper.compiler.client.EPCompilerProvider;
+import com.espertech.esper.runtime.client.EPDeployment;
+import com.espertech.esper.runtime.client.EPRuntime;
+import com.espertech.esper.runtime.client.EPRuntimeProvider;
+import com.espertech.esper.runtime.client.EPStatement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Comparison mode for RuleEplBuilder: runs the same rules and the same synthetic
+ * reading stream through a "legacy" (where-clause) runtime and a "filter"
+ * (stream-filter) runtime and reports whether the alerts are identical, plus
+ * retained heap and per-event latency for each.
+ *
+ * Usage (from BrokerCEP/CEP):
+ *   java -cp ".:esper-9.0.0/*:esper-9.0.0/dependencies/*" RuleEplComparison [instances] [events]
+ *
+ * The rules of every contract in instances.json are replicated [instances] times
+ * (default 1) with distinct sensorIds, so the effect of many contract instances
+ * can be seen on a single box. Runtimes use an external clock advancing 1s per
+ * reading, so both runs see identical window boundaries.
+ */
+public class RuleEplComparison {
+
+    private static final String EVENT_TYPE = "SensorEventsMultiInstaExperiment";
+
+    public static void main(String[] args) throws Exception {
+        int instances = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        int events = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+
+        List<Map<String, Object>> rules = RuleFixtures.replicate(RuleFixtures.instanceRules(), instances);
+        List<String> sensorIds = new ArrayList<>();
+        for (Map<String, Object> rule : rules) {
+            sensorIds.add((String) rule.get("sensorId"));
+        }
+        System.out.println("📌 " + rules.size() + " rules, " + sensorIds.size() + " sensors, " + events + " readings");
+
+        Result legacy = run(RuleEplBuilder.MODE_LEGACY, rules, sensorIds, events);
+        Result filter = run(RuleEplBuilder.MODE_FILTER, rules, sensorIds, events);
+
+        legacy.print();
+        filter.print();
+
+        boolean identical = legacy.alerts.equals(filter.alerts);
+        System.out.println(identical
+                ? "✅ Alerts identical (" + filter.alerts.size() + ")"
+                : "❌ Alerts differ: legacy=" + legacy.alerts.size() + " filter=" + filter.alerts.size());
+        System.out.printf("📉 Retained heap: %.1f%% less, per-event latency: %.1f%% less%n",
+                100.0 * (legacy.retainedBytes - filter.retainedBytes) / Math.max(1, legacy.retainedBytes),
+                100.0 * (legacy.nanosPerEvent() - filter.nanosPerEvent()) / Math.max(1e-9, legacy.nanosPerEvent()));
+    }
+
+    private static final class Result {
+        final String mode;
+        final List<String> alerts = new ArrayList<>();
+        long retainedBytes;
+        long sendNanos;
+        int events;
+
+        Result(String mode) {
+            this.mode = mode;
+        }
+
+        double nanosPerEvent() {
+            return events == 0 ? 0 : (double) sendNanos / events;
+        }
+
+        void print() {
+            System.out.printf("🔎 %-6s alerts=%d retainedHeap=%.1f MB avgSend=%.0f ns/event%n",
+                    mode, alerts.size(), retainedBytes / (1024.0 * 1024.0), nanosPerEvent());
+        }
+    }
+
+    private static Result run(String mode, List<Map<String, Object>> rules, List<String> sensorIds, int events)
+            throws Exception {
+        Result result = new Result(mode);
+
+        Configuration config = new Configuration();
+        config.getCommon().addEventType(EVENT_TYPE, SensorEventsMultiInstaExperiment.class);
+        config.getRuntime().getThreading().setInternalTimerEnabled(false);
+
+        long baseline = usedHeap();
+        EPRuntime runtime = EPRuntimeProvider.getRuntime("compare-" + mode, config);
+        runtime.getEventService().advanceTime(0);
+        EPCompiler compiler = EPCompilerProvider.getCompiler();
+
+        for (int i = 0; i < rules.size(); i++) {
+            String epl = RuleEplBuilder.build(rules.get(i), EVENT_TYPE, mode);
+            EPCompiled compiled = compiler.compile(epl, new CompilerArguments(config));
+            EPDeployment deployment = runtime.getDeploymentService().deploy(compiled);
+            final int ruleIndex = i;
+            for (EPStatement stmt : deployment.getStatements()) {
+                stmt.addListener((newData, oldData, s, r) ->
+                        result.alerts.add(ruleIndex + "|" + newData[0].getUnderlying()));
+            }
+        }
+
+        // Same seed for both modes: identical reading stream
+        Random random = new Random(42);
+        long time = 0;
+        for (int i = 0; i < events; i++) {
+            String sensorId = sensorIds.get(random.nextInt(sensorIds.size()));
+            double value = Math.round((random.nextDouble() * 200 - 100) * 10) / 10.0;
+            time += 1000;
+
+            long start = System.nanoTime();
+            runtime.getEventService().advanceTime(time);
+            runtime.getEventService().sendEventBean(
+                    new SensorEventsMultiInstaExperiment(sensorId, value, Long.toString(time)), EVENT_TYPE);
+            result.sendNanos += System.nanoTime() - start;
+        }
+        result.events = events;
+        result.retainedBytes = usedHeap() - baseline;
+
+        runtime.destroy();
+        return result;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,93 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rule sets for the load, comparison and benchmark tools (LoadGenerator,
+ * RuleEplComparison, IncrementalRuleCheck, bench/): the rules of the instances in
+ * instances.json, a rules template, and copies of a rule set per synthetic contract
+ * instance. Paths are relative to the working directory (BrokerCEP/CEP).
+ */
+public final class RuleFixtures {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private RuleFixtures() {
+    }
+
+    /** The rules of every contract in instances.json, each with its contractId set. */
+    @SuppressWarnings("unchecked")
+    public static List<Map<String, Object>> instanceRules() throws IOException {
+        Map<?, ?> instancesConfig = MAPPER.readValue(new File("instances.json"), Map.class);
+        List<Map<String, Object>> rules = new ArrayList<>();
+        for (String contractId : (List<String>) instancesConfig.get("contractIds")) {
+            Map<?, ?> rulesConfig = MAPPER.readValue(new File("rules" + contractId + ".json"), Map.class);
+            for (Map<String, Object> rule : (List<Map<String, Object>>) rulesConfig.get("rules")) {
+                Map<String, Object> copy = new LinkedHashMap<>(rule);
+                copy.put("contractId", contractId);
+                rules.add(copy);
+            }
+        }
+        return rules;
+    }
+
+    /** The benchmarks' rule sets: "meatSale" or "vaccine". */
+    public static List<Map<String, Object>> ruleSet(String name) throws IOException {
+        return template("meatSale".equals(name) ? "rulesMeatSale*.json" : "rulesVaccine*.json");
+    }
+
+    /** The rules of the first file (by name) matching the glob. */
+    @SuppressWarnings("unchecked")
+    public static List<Map<String, Object>> template(String glob) throws IOException {
+        Map<?, ?> rulesConfig = MAPPER.readValue(templateFile(glob).toFile(), Map.class);
+        return (List<Map<String, Object>>) rulesConfig.get("rules");
+    }
+
+    public static Path templateFile(String glob) throws IOException {
+        Path template = null;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get("."), glob)) {
+            for (Path file : files) {
+                if (template == null || file.getFileName().toString().compareTo(template.getFileName().toString()) < 0) {
+                    template = file;
+                }
+            }
+        }
+        if (template == null) {
+            throw new IllegalStateException("No " + glob + " in " + Paths.get("").toAbsolutePath());
+        }
+        return template;
+    }
+
+    /** The rules as contract instance i: sensorId and contractId suffixed with "_" + i. */
+    public static List<Map<String, Object>> instance(List<Map<String, Object>> rules, int i) {
+        List<Map<String, Object>> copies = new ArrayList<>();
+        for (Map<String, Object> rule : rules) {
+            Map<String, Object> copy = new LinkedHashMap<>(rule);
+            copy.put("sensorId", rule.get("sensorId") + "_" + i);
+            copy.put("contractId", rule.get("contractId") + "_" + i);
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    /** The rules as instances 0 .. instances-1, each with its own sensorIds; unchanged for a single instance. */
+    public static List<Map<String, Object>> replicate(List<Map<String, Object>> rules, int instances) {
+        if (instances <= 1) {
+            return rules;
+        }
+        List<Map<String, Object>> copies = new ArrayList<>();
+        for (int i = 0; i < instances; i++) {
+            copies.addAll(instance(rules, i));
+        }
+        return copies;
+    }
+}
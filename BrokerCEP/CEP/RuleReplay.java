@@ -0,0 +1,230 @@
+import com.espertech.esper.common.client.configuration.Configuration;
+import com.espertech.esper.compiler.client.EPCompilerProvider;
+import com.espertech.esper.runtime.client.EPDeployment;
+import com.espertech.esper.runtime.client.EPRuntime;
+import com.espertech.esper.runtime.client.EPRuntimeProvider;
+import com.espertech.esper.runtime.client.EPStatement;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Replays recorded sensor readings through the rules in event time, as fast as the
+ * CPU allows, to backtest rule changes against historical data.
+ *
+ * Input files are JSON lines in the sensor_data message format (one reading or one
+ * gateway batch per line, as SensorMessageDecoder reads them) or, for *.csv files,
+ * "sensorId,value,sensorTimestamp" rows (a header row is skipped). Readings go
+ * through an EventTimeSequencer, so windows open and close by sensorTimestamp and an
+ * hour of data takes as long as Esper needs to process it, not an hour.
+ *
+ * Each rule's "suppress" setting (AlertSuppressor) applies as in the bridge, so the
+ * report shows how many alerts a suppression change saves.
+ *
+ * Rules: by default the instances of instances.json with their rules&lt;contractId&gt;.json,
+ * deployed by RuleDeploymentManager exactly as the bridge does; -Dreplay.rules=a.json,b.json
+ * deploys those rule files instead. Alerts are counted per (contractId, ruleId) and,
+ * with -Dreplay.alerts=file.jsonl, written one JSON alert per line (the bridge's alert
+ * format). Nothing is published and no wallet is consulted. Rules the
+ * IncrementalRuleEngine accepts are evaluated there, as in the bridge
+ * (-Dcep.incremental=false replays everything through Esper).
+ *
+ * Reported: readings replayed, late and unparseable readings dropped, alerts per rule,
+ * the event-time span covered, wall time, readings/s and the speedup over real time.
+ * The reorder bound is -DeventTime.maxOutOfOrderMs (see EventTimeSequencer).
+ *
+ * Usage (from BrokerCEP/CEP):
+ *   java -cp ".:esper-9.0.0/*:esper-9.0.0/dependencies/*" RuleReplay readings.jsonl [more files...]
+ */
+public class RuleReplay {
+
+    private static final String EVENT_TYPE = "SensorEventsMultiInstaExperiment";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: RuleReplay <readings.jsonl|readings.csv> [more files...]");
+            System.exit(2);
+        }
+        // Per-reading console output would dominate the replay
+        System.setProperty("log.level", System.getProperty("log.level", "WARN"));
+
+        Configuration config = new Configuration();
+        config.getCommon().addEventType(EVENT_TYPE, SensorEventsMultiInstaExperiment.class);
+        config.getRuntime().getThreading().setInternalTimerEnabled(false);
+        EPRuntime runtime = EPRuntimeProvider.getRuntime("replay", config);
+        CompiledRuleCache ruleCache = new CompiledRuleCache(
+                EPCompilerProvider.getCompiler(), config, EVENT_TYPE, SensorEventsMultiInstaExperiment.class);
+
+        String alertsFile = System.getProperty("replay.alerts");
+        OutputStream alertsOut = alertsFile == null ? null : new FileOutputStream(alertsFile);
+        Map<String, LongAdder[]> alertsByRule = new TreeMap<>(); // {sent, suppressed}
+        RuleDeploymentManager.ListenerBinder binder = (propertyNames, contractId, rule) -> {
+            AlertEncoder encoder = new AlertEncoder(propertyNames, contractId, rule);
+            AlertSuppressor suppressor = AlertSuppressor.forRule(propertyNames, contractId, rule);
+            LongAdder[] count = alertsByRule.computeIfAbsent(encoder.getContractId() + "/" + encoder.getRuleId(),
+                    k -> new LongAdder[]{new LongAdder(), new LongAdder()});
+            // Rules fire on the replay thread: no locking needed for the file
+            return (alert, now) -> {
+                if (suppressor != null && !suppressor.admit(alert, now)) {
+                    count[1].increment();
+                    return;
+                }
+                count[0].increment();
+                if (alertsOut != null) {
+                    try {
+                        alertsOut.write(encoder.encodeJson(alert));
+                        alertsOut.write('\n');
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Cannot write " + alertsFile, e);
+                    }
+                }
+            };
+        };
+
+        // Rules of the incremental shape run outside Esper, as in the bridge
+        IncrementalRuleEngine incremental = IncrementalRuleEngine.ENABLED ? new IncrementalRuleEngine() : null;
+        int rules = deployRules(runtime, ruleCache, binder, incremental);
+        System.out.println("📌 Replaying against " + rules + " rule(s)...");
+
+        EventTimeSequencer<SensorEventsMultiInstaExperiment> sequencer = new EventTimeSequencer<>(
+                runtime.getEventService(), SensorEventsMultiInstaExperiment::getEventTime,
+                event -> {
+                    if (incremental != null) {
+                        incremental.send(event, runtime.getEventService().getCurrentTime());
+                    }
+                    runtime.getEventService().sendEventBean(event, EVENT_TYPE);
+                });
+
+        long[] span = {Long.MAX_VALUE, Long.MIN_VALUE};
+        long malformed = 0;
+        long start = System.nanoTime();
+        for (String file : args) {
+            malformed += replayFile(file, sequencer, span);
+        }
+        sequencer.flush();
+        long wallNanos = System.nanoTime() - start;
+        if (alertsOut != null) {
+            alertsOut.close();
+        }
+
+        long replayed = sequencer.releasedCount();
+        double wallSec = wallNanos / 1e9;
+        double spanSec = replayed == 0 ? 0 : (span[1] - span[0]) / 1e3;
+        System.out.println();
+        System.out.printf(Locale.ROOT, "⏱️ %d reading(s) replayed in %.2f s (%.0f readings/s)%n",
+                replayed, wallSec, replayed / Math.max(wallSec, 1e-9));
+        System.out.printf(Locale.ROOT, "   event time covered: %.1f s → %.0fx real time%n",
+                spanSec, spanSec / Math.max(wallSec, 1e-9));
+        System.out.println("   dropped: " + sequencer.lateCount() + " late, " + sequencer.invalidCount()
+                + " without timestamp, " + malformed + " malformed line(s)");
+        long alerts = 0;
+        long suppressed = 0;
+        for (Map.Entry<String, LongAdder[]> e : alertsByRule.entrySet()) {
+            alerts += e.getValue()[0].sum();
+            suppressed += e.getValue()[1].sum();
+            System.out.printf("   %-40s %8d alert(s) %8d suppressed%n", e.getKey(), e.getValue()[0].sum(), e.getValue()[1].sum());
+        }
+        System.out.println("🚨 " + alerts + " alert(s), " + suppressed + " suppressed"
+                + (alertsFile != null ? ", written to " + alertsFile : ""));
+        runtime.destroy();
+        System.exit(0);
+    }
+
+    private static int deployRules(EPRuntime runtime, CompiledRuleCache ruleCache,
+                                   RuleDeploymentManager.ListenerBinder binder,
+                                   IncrementalRuleEngine incremental) throws Exception {
+        String ruleFiles = System.getProperty("replay.rules");
+        if (ruleFiles == null) {
+            RuleDeploymentManager deployments = new RuleDeploymentManager(runtime, ruleCache, EVENT_TYPE, binder);
+            deployments.setIncremental(incremental);
+            deployments.sync();
+            return deployments.deployments().size();
+        }
+        ObjectMapper mapper = new ObjectMapper();
+        int rules = 0;
+        for (String file : ruleFiles.split(",")) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> config = mapper.readValue(Paths.get(file.trim()).toFile(), Map.class);
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> list = (List<Map<String, Object>>) config.get("rules");
+            for (Map<String, Object> rule : list) {
+                String contractId = (String) rule.get("contractId");
+                rules++;
+                if (incremental != null && incremental.deploy(contractId + "/" + rule.get("id"), contractId, rule, binder)) {
+                    continue;
+                }
+                EPDeployment deployment = ruleCache.deploy(runtime, rule);
+                for (EPStatement stmt : deployment.getStatements()) {
+                    RuleDeploymentManager.attach(stmt, binder.bind(stmt.getEventType().getPropertyNames(), contractId, rule));
+                }
+            }
+        }
+        return rules;
+    }
+
+    /** Streams one file into the sequencer; returns the number of lines that could not be read. */
+    private static long replayFile(String file, EventTimeSequencer<SensorEventsMultiInstaExperiment> sequencer,
+                                   long[] span) throws IOException {
+        boolean csv = file.toLowerCase(Locale.ROOT).endsWith(".csv");
+        long malformed = 0;
+        try (BufferedReader in = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            String line;
+            boolean first = true;
+            while ((line = in.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    if (csv) {
+                        String[] f = line.split(",", 3);
+                        if (first && !isNumber(f.length > 1 ? f[1].trim() : "")) {
+                            first = false;
+                            continue; // header row
+                        }
+                        offer(sequencer, new SensorEventsMultiInstaExperiment(
+                                f[0].trim(), Double.parseDouble(f[1].trim()), f.length > 2 ? f[2].trim() : null), span);
+                    } else {
+                        for (SensorEventsMultiInstaExperiment event : SensorMessageDecoder.decodeAll(
+                                line.getBytes(StandardCharsets.UTF_8), null, SensorEventsMultiInstaExperiment::new)) {
+                            offer(sequencer, event, span);
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    malformed++;
+                    BridgeLog.warn("replay", "❌ {}: unreadable line skipped: {}", file, e.getMessage());
+                }
+                first = false;
+            }
+        }
+        return malformed;
+    }
+
+    private static void offer(EventTimeSequencer<SensorEventsMultiInstaExperiment> sequencer,
+                              SensorEventsMultiInstaExperiment event, long[] span) {
+        if (sequencer.offer(event)) {
+            span[0] = Math.min(span[0], event.getEventTime());
+            span[1] = Math.max(span[1], event.getEventTime());
+        }
+    }
+
+    private static boolean isNumber(String s) {
+        try {
+            Double.parseDouble(s);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
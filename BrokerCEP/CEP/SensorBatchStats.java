@@ -0,0 +1,71 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for batched sensor messages: how many batches, how many readings they
+ * carried, the largest batch, and how long verify + inject took per batch.
+ *
+ * A one-line summary of the last interval is printed every
+ * -Dbatch.statsIntervalSec seconds (default 60) while batches are arriving.
+ */
+public class SensorBatchStats {
+
+    private static final long INTERVAL_SEC = Long.getLong("batch.statsIntervalSec", 60L);
+
+    private static final LongAdder BATCHES = new LongAdder();
+    private static final LongAdder READINGS = new LongAdder();
+    private static final LongAdder NANOS = new LongAdder();
+    private static final LongAccumulator MAX_SIZE = new LongAccumulator(Math::max, 0);
+    private static final LongAccumulator MAX_NANOS = new LongAccumulator(Math::max, 0);
+
+    // Cumulative totals (for metrics export); the adders above are reset per interval
+    private static final AtomicLong TOTAL_BATCHES = new AtomicLong();
+    private static final AtomicLong TOTAL_READINGS = new AtomicLong();
+
+    static {
+        Thread reporter = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(INTERVAL_SEC * 1000);
+                    report();
+                }
+            } catch (InterruptedException ignored) {
+            }
+        }, "batch-stats");
+        reporter.setDaemon(true);
+        reporter.start();
+    }
+
+    public static void record(int size, long nanos) {
+        BATCHES.increment();
+        READINGS.add(size);
+        NANOS.add(nanos);
+        MAX_SIZE.accumulate(size);
+        MAX_NANOS.accumulate(nanos);
+        TOTAL_BATCHES.incrementAndGet();
+        TOTAL_READINGS.addAndGet(size);
+    }
+
+    public static long totalBatches() {
+        return TOTAL_BATCHES.get();
+    }
+
+    public static long totalReadings() {
+        return TOTAL_READINGS.get();
+    }
+
+    private static void report() {
+        long batches = BATCHES.sumThenReset();
+        long readings = READINGS.sumThenReset();
+        long nanos = NANOS.sumThenReset();
+        long maxSize = MAX_SIZE.getThenReset();
+        long maxNanos = MAX_NANOS.getThenReset();
+        if (batches == 0) {
+            return;
+        }
+        System.out.printf("📦 Batches: %d (%d readings, avg %.1f, max %d) avg %.2f ms, max %.2f ms per batch%n",
+                batches, readings, (double) readings / batches, maxSize,
+                nanos / 1e6 / batches, maxNanos / 1e6);
+    }
+}
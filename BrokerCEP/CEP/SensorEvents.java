@@ -1,18 +1,25 @@
- 
-
+/**
+ * A sensor reading for the single-instance bridge (bean event type "SensorEvents"),
+ * with the same compact layout as SensorEventsMultiInstaExperiment.
+ */
 public class SensorEvents {
-    private String sensorId;
-    private double value;
-    private String sensorTimestamp;
+    private final int sensorKey;
+    private final double value;
+    private final long eventTime;
+    private final String sensorIdText;   // only when sensorKey == SensorIds.NONE
+    private final String timestampText;  // only when not canonical (see SensorTimestamps)
 
     public SensorEvents(String sensorId, double value, String sensorTimestamp) {
-        this.sensorId = sensorId;
+        this.sensorKey = SensorIds.keyOf(sensorId); // lookup only: unverified ids are not interned
+        this.sensorIdText = sensorKey == SensorIds.NONE ? sensorId : null;
         this.value = value;
-        this.sensorTimestamp = sensorTimestamp;
+        this.eventTime = SensorTimestamps.parseMillis(sensorTimestamp);
+        this.timestampText = sensorTimestamp == null || SensorTimestamps.isCanonical(sensorTimestamp, eventTime)
+                ? null : sensorTimestamp;
     }
 
     public String getSensorId() {
-        return sensorId;
+        return sensorKey == SensorIds.NONE ? sensorIdText : SensorIds.name(sensorKey);
     }
 
     public double getValue() {
@@ -20,12 +27,19 @@ public class SensorEvents {
     }
 
     public String getSensorTimestamp() {
-        return sensorTimestamp;
+        if (timestampText != null || eventTime == SensorTimestamps.NO_TIME) {
+            return timestampText;
+        }
+        return SensorTimestamps.format(eventTime);
+    }
+
+    /** sensorTimestamp as epoch millis (SensorTimestamps.NO_TIME if unparseable), used in event-time mode. */
+    public long getEventTime() {
+        return eventTime;
     }
 
     @Override
     public String toString() {
-        return "{sensorId=" + sensorId + ", value=" + value + ",sensorTimestamp=" + sensorTimestamp + "}";
+        return "{sensorId=" + getSensorId() + ", value=" + value + ",sensorTimestamp=" + getSensorTimestamp() + "}";
     }
 }
-
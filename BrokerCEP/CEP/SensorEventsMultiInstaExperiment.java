@@ -1,17 +1,30 @@
+/**
+ * One sensor reading, as Esper sees it (bean event type "SensorEventsMultiInstaExperiment").
+ *
+ * Laid out for windows that retain millions of readings: the sensorId is an int
+ * from SensorIds and the timestamp a long (epoch millis); the original strings are
+ * only kept when they cannot be rebuilt (a sensorId not registered in SensorIds, or a
+ * timestamp that is not in the publishers' toISOString() form). The getters, and so the properties rules
+ * use (sensorId, value, sensorTimestamp), are unchanged.
+ */
 public class SensorEventsMultiInstaExperiment {
-    private String sensorId;
-    private double value;
-    private String sensorTimestamp;
-
+    private final int sensorKey;
+    private final double value;
+    private final long eventTime;
+    private final String sensorIdText;   // only when sensorKey == SensorIds.NONE
+    private final String timestampText;  // only when not canonical (see SensorTimestamps)
 
     public SensorEventsMultiInstaExperiment(String sensorId, double value, String sensorTimestamp) {
-        this.sensorId = sensorId;
+        this.sensorKey = SensorIds.keyOf(sensorId); // lookup only: unverified ids are not interned
+        this.sensorIdText = sensorKey == SensorIds.NONE ? sensorId : null;
         this.value = value;
-        this.sensorTimestamp = sensorTimestamp;
+        this.eventTime = SensorTimestamps.parseMillis(sensorTimestamp);
+        this.timestampText = sensorTimestamp == null || SensorTimestamps.isCanonical(sensorTimestamp, eventTime)
+                ? null : sensorTimestamp;
     }
 
     public String getSensorId() {
-        return sensorId;
+        return sensorKey == SensorIds.NONE ? sensorIdText : SensorIds.name(sensorKey);
     }
 
     public double getValue() {
@@ -19,14 +32,24 @@ public class SensorEventsMultiInstaExperiment {
     }
 
     public String getSensorTimestamp() {
-        return sensorTimestamp;
+        if (timestampText != null || eventTime == SensorTimestamps.NO_TIME) {
+            return timestampText;
+        }
+        return SensorTimestamps.format(eventTime);
     }
 
-   
+    /** The SensorIds id of the sensorId (SensorIds.NONE if it has none); not an event property. */
+    int sensorKey() {
+        return sensorKey;
+    }
+
+    /** sensorTimestamp as epoch millis (SensorTimestamps.NO_TIME if unparseable), used in event-time mode. */
+    public long getEventTime() {
+        return eventTime;
+    }
 
     @Override
     public String toString() {
-        return "{sensorId=" + sensorId + ", value=" + value + ",sensorTimestamp=" + sensorTimestamp + "}";
+        return "{sensorId=" + getSensorId() + ", value=" + value + ",sensorTimestamp=" + getSensorTimestamp() + "}";
     }
 }
-
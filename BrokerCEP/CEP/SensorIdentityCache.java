@@ -0,0 +1,213 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory cache of sensor identity checks (wallet enrollment + certificate CN binding).
+ *
+ * The wallet is loaded in bulk at startup and every result, positive or negative,
+ * is kept per sensorId, so the per-message check is a single map lookup instead
+ * of a Files.exists, a JSON parse and an X.509 parse. A watcher on the wallet
+ * directory drops the entry for a sensor whenever its .id file is created,
+ * modified or deleted; the next message for that sensor re-verifies it from disk.
+ *
+ * A result read from disk is only stored if no invalidation happened while it was
+ * being read, so a change to the wallet during the read is never masked by a stale
+ * entry. ERROR (a transient failure reading the wallet) is never cached.
+ */
+public class SensorIdentityCache {
+
+    public enum Status { VERIFIED, NOT_REGISTERED, CN_MISMATCH, ERROR }
+
+    private static final String ID_SUFFIX = ".id";
+
+    // Upper bound on cached negative results, so a flood of random sensorIds cannot grow the map forever
+    private static final int MAX_NEGATIVE_ENTRIES = Integer.getInteger("identity.maxNegative", 10_000);
+
+    private static final ConcurrentHashMap<String, Status> CACHE = new ConcurrentHashMap<>();
+    private static final AtomicInteger NEGATIVE_ENTRIES = new AtomicInteger();
+    // Bumped by every invalidation; a disk read started under an older value is not stored
+    private static final AtomicLong GENERATION = new AtomicLong();
+    private static volatile boolean started;
+
+    /** Bulk-loads the wallet and starts the directory watcher. Safe to call more than once. */
+    public static synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+
+        Path wallet = WalletUtil.getWalletPath();
+        int loaded = 0;
+        if (Files.isDirectory(wallet)) {
+            try (DirectoryStream<Path> ids = Files.newDirectoryStream(wallet, "*" + ID_SUFFIX)) {
+                for (Path idFile : ids) {
+                    String sensorId = sensorIdOf(idFile.getFileName());
+                    long generation = GENERATION.get();
+                    store(sensorId, verifyFromDisk(sensorId), generation);
+                    loaded++;
+                }
+            } catch (IOException e) {
+                System.err.println("⚠️ Could not preload wallet identities: " + e.getMessage());
+            }
+            startWatcher(wallet);
+        } else {
+            System.err.println("⚠️ Wallet directory not found: " + wallet);
+        }
+        System.out.println("🪪 Identity cache loaded " + loaded + " wallet identities.");
+    }
+
+    /** Returns the cached verification status for a sensor, verifying from disk on a miss. */
+    public static Status verify(String sensorId) {
+        if (sensorId == null) {
+            return Status.NOT_REGISTERED;
+        }
+        Status status = CACHE.get(sensorId);
+        if (status != null) {
+            return status;
+        }
+
+        long generation = GENERATION.get();
+        status = verifyFromDisk(sensorId);
+        store(sensorId, status, generation);
+        return status;
+    }
+
+    /**
+     * Caches a result read from disk unless an invalidation happened since the read
+     * started (generation) or it is ERROR. Runs in CACHE.compute, so NEGATIVE_ENTRIES
+     * follows every replaced entry.
+     */
+    private static void store(String sensorId, Status status, long generation) {
+        if (status == Status.ERROR) {
+            return;
+        }
+        if (status == Status.VERIFIED) {
+            SensorIds.register(sensorId);
+        }
+        CACHE.compute(sensorId, (id, current) -> {
+            if (GENERATION.get() != generation) {
+                return current; // invalidated while reading: the next message re-verifies
+            }
+            boolean negative = status != Status.VERIFIED;
+            if (negative && current == null && NEGATIVE_ENTRIES.get() >= MAX_NEGATIVE_ENTRIES) {
+                return null;
+            }
+            count(current, -1);
+            count(status, 1);
+            return status;
+        });
+    }
+
+    private static void count(Status status, int delta) {
+        if (status != null && status != Status.VERIFIED) {
+            NEGATIVE_ENTRIES.addAndGet(delta);
+        }
+    }
+
+    /** verify() plus a (rate-limited) warning and an audit record for a rejected sensor; true if the reading may be processed. */
+    public static boolean admit(String sensorId) {
+        Status identity = verify(sensorId);
+        if (identity == Status.VERIFIED) {
+            return true;
+        }
+        if (identity == Status.NOT_REGISTERED) {
+            BridgeLog.warn("identity", "⚠️ Unauthorized sensorId (not in wallet): {}", sensorId);
+        } else if (identity == Status.CN_MISMATCH) {
+            BridgeLog.warn("identity", "⚠️ Certificate CN mismatch for sensorId: {}", sensorId);
+        } else {
+            BridgeLog.warn("identity", "⚠️ Error verifying certificate for {}", sensorId);
+        }
+        BridgeLog.audit(sensorId, identity.name());
+        BridgeMetrics.rejected(identity.name());
+        return false;
+    }
+
+    public static void invalidate(String sensorId) {
+        GENERATION.incrementAndGet(); // before the removal, so a read in progress is not stored after it
+        CACHE.computeIfPresent(sensorId, (id, current) -> {
+            count(current, -1);
+            return null;
+        });
+    }
+
+    /** Marks a sensor as verified without a wallet lookup; for in-process harnesses with synthetic sensors. */
+    static void trust(String sensorId) {
+        SensorIds.register(sensorId);
+        CACHE.compute(sensorId, (id, current) -> {
+            count(current, -1);
+            return Status.VERIFIED;
+        });
+    }
+
+    public static int size() {
+        return CACHE.size();
+    }
+
+    private static Status verifyFromDisk(String sensorId) {
+        if (!WalletUtil.isSensorRegistered(sensorId)) {
+            return Status.NOT_REGISTERED;
+        }
+        try {
+            String certPem = WalletUtil.getSensorCert(sensorId);
+            return CertificateUtil.verifySensorBinding(CertificateUtil.parseCertificate(certPem), sensorId)
+                    ? Status.VERIFIED
+                    : Status.CN_MISMATCH;
+        } catch (Exception e) {
+            BridgeLog.warn("identity", "⚠️ Error verifying certificate for {}: {}", sensorId, e.getMessage());
+            return Status.ERROR;
+        }
+    }
+
+    private static String sensorIdOf(Path fileName) {
+        String name = fileName.toString();
+        return name.substring(0, name.length() - ID_SUFFIX.length());
+    }
+
+    private static void startWatcher(Path wallet) {
+        Thread watcher = new Thread(() -> {
+            try (WatchService ws = FileSystems.getDefault().newWatchService()) {
+                wallet.register(ws,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+
+                while (true) {
+                    WatchKey key = ws.take();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            // Lost track of individual changes: drop everything, re-verify lazily
+                            GENERATION.incrementAndGet();
+                            for (String sensorId : CACHE.keySet()) {
+                                invalidate(sensorId);
+                            }
+                            continue;
+                        }
+                        Path name = (Path) event.context();
+                        if (name.toString().endsWith(ID_SUFFIX)) {
+                            invalidate(sensorIdOf(name));
+                        }
+                    }
+                    if (!key.reset()) {
+                        System.err.println("⚠️ Wallet directory is no longer accessible; identity watcher stopped.");
+                        return;
+                    }
+                }
+            } catch (InterruptedException ignored) {
+            } catch (IOException e) {
+                System.err.println("⚠️ Wallet watcher stopped: " + e.getMessage());
+            }
+        }, "wallet-identity-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+}
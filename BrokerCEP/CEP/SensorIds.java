@@ -0,0 +1,68 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns sensorIds to dense int ids, so a reading held in an Esper window carries
+ * an int instead of its own copy of the sensorId string.
+ *
+ * Sensors are registered only when a rule for them is deployed (RuleDeploymentManager,
+ * IncrementalRuleEngine) and when their wallet identity is verified
+ * (SensorIdentityCache). Events only look their sensorId up (keyOf): a reading for
+ * an unknown sensor keeps its own string and adds nothing here, so made-up
+ * sensorIds in messages cannot fill the table. Ids are never reused or removed, and
+ * the table is bounded (-Dsensors.maxIds, default 1048576): past the bound,
+ * register() answers -1 as well.
+ *
+ * name(id) is a plain array read and returns the same String instance every time.
+ */
+public final class SensorIds {
+
+    public static final int NONE = -1;
+
+    private static final int MAX_IDS = Integer.getInteger("sensors.maxIds", 1 << 20);
+
+    private static final ConcurrentHashMap<String, Integer> IDS = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[1024];
+    private static int next; // guarded by SensorIds.class
+
+    private SensorIds() {}
+
+    /** Id of a registered sensorId; NONE for null or an unknown sensorId. Never registers. */
+    public static int keyOf(String sensorId) {
+        if (sensorId == null) {
+            return NONE;
+        }
+        Integer id = IDS.get(sensorId);
+        return id != null ? id : NONE;
+    }
+
+    /** Id of a sensorId, registering it if needed; NONE for null or when the table is full. */
+    public static synchronized int register(String sensorId) {
+        if (sensorId == null) {
+            return NONE;
+        }
+        Integer id = IDS.get(sensorId);
+        if (id != null) {
+            return id;
+        }
+        if (next >= MAX_IDS) {
+            return NONE;
+        }
+        String[] table = names;
+        if (next == table.length) {
+            table = Arrays.copyOf(table, Math.min(MAX_IDS, table.length * 2));
+        }
+        table[next] = sensorId;
+        names = table; // publish the slot before the id can be looked up
+        IDS.put(sensorId, next);
+        return next++;
+    }
+
+    public static String name(int id) {
+        return id < 0 ? null : names[id];
+    }
+
+    public static synchronized int size() {
+        return next;
+    }
+}
@@ -0,0 +1,299 @@
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.rabbitmq.client.Delivery;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Staged ingestion for the sensor_data consumer.
+ *
+ * The AMQP delivery thread only picks a partition and enqueues the delivery;
+ * decoding, identity verification and sendEventBean run on a pool of worker
+ * threads. Partitions are chosen by a hash of sensorId and each partition is
+ * served by exactly one worker, so readings of the same sensor reach Esper in
+ * the order they were delivered while different sensors are processed in parallel.
+ *
+ * The partition key comes from the "sensorId" message header when the publisher
+ * sets it; otherwise the body is scanned with a streaming parser up to the
+ * sensorId field. Full queues block the delivery thread (backpressure to the broker).
+ * Batch envelopes are keyed by their gatewayId (header or body), so a sensor that
+ * always reports through the same gateway keeps its ordering.
+ *
+ * With an IngestFlowControl that sheds, an overloaded partition sheds instead of
+ * blocking (latest-per-sensor, down-sampling or dead-lettering; see there). Batch
+ * envelopes carry readings of several sensors, so they are never superseded or
+ * down-sampled: that would drop the other sensors' readings with them.
+ *
+ * Tunables (JVM system properties):
+ *   ingest.workers        number of worker threads/partitions (default: available cores)
+ *   ingest.queueCapacity  pending messages per partition (default 1024)
+ */
+public class SensorIngestionPipeline implements AutoCloseable {
+
+    /** Processes one raw sensor message (decode, verify, send to Esper). */
+    public interface Handler {
+        void handle(Delivery message) throws Exception;
+    }
+
+    private static final int WORKERS = Integer.getInteger("ingest.workers", Runtime.getRuntime().availableProcessors());
+    private static final int QUEUE_CAPACITY = Integer.getInteger("ingest.queueCapacity", 1024);
+
+    private static final Slot POISON = new Slot(new RouteKey(null, false), null);
+
+    /** A delivery's partition key: its sensorId, or for a batch envelope its gateway. */
+    static final class RouteKey {
+        final String id;
+        final boolean batch;
+
+        RouteKey(String id, boolean batch) {
+            this.id = id;
+            this.batch = batch;
+        }
+    }
+
+    /** A queued delivery; under the "latest" policy a newer delivery can take its place. */
+    private static final class Slot {
+        final String key;
+        final boolean batch;
+        Delivery message; // guarded by the partition once indexed
+        boolean indexed;
+
+        Slot(RouteKey key, Delivery message) {
+            this.key = key.id;
+            this.batch = key.batch;
+            this.message = message;
+        }
+    }
+
+    /** One worker's queue plus its overload state (guarded by the partition itself). */
+    private static final class Partition {
+        final BlockingQueue<Slot> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        final Map<String, Slot> queued = new HashMap<>();  // latest: key → its queued slot
+        final Map<String, Integer> seen = new HashMap<>(); // downsample: deliveries per key this overload
+        volatile boolean overloaded;
+    }
+
+    private final Handler handler;
+    private final IngestFlowControl flow;
+    private final Partition[] partitions;
+    private final Thread[] workers;
+
+    public SensorIngestionPipeline(Handler handler) {
+        this(handler, null);
+    }
+
+    public SensorIngestionPipeline(Handler handler, IngestFlowControl flow) {
+        this.handler = handler;
+        this.flow = flow != null && flow.shedding() ? flow : null;
+        int n = Math.max(1, WORKERS);
+        this.partitions = new Partition[n];
+        this.workers = new Thread[n];
+
+        for (int i = 0; i < n; i++) {
+            Partition partition = new Partition();
+            partitions[i] = partition;
+            workers[i] = new Thread(() -> drain(partition), "ingest-worker-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        System.out.println("🧵 Ingestion pipeline started with " + n + " worker(s).");
+    }
+
+    public int workerCount() {
+        return partitions.length;
+    }
+
+    /**
+     * Routes a delivery to the partition owning its sensorId (blocks if that partition
+     * is full, unless the delivery is shed).
+     */
+    public void submit(Delivery message) throws InterruptedException {
+        RouteKey key = routeKey(message);
+        Partition partition = partitions[partitionOf(key.id)];
+        Slot slot = new Slot(key, message);
+        if (flow != null) {
+            Delivery shed = admit(partition, slot);
+            if (shed != null) {
+                flow.shed(shed, flow.policy());
+                return;
+            }
+        }
+        partition.queue.put(slot);
+    }
+
+    /**
+     * Updates the partition's overload state and applies the shedding policy. Returns
+     * the delivery to shed (the new one, or the queued one it replaces), or null if
+     * the slot is to be queued.
+     */
+    private Delivery admit(Partition partition, Slot slot) {
+        synchronized (partition) {
+            if (!partition.overloaded && partition.queue.size() >= flow.highMark(QUEUE_CAPACITY)) {
+                partition.overloaded = true;
+                flow.overloadChanged(true);
+            } else {
+                recover(partition);
+            }
+            if (!partition.overloaded) {
+                return null;
+            }
+            // Per-sensor policies cannot apply to a batch: the other sensors' readings would go too
+            switch (flow.policy()) {
+                case LATEST:
+                    if (slot.key == null || slot.batch) {
+                        return null;
+                    }
+                    Slot queued = partition.queued.get(slot.key);
+                    if (queued != null) {
+                        Delivery superseded = queued.message;
+                        queued.message = slot.message;
+                        return superseded;
+                    }
+                    slot.indexed = true;
+                    partition.queued.put(slot.key, slot);
+                    return null;
+                case DOWNSAMPLE:
+                    if (slot.batch || !flow.isLowPriority(slot.key)) {
+                        return null;
+                    }
+                    int n = partition.seen.merge(slot.key, 1, Integer::sum);
+                    return (n - 1) % flow.downsampleEvery() == 0 ? null : slot.message;
+                default:
+                    return slot.message;
+            }
+        }
+    }
+
+    int partitionOf(String sensorId) {
+        if (sensorId == null) {
+            return 0;
+        }
+        int h = sensorId.hashCode();
+        h ^= (h >>> 16);
+        return (h & 0x7fffffff) % partitions.length;
+    }
+
+    /** Ends the partition's overload once its queue has drained to the low mark. */
+    private void recover(Partition partition) {
+        synchronized (partition) {
+            if (partition.overloaded && partition.queue.size() <= flow.lowMark(QUEUE_CAPACITY)) {
+                partition.overloaded = false;
+                // Later deliveries queue unindexed behind these slots: merging into them would reorder
+                partition.queued.clear();
+                partition.seen.clear();
+                flow.overloadChanged(false);
+            }
+        }
+    }
+
+    private void drain(Partition partition) {
+        try {
+            while (true) {
+                Slot slot = partition.queue.take();
+                if (slot == POISON) {
+                    return;
+                }
+                Delivery message;
+                if (slot.indexed) {
+                    synchronized (partition) {
+                        partition.queued.remove(slot.key, slot);
+                        message = slot.message;
+                    }
+                } else {
+                    message = slot.message;
+                }
+                if (partition.overloaded) {
+                    recover(partition); // also when no new deliveries arrive
+                }
+                try {
+                    handler.handle(message);
+                } catch (Exception e) {
+                    BridgeLog.error("ingest", e, "❌ Error processing message: {}", e.getMessage());
+                }
+            }
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static String partitionKey(Delivery message) {
+        return routeKey(message).id;
+    }
+
+    static RouteKey routeKey(Delivery message) {
+        if (message.getProperties() != null) {
+            Map<String, Object> headers = message.getProperties().getHeaders();
+            if (headers != null && headers.get("sensorId") != null) {
+                return new RouteKey(headers.get("sensorId").toString(), false);
+            }
+            if (headers != null && headers.get("gatewayId") != null) {
+                return new RouteKey(headers.get("gatewayId").toString(), true);
+            }
+        }
+        String contentType = message.getProperties() == null ? null : message.getProperties().getContentType();
+        return peekKey(message.getBody(), contentType);
+    }
+
+    /**
+     * Reads top-level fields only until the key is found: "sensorId" for a single reading,
+     * "gatewayId" (or else the first reading's sensorId) for a batch envelope.
+     * The id is null if absent or malformed.
+     */
+    static RouteKey peekKey(byte[] body, String contentType) {
+        try (JsonParser p = SensorMessageDecoder.factoryFor(contentType).createParser(body)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                return new RouteKey(null, false);
+            }
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken value = p.nextToken();
+                if ("sensorId".equals(field) || "gatewayId".equals(field)) {
+                    return new RouteKey(value == JsonToken.VALUE_STRING ? p.getText() : null, "gatewayId".equals(field));
+                }
+                if ("readings".equals(field) && value == JsonToken.START_ARRAY) {
+                    String first = null;
+                    if (p.nextToken() == JsonToken.START_OBJECT) {
+                        while (p.nextToken() == JsonToken.FIELD_NAME) {
+                            String inner = p.currentName();
+                            JsonToken v = p.nextToken();
+                            if ("sensorId".equals(inner)) {
+                                first = v == JsonToken.VALUE_STRING ? p.getText() : null;
+                                break;
+                            }
+                            p.skipChildren();
+                        }
+                    }
+                    return new RouteKey(first, true);
+                }
+                p.skipChildren();
+            }
+        } catch (Exception ignored) {
+            // Malformed body: the worker will report it when decoding
+        }
+        return new RouteKey(null, false);
+    }
+
+    /** Lets every worker finish what is already queued, then stops them. */
+    @Override
+    public void close() {
+        for (Partition partition : partitions) {
+            try {
+                partition.queue.put(POISON);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.rabbitmq.client.Delivery;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes a sensor_data message body straight into an event object.
+ *
+ * Uses Jackson's streaming parser on the delivery byte[] (no intermediate String,
+ * no LinkedHashMap, no toString()/Double.valueOf round trip). Factories are
+ * created once and shared; Jackson recycles the parser buffers per thread, so
+ * a decode allocates little more than the sensorId/timestamp strings and the event.
+ *
+ * The body format is chosen by the AMQP content-type:
+ *   (none) / application/json      JSON {"sensorId":..,"value":..,"timestamp":..}
+ *   application/cbor               same fields, CBOR encoded
+ *   application/x-jackson-smile    same fields, Smile encoded
+ * CBOR and Smile need jackson-dataformat-cbor / -smile on the classpath; they are
+ * looked up reflectively so the bridge still runs (JSON only) without them.
+ *
+ * High-frequency gateways may send a batch envelope instead of a single reading:
+ *   {"gatewayId": "gw-1", "readings": [{"sensorId":..,"value":..,"timestamp":..}, ...]}
+ * decodeAll() returns the readings of either form in message order.
+ */
+public class SensorMessageDecoder {
+
+    /** Builds the concrete event (SensorEvents, SensorEventsMultiInstaExperiment, ...). */
+    public interface EventFactory<T> {
+        T create(String sensorId, double value, String sensorTimestamp);
+    }
+
+    public static final String CONTENT_TYPE_JSON = "application/json";
+    public static final String CONTENT_TYPE_CBOR = "application/cbor";
+    public static final String CONTENT_TYPE_SMILE = "application/x-jackson-smile";
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final JsonFactory CBOR = optionalFactory("com.fasterxml.jackson.dataformat.cbor.CBORFactory");
+    private static final JsonFactory SMILE = optionalFactory("com.fasterxml.jackson.dataformat.smile.SmileFactory");
+
+    public static <T> T decode(Delivery message, EventFactory<T> factory) throws IOException {
+        return decode(message.getBody(), contentTypeOf(message), factory);
+    }
+
+    public static <T> T decode(byte[] body, String contentType, EventFactory<T> factory) throws IOException {
+        List<T> out = new ArrayList<>(1);
+        try (JsonParser p = factoryFor(contentType).createParser(body)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("sensor message is not an object");
+            }
+            readObject(p, factory, false, out);
+        }
+        return out.get(0);
+    }
+
+    /**
+     * Decodes either a single reading or a batch envelope
+     * {"gatewayId": .., "readings": [{sensorId, value, timestamp}, ...]}
+     * and returns the readings in message order.
+     */
+    public static <T> List<T> decodeAll(Delivery message, EventFactory<T> factory) throws IOException {
+        return decodeAll(message.getBody(), contentTypeOf(message), factory);
+    }
+
+    public static <T> List<T> decodeAll(byte[] body, String contentType, EventFactory<T> factory) throws IOException {
+        List<T> out = new ArrayList<>();
+        try (JsonParser p = factoryFor(contentType).createParser(body)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("sensor message is not an object");
+            }
+            readObject(p, factory, true, out);
+        }
+        return out;
+    }
+
+    static String contentTypeOf(Delivery message) {
+        return message.getProperties() == null ? null : message.getProperties().getContentType();
+    }
+
+    /**
+     * Reads one object; the parser must be positioned on its START_OBJECT and is left on
+     * the matching END_OBJECT. A plain reading is appended to out. When batches are
+     * allowed and the object carries a "readings" array, each element is appended instead.
+     */
+    private static <T> void readObject(JsonParser p, EventFactory<T> factory, boolean allowBatch, List<T> out)
+            throws IOException {
+        String sensorId = null;
+        String sensorTimestamp = null;
+        double value = 0;
+        boolean hasValue = false;
+        boolean batch = false;
+
+        JsonToken t;
+        while ((t = p.nextToken()) == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken v = p.nextToken();
+            switch (field) {
+                case "sensorId":
+                    sensorId = v == JsonToken.VALUE_NULL ? null : p.getText();
+                    break;
+                case "value":
+                    if (v == JsonToken.VALUE_NUMBER_INT || v == JsonToken.VALUE_NUMBER_FLOAT) {
+                        value = p.getDoubleValue();
+                        hasValue = true;
+                    } else if (v == JsonToken.VALUE_STRING) {
+                        // Same leniency as the old Double.valueOf(value.toString())
+                        try {
+                            value = Double.parseDouble(p.getText().trim());
+                        } catch (NumberFormatException e) {
+                            // A malformed message, not a processing failure: the location goes with it
+                            throw new JsonParseException(p, "non-numeric \"value\" field: \"" + p.getText() + "\"", e);
+                        }
+                        hasValue = true;
+                    }
+                    break;
+                case "timestamp":
+                    sensorTimestamp = v == JsonToken.VALUE_NULL ? null : p.getText();
+                    break;
+                case "readings":
+                    if (allowBatch && v == JsonToken.START_ARRAY) {
+                        batch = true;
+                        JsonToken e;
+                        while ((e = p.nextToken()) == JsonToken.START_OBJECT) {
+                            readObject(p, factory, false, out);
+                        }
+                        if (e != JsonToken.END_ARRAY) {
+                            throw new IOException("malformed readings array");
+                        }
+                    } else {
+                        p.skipChildren();
+                    }
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+        if (t != JsonToken.END_OBJECT) {
+            throw new IOException("malformed sensor message");
+        }
+        if (batch) {
+            return;
+        }
+        if (sensorId == null) {
+            throw new IOException("sensor message without sensorId");
+        }
+        if (!hasValue) {
+            throw new IOException("sensor message without numeric value (sensorId=" + sensorId + ")");
+        }
+        out.add(factory.create(sensorId, value, sensorTimestamp));
+    }
+
+    static JsonFactory factoryFor(String contentType) throws IOException {
+        if (contentType == null || contentType.isEmpty() || contentType.startsWith(CONTENT_TYPE_JSON)) {
+            return JSON;
+        }
+        if (contentType.startsWith(CONTENT_TYPE_CBOR)) {
+            return require(CBOR, contentType);
+        }
+        if (contentType.startsWith(CONTENT_TYPE_SMILE)) {
+            return require(SMILE, contentType);
+        }
+        // Unknown/absent types from older publishers (e.g. text/plain): assume JSON
+        return JSON;
+    }
+
+    private static JsonFactory require(JsonFactory factory, String contentType) throws IOException {
+        if (factory == null) {
+            throw new IOException("no decoder on the classpath for content-type " + contentType);
+        }
+        return factory;
+    }
+
+    private static JsonFactory optionalFactory(String className) {
+        try {
+            return (JsonFactory) Class.forName(className).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
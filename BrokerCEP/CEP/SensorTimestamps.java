@@ -0,0 +1,155 @@
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * sensorTimestamp as epoch millis, and back.
+ *
+ * parseMillis() reads ISO-8601 instants and offsets, local date-times (taken as UTC)
+ * and epoch seconds or milliseconds. The form the publishers send, JavaScript's
+ * toISOString() ("2025-10-29T21:14:32.456Z"), is parsed without allocating and is
+ * "canonical": format() rebuilds exactly the same text from the millis, so an event
+ * only needs to keep the long. Any other form must be kept as text.
+ */
+public final class SensorTimestamps {
+
+    /** Returned by parseMillis for a missing or unparseable timestamp. */
+    public static final long NO_TIME = Long.MIN_VALUE;
+
+    private static final int CANONICAL_LENGTH = 24;
+
+    private SensorTimestamps() {}
+
+    /** Epoch millis of a sensor timestamp, or NO_TIME. */
+    public static long parseMillis(String text) {
+        if (text == null || text.isEmpty()) {
+            return NO_TIME;
+        }
+        long fast = parseIsoUtc(text);
+        if (fast != NO_TIME) {
+            return fast;
+        }
+        try {
+            if (isDigits(text)) {
+                long n = Long.parseLong(text);
+                return text.length() <= 10 ? n * 1000 : n; // epoch seconds or millis
+            }
+            if (text.endsWith("Z") || text.endsWith("z")) {
+                return Instant.parse(text.toUpperCase()).toEpochMilli();
+            }
+            int t = text.indexOf('T');
+            if (t > 0 && (text.indexOf('+', t) > 0 || text.indexOf('-', t) > 0)) {
+                return OffsetDateTime.parse(text).toInstant().toEpochMilli();
+            }
+            return LocalDateTime.parse(text.replace(' ', 'T')).toInstant(ZoneOffset.UTC).toEpochMilli();
+        } catch (RuntimeException e) {
+            return NO_TIME;
+        }
+    }
+
+    /** True if format(parseMillis(text)) gives text back. */
+    public static boolean isCanonical(String text, long millis) {
+        return millis != NO_TIME && millis >= 0 && text.length() == CANONICAL_LENGTH && parseIsoUtc(text) == millis;
+    }
+
+    /** "yyyy-MM-ddTHH:mm:ss.SSSZ" (UTC) for years 1970..9999. */
+    public static String format(long millis) {
+        long days = Math.floorDiv(millis, 86_400_000L);
+        int msOfDay = (int) Math.floorMod(millis, 86_400_000L);
+
+        // H. Hinnant's civil_from_days
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yoe + era * 400 + (month <= 2 ? 1 : 0));
+
+        char[] c = new char[CANONICAL_LENGTH];
+        put(c, 0, year, 4);
+        c[4] = '-';
+        put(c, 5, month, 2);
+        c[7] = '-';
+        put(c, 8, day, 2);
+        c[10] = 'T';
+        put(c, 11, msOfDay / 3_600_000, 2);
+        c[13] = ':';
+        put(c, 14, msOfDay / 60_000 % 60, 2);
+        c[16] = ':';
+        put(c, 17, msOfDay / 1000 % 60, 2);
+        c[19] = '.';
+        put(c, 20, msOfDay % 1000, 3);
+        c[23] = 'Z';
+        return new String(c);
+    }
+
+    private static void put(char[] c, int at, int n, int width) {
+        for (int i = at + width - 1; i >= at; i--) {
+            c[i] = (char) ('0' + n % 10);
+            n /= 10;
+        }
+    }
+
+    /** Allocation-free path for the usual "yyyy-MM-ddTHH:mm:ss[.SSS]Z". */
+    private static long parseIsoUtc(String s) {
+        int len = s.length();
+        if ((len != 20 && len != CANONICAL_LENGTH) || s.charAt(len - 1) != 'Z' || s.charAt(4) != '-' || s.charAt(7) != '-'
+                || s.charAt(10) != 'T' || s.charAt(13) != ':' || s.charAt(16) != ':' || (len == CANONICAL_LENGTH && s.charAt(19) != '.')) {
+            return NO_TIME;
+        }
+        int year = digits(s, 0, 4);
+        int month = digits(s, 5, 2);
+        int day = digits(s, 8, 2);
+        int hour = digits(s, 11, 2);
+        int minute = digits(s, 14, 2);
+        int second = digits(s, 17, 2);
+        int millis = len == CANONICAL_LENGTH ? digits(s, 20, 3) : 0;
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 59 || millis < 0 || day > daysIn(year, month)) {
+            return NO_TIME;
+        }
+        return ((daysFromCivil(year, month, day) * 24 + hour) * 60 + minute) * 60_000L + second * 1000L + millis;
+    }
+
+    private static int digits(String s, int from, int count) {
+        int n = 0;
+        for (int i = from; i < from + count; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            n = n * 10 + (c - '0');
+        }
+        return n;
+    }
+
+    private static int daysIn(int year, int month) {
+        if (month == 2) {
+            return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /** Days since 1970-01-01 of a proleptic Gregorian date (H. Hinnant's days_from_civil). */
+    private static long daysFromCivil(int y, int m, int d) {
+        y -= m <= 2 ? 1 : 0;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yoe = y - era * 400;
+        long doy = (153L * (m + (m > 2 ? -3 : 9)) + 2) / 5 + d - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    private static boolean isDigits(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) < '0' || s.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
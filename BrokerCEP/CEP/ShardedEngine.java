@@ -0,0 +1,378 @@
+import com.espertech.esper.common.client.configuration.Configuration;
+import com.espertech.esper.runtime.client.EPRuntime;
+import com.espertech.esper.runtime.client.EPRuntimeProvider;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sharded engine mode: K isolated Esper runtimes, each fed by its own thread.
+ *
+ * Contract instances are assigned to shards (hash of contractId, or an explicit
+ * move/rebalance), and RuleDeploymentManager deploys each instance's rules to its
+ * shard's runtime. Every reading is routed to the shard(s) owning its sensorId, so
+ * evaluation spreads across cores and a heavy contract only loads its own shard.
+ * Readings of sensors no deployed rule refers to are dropped before Esper.
+ *
+ * Each shard drains a bounded queue (-Dcep.shardQueue, default 4096) on one thread;
+ * a full queue blocks the ingestion worker that routes to it. Per-sensor order is
+ * kept: one ingestion worker per sensor, one FIFO queue per shard.
+ *
+ * Moving an instance (move() or rebalance()) redeploys its rules on the target
+ * shard, so its time windows start empty there.
+ *
+ * Admin (registered on the rule admin endpoint):
+ *   GET  /shards                          per-shard load stats and assignments
+ *   POST /shards/rebalance                reassign instances by observed load
+ *   POST /shards/move/{contractId}/{n}    pin an instance to shard n
+ */
+public class ShardedEngine implements AutoCloseable {
+
+    private static final int QUEUE_CAPACITY = Integer.getInteger("cep.shardQueue", 4096);
+    private static final Object POISON = new Object();
+
+    private final String eventType;
+    private final Shard[] shards;
+    private final Map<String, Integer> pinned = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> contractLoad = new ConcurrentHashMap<>();
+    private final LongAdder unrouted = new LongAdder();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final long startNanos = System.nanoTime();
+    private final Object rebalanceLock = new Object();
+
+    private RuleDeploymentManager deployments;
+
+    /** sensorId -> owning shards and contracts; replaced wholesale after each rule change. */
+    private volatile Map<String, Route> routes = Collections.emptyMap();
+
+    private static final class Route {
+        final int[] shards;
+        final LongAdder[] contracts;
+
+        Route(int[] shards, LongAdder[] contracts) {
+            this.shards = shards;
+            this.contracts = contracts;
+        }
+    }
+
+    private final class Shard {
+        final int index;
+        final EPRuntime runtime;
+        final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        final LongAdder events = new LongAdder();
+        final AtomicLong busyNanos = new AtomicLong();
+        final Thread thread;
+
+        Shard(int index, EPRuntime runtime) {
+            this.index = index;
+            this.runtime = runtime;
+            this.thread = new Thread(this::drain, "cep-shard-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        void drain() {
+            try {
+                while (true) {
+                    Object event = queue.take();
+                    if (event == POISON) {
+                        return;
+                    }
+                    long start = System.nanoTime();
+                    try {
+                        runtime.getEventService().sendEventBean(event, eventType);
+                    } catch (Exception e) {
+                        BridgeLog.error("shard", e, "❌ Shard {} failed to process event: {}", index, e.getMessage());
+                    }
+                    busyNanos.addAndGet(System.nanoTime() - start);
+                    events.increment();
+                }
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public ShardedEngine(int shardCount, Configuration config, String eventType) {
+        this.eventType = eventType;
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i, EPRuntimeProvider.getRuntime("cep-shard-" + i, config));
+            shards[i].thread.start();
+        }
+        System.out.println("🧩 Sharded engine started with " + shardCount + " runtime(s).");
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    public EPRuntime runtime(int shard) {
+        return shards[shard].runtime;
+    }
+
+    public List<EPRuntime> runtimes() {
+        List<EPRuntime> all = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            all.add(shard.runtime);
+        }
+        return all;
+    }
+
+    /** Runtimes with rules for the sensor, for synchronous sends outside the shard threads (restore). */
+    public List<EPRuntime> runtimesFor(String sensorId) {
+        Route route = routes.get(sensorId);
+        List<EPRuntime> owning = new ArrayList<>();
+        if (route != null) {
+            for (int shard : route.shards) {
+                owning.add(shards[shard].runtime);
+            }
+        }
+        return owning;
+    }
+
+    /** RuleDeploymentManager.RuntimeSelector: the runtime of the shard owning the instance. */
+    public EPRuntime runtimeFor(String contractId) {
+        return shards[shardOf(contractId)].runtime;
+    }
+
+    public int shardOf(String contractId) {
+        Integer pin = pinned.get(contractId);
+        if (pin != null) {
+            return pin;
+        }
+        int h = contractId.hashCode();
+        h ^= (h >>> 16);
+        return (h & 0x7fffffff) % shards.length;
+    }
+
+    /** Keeps the sensor routing table in line with what the manager has deployed. */
+    public void attach(RuleDeploymentManager deployments) {
+        this.deployments = deployments;
+        deployments.onChange(this::rebuildRoutes);
+        rebuildRoutes();
+    }
+
+    /** Static routing for callers that deploy without a RuleDeploymentManager: sensorId -> contractId. */
+    public void route(Map<String, String> contractBySensor) {
+        Map<String, List<String>> contractsBySensor = new HashMap<>();
+        contractBySensor.forEach((sensorId, contractId) ->
+                contractsBySensor.put(sensorId, Collections.singletonList(contractId)));
+        install(contractsBySensor);
+    }
+
+    private void rebuildRoutes() {
+        Map<String, List<String>> contractsBySensor = new HashMap<>();
+        for (Map.Entry<String, List<Map<String, Object>>> e : deployments.rulesByContract().entrySet()) {
+            for (Map<String, Object> rule : e.getValue()) {
+                Object sensorId = rule.get("sensorId");
+                if (sensorId != null) {
+                    List<String> owners = contractsBySensor.computeIfAbsent(sensorId.toString(), s -> new ArrayList<>());
+                    if (!owners.contains(e.getKey())) {
+                        owners.add(e.getKey());
+                    }
+                }
+            }
+        }
+        install(contractsBySensor);
+    }
+
+    private synchronized void install(Map<String, List<String>> contractsBySensor) {
+        Set<String> contracts = new HashSet<>();
+        Map<String, Route> table = new HashMap<>();
+        for (Map.Entry<String, List<String>> e : contractsBySensor.entrySet()) {
+            List<Integer> owning = new ArrayList<>();
+            LongAdder[] loads = new LongAdder[e.getValue().size()];
+            for (int i = 0; i < loads.length; i++) {
+                String contractId = e.getValue().get(i);
+                contracts.add(contractId);
+                loads[i] = contractLoad.computeIfAbsent(contractId, c -> new LongAdder());
+                int shard = shardOf(contractId);
+                if (!owning.contains(shard)) {
+                    owning.add(shard);
+                }
+            }
+            table.put(e.getKey(), new Route(owning.stream().mapToInt(Integer::intValue).toArray(), loads));
+        }
+        contractLoad.keySet().retainAll(contracts);
+        pinned.keySet().retainAll(contracts);
+        routes = table;
+    }
+
+    /** Routes one reading to every shard that has rules for its sensor. */
+    public void send(String sensorId, Object event) throws InterruptedException {
+        Route route = routes.get(sensorId);
+        if (route == null) {
+            unrouted.increment();
+            return;
+        }
+        for (LongAdder load : route.contracts) {
+            load.increment();
+        }
+        for (int shard : route.shards) {
+            shards[shard].queue.put(event);
+        }
+    }
+
+    // === Rebalancing ===
+
+    /** Pins an instance to a shard and moves its rules there. Returns the deployments changed. */
+    public int move(String contractId, int shard) throws Exception {
+        if (shard < 0 || shard >= shards.length) {
+            throw new IllegalArgumentException("shard must be 0.." + (shards.length - 1));
+        }
+        requireDeployments();
+        pinned.put(contractId, shard);
+        return deployments.sync();
+    }
+
+    private void requireDeployments() {
+        if (deployments == null) {
+            throw new IllegalStateException("instances can only be moved when attached to a RuleDeploymentManager");
+        }
+    }
+
+    /**
+     * Reassigns instances by the readings routed to them since the last rebalance:
+     * heaviest first, each to the currently least-loaded shard (LPT). Instances whose
+     * shard does not change keep their window state.
+     */
+    public Map<String, Integer> rebalance() throws Exception {
+        synchronized (rebalanceLock) {
+            return rebalanceLocked();
+        }
+    }
+
+    private Map<String, Integer> rebalanceLocked() throws Exception {
+        requireDeployments();
+        List<Map.Entry<String, Long>> loads = new ArrayList<>();
+        contractLoad.forEach((contractId, load) ->
+                loads.add(new AbstractMap.SimpleEntry<>(contractId, load.sumThenReset())));
+        loads.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+
+        long[] shardLoad = new long[shards.length];
+        Map<String, Integer> moved = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> e : loads) {
+            int current = shardOf(e.getKey());
+            int target = current;
+            for (int i = 0; i < shards.length; i++) {
+                if (shardLoad[i] < shardLoad[target]) {
+                    target = i;
+                }
+            }
+            shardLoad[target] += Math.max(1, e.getValue());
+            pinned.put(e.getKey(), target);
+            if (target != current) {
+                moved.put(e.getKey(), target);
+            }
+        }
+        if (!moved.isEmpty()) {
+            deployments.sync();
+        }
+        System.out.println("⚖️ Shard rebalance moved " + moved.size() + " instance(s): " + moved);
+        return moved;
+    }
+
+    // === Stats + admin ===
+
+    public List<Map<String, Object>> stats() {
+        Map<Integer, List<String>> instances = new HashMap<>();
+        for (String contractId : contractLoad.keySet()) {
+            instances.computeIfAbsent(shardOf(contractId), s -> new ArrayList<>()).add(contractId);
+        }
+        double uptime = Math.max(1, System.nanoTime() - startNanos);
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (Shard shard : shards) {
+            Map<String, Object> s = new LinkedHashMap<>();
+            s.put("shard", shard.index);
+            s.put("runtime", shard.runtime.getURI());
+            s.put("events", shard.events.sum());
+            s.put("queueDepth", shard.queue.size());
+            s.put("busyPercent", Math.round(1000.0 * shard.busyNanos.get() / uptime) / 10.0);
+            List<String> owned = instances.getOrDefault(shard.index, Collections.emptyList());
+            s.put("instanceCount", owned.size());
+            s.put("instances", owned);
+            out.add(s);
+        }
+        return out;
+    }
+
+    public long unroutedCount() {
+        return unrouted.sum();
+    }
+
+    public void registerAdmin(HttpServer server) {
+        server.createContext("/shards", ex -> {
+            String path = ex.getRequestURI().getPath();
+            try {
+                if (path.equals("/shards") || path.equals("/shards/")) {
+                    Map<String, Object> body = new LinkedHashMap<>();
+                    body.put("shards", stats());
+                    body.put("unrouted", unroutedCount());
+                    respond(ex, 200, mapper.writerWithDefaultPrettyPrinter().writeValueAsString(body));
+                } else if (!"POST".equals(ex.getRequestMethod())) {
+                    respond(ex, 405, "{\"error\":\"use POST\"}");
+                } else if (path.equals("/shards/rebalance")) {
+                    respond(ex, 200, "{\"moved\":" + mapper.writeValueAsString(rebalance()) + "}");
+                } else if (path.startsWith("/shards/move/")) {
+                    String[] parts = path.substring("/shards/move/".length()).split("/");
+                    if (parts.length != 2 || parts[0].isEmpty() || parts[0].contains("..")) {
+                        respond(ex, 400, "{\"error\":\"use /shards/move/{contractId}/{shard}\"}");
+                        return;
+                    }
+                    int changes = move(parts[0], Integer.parseInt(parts[1]));
+                    respond(ex, 200, "{\"contractId\":" + mapper.writeValueAsString(parts[0])
+                            + ",\"shard\":" + parts[1] + ",\"changes\":" + changes + "}");
+                } else {
+                    respond(ex, 404, "{\"error\":\"unknown shard command\"}");
+                }
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                respond(ex, 400, "{\"error\":" + mapper.writeValueAsString(String.valueOf(e.getMessage())) + "}");
+            } catch (Exception e) {
+                respond(ex, 500, "{\"error\":" + mapper.writeValueAsString(String.valueOf(e.getMessage())) + "}");
+            }
+        });
+    }
+
+    private static void respond(HttpExchange ex, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    /** Lets every shard finish its queue, then stops the threads and destroys the runtimes. */
+    @Override
+    public void close() {
+        for (Shard shard : shards) {
+            try {
+                shard.queue.put(POISON);
+                shard.thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            shard.runtime.destroy();
+        }
+    }
+}
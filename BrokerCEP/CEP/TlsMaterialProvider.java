@@ -0,0 +1,189 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * Builds the mutual-TLS SSLContext for broker connections once and shares it.
+ *
+ * The CA certificate and the client key material (either a PKCS#12 keystore or a
+ * PEM cert + PEM key pair) are parsed on first use only. Because the same
+ * SSLContext is reused, its client session cache lets reconnects and additional
+ * connections resume TLS sessions instead of doing full handshakes.
+ *
+ * A daemon watcher thread monitors the directories holding the cert/key files;
+ * when one of them changes the material is rebuilt and swapped in atomically.
+ * If the rebuild fails (e.g. a half-written file), the previous context is kept.
+ */
+public class TlsMaterialProvider {
+
+    private static final int SESSION_CACHE_SIZE = 64;
+    private static final int SESSION_TIMEOUT_SECONDS = 24 * 60 * 60;
+
+    private final Path caPath;
+    private final Path p12Path;
+    private final char[] p12Password;
+    private final Path certPath;
+    private final Path keyPath;
+
+    private final AtomicReference<SSLContext> current = new AtomicReference<>();
+    private volatile boolean watching;
+
+    private TlsMaterialProvider(Path caPath, Path p12Path, char[] p12Password, Path certPath, Path keyPath) {
+        this.caPath = caPath.toAbsolutePath().normalize();
+        this.p12Path = p12Path == null ? null : p12Path.toAbsolutePath().normalize();
+        this.p12Password = p12Password;
+        this.certPath = certPath == null ? null : certPath.toAbsolutePath().normalize();
+        this.keyPath = keyPath == null ? null : keyPath.toAbsolutePath().normalize();
+    }
+
+    /** Client identity from a PKCS#12 keystore (cep_bridge.p12). */
+    public static TlsMaterialProvider forPkcs12(Path caPath, Path p12Path, char[] password) {
+        return new TlsMaterialProvider(caPath, p12Path, password, null, null);
+    }
+
+    /** Client identity from a PEM certificate and a PEM (PKCS#8) private key. */
+    public static TlsMaterialProvider forPem(Path caPath, Path certPath, Path keyPath) {
+        return new TlsMaterialProvider(caPath, null, null, certPath, keyPath);
+    }
+
+    /** Returns the shared SSLContext, building it (and starting the watcher) on first use. */
+    public SSLContext sslContext() throws Exception {
+        SSLContext ctx = current.get();
+        if (ctx != null) {
+            return ctx;
+        }
+        synchronized (this) {
+            ctx = current.get();
+            if (ctx == null) {
+                ctx = build();
+                current.set(ctx);
+                startWatcher();
+            }
+            return ctx;
+        }
+    }
+
+    private SSLContext build() throws Exception {
+        CertificateFactory cf = CertificateFactory.getInstance("X.509");
+
+        // Trust store: Fabric CA
+        X509Certificate caCert;
+        try (FileInputStream fis = new FileInputStream(caPath.toFile())) {
+            caCert = (X509Certificate) cf.generateCertificate(fis);
+        }
+        KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        trustStore.load(null, null);
+        trustStore.setCertificateEntry("fabric-ca", caCert);
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(trustStore);
+
+        // Key store: client identity
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        char[] keyPassword;
+        if (p12Path != null) {
+            try (FileInputStream ksFile = new FileInputStream(p12Path.toFile())) {
+                keyStore.load(ksFile, p12Password);
+            }
+            keyPassword = p12Password;
+        } else {
+            X509Certificate clientCert;
+            try (FileInputStream fis = new FileInputStream(certPath.toFile())) {
+                clientCert = (X509Certificate) cf.generateCertificate(fis);
+            }
+            PrivateKey clientKey = CertificateUtil.loadPrivateKey(keyPath.toString());
+            keyPassword = "".toCharArray();
+            keyStore.load(null, null);
+            keyStore.setKeyEntry("client-key", clientKey, keyPassword, new java.security.cert.Certificate[]{clientCert});
+        }
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(keyStore, keyPassword);
+
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(kmf.getKeyManagers(), tmf.getTrustManagers(), new SecureRandom());
+        sslContext.getClientSessionContext().setSessionCacheSize(SESSION_CACHE_SIZE);
+        sslContext.getClientSessionContext().setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+        return sslContext;
+    }
+
+    /** Rebuilds the material from disk and swaps it in; keeps the old context on failure. */
+    public void reload() {
+        try {
+            current.set(build());
+            System.out.println("🔄 TLS material reloaded.");
+        } catch (Exception e) {
+            System.err.println("⚠️ TLS material reload failed, keeping previous context: " + e.getMessage());
+        }
+    }
+
+    private Set<Path> watchedFiles() {
+        Set<Path> files = new LinkedHashSet<>();
+        files.add(caPath);
+        if (p12Path != null) files.add(p12Path);
+        if (certPath != null) files.add(certPath);
+        if (keyPath != null) files.add(keyPath);
+        return files;
+    }
+
+    private void startWatcher() {
+        if (watching) {
+            return;
+        }
+        watching = true;
+
+        Thread watcher = new Thread(() -> {
+            Set<Path> files = watchedFiles();
+            try (WatchService ws = FileSystems.getDefault().newWatchService()) {
+                Set<Path> dirs = new HashSet<>();
+                for (Path f : files) {
+                    if (f.getParent() != null && dirs.add(f.getParent())) {
+                        f.getParent().register(ws,
+                                StandardWatchEventKinds.ENTRY_CREATE,
+                                StandardWatchEventKinds.ENTRY_MODIFY);
+                    }
+                }
+
+                while (true) {
+                    WatchKey key = ws.take();
+                    Path dir = (Path) key.watchable();
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.context() instanceof Path
+                                && files.contains(dir.resolve((Path) event.context()))) {
+                            changed = true;
+                        }
+                    }
+                    key.reset();
+
+                    if (changed) {
+                        // Let writers finish (cert and key are usually replaced together)
+                        Thread.sleep(500);
+                        reload();
+                    }
+                }
+            } catch (InterruptedException ignored) {
+            } catch (IOException e) {
+                System.err.println("⚠️ TLS file watcher stopped: " + e.getMessage());
+            }
+        }, "tls-material-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+}
@@ -1,7 +1,7 @@
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import java.io.FileInputStream;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -17,6 +17,13 @@ public class WalletUtil {
             .resolve("wallet") // into the wallet directory
             .normalize();
 
+    // ObjectMapper is thread-safe once configured; share one instead of one per call
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public static Path getWalletPath() {
+        return WALLET_PATH;
+    }
+
     private static Path getIdentityPath(String sensorId) {
         return WALLET_PATH.resolve(sensorId + ".id");
     }
@@ -26,14 +33,17 @@ public class WalletUtil {
     }
 
     public static String getSensorCert(String sensorId) throws Exception {
-        ObjectMapper mapper = new ObjectMapper();
-        JsonNode node = mapper.readTree(new FileInputStream(getIdentityPath(sensorId).toFile()));
-        return node.get("credentials").get("certificate").asText();
+        return readCredential(getIdentityPath(sensorId), "certificate");
     }
 
     public static String getSensorKey(String sensorId) throws Exception {
-        ObjectMapper mapper = new ObjectMapper();
-        JsonNode node = mapper.readTree(new FileInputStream(getIdentityPath(sensorId).toFile()));
-        return node.get("credentials").get("privateKey").asText();
+        return readCredential(getIdentityPath(sensorId), "privateKey");
+    }
+
+    static String readCredential(Path identityFile, String field) throws Exception {
+        try (InputStream in = Files.newInputStream(identityFile)) {
+            JsonNode node = MAPPER.readTree(in);
+            return node.get("credentials").get(field).asText();
+        }
     }
 }
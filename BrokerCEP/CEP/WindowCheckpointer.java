@@ -0,0 +1,412 @@
+import com.espertech.esper.runtime.client.EPRuntime;
+import com.rabbitmq.client.Channel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Periodic checkpoints of the window contents, so a restart resumes with the
+ * partially filled windows instead of empty ones, and without losing readings.
+ *
+ * Esper does not export window state, so the bridge journals it itself: for every
+ * sensor with a windowed rule, the accepted readings still inside its longest window
+ * (time(...) or length(...) from the rules JSON) are kept with their arrival time.
+ * The journal holds the same event instances as the windows, so it adds little heap.
+ * Every -Dcheckpoint.intervalMs (default 5000) the journal is written to a
+ * memory-mapped file (-Dcheckpoint.file, default window-state: two slots .0/.1
+ * written alternately, each with a CRC, so a crash mid-write leaves the other one).
+ *
+ * Deliveries are consumed with manual ack. A checkpoint covers the deliveries up to
+ * the highest delivery tag below which everything has been processed, and only those
+ * are acked after the file is forced to disk. Readings from later deliveries are
+ * left out and come back as redeliveries after a crash, so nothing is lost or
+ * counted twice.
+ *
+ * restore() replays the newest valid checkpoint before consuming starts: each
+ * runtime is switched to an external clock, readings are sent at their original
+ * arrival times, time is advanced to now (expiring what expired during the
+ * downtime) and the internal clock is switched back on. Alerts fired by the replay
+ * were already published before the restart and are suppressed (isReplaying()).
+ *
+ * In event-time mode (useEventTime()) readings are journaled and evicted by their
+ * sensor timestamps, and restore() leaves the runtimes on the external clock at the
+ * last restored reading, so the EventTimeSequencer carries on from there.
+ *
+ * Checkpoint duration, size, restore time and restart time are reported on the
+ * console and exported by BridgeMetrics.
+ */
+public class WindowCheckpointer implements AutoCloseable {
+
+    /** Sends one restored reading to the runtime(s) that own its sensor, synchronously. */
+    public interface ReplaySink {
+        void send(SensorEventsMultiInstaExperiment event);
+    }
+
+    private static final long INTERVAL_MS = Long.getLong("checkpoint.intervalMs", 5000L);
+    private static final String FILE = System.getProperty("checkpoint.file", "window-state");
+    private static final long DEFAULT_RETAIN_MS = Long.getLong("checkpoint.retainMs", 600_000L);
+
+    private static final int MAGIC = 0x57434B31; // "WCK1"
+    private static final int HEADER_BYTES = 64;
+    private static final Pattern LENGTH_WINDOW = Pattern.compile("^\\s*length\\s*\\(\\s*(\\d+)\\s*\\)\\s*$");
+
+    private static volatile boolean replaying;
+
+    private final File[] slots = {new File(FILE + ".0"), new File(FILE + ".1")};
+    private final Map<String, SensorLog> logs = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Long> done = new ConcurrentSkipListSet<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "window-checkpointer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** sensorId -> {retainMs, retainCount}; sensors without windowed rules are not journaled. */
+    private volatile Map<String, long[]> retention = new HashMap<>();
+    private volatile Channel ackChannel;
+    private volatile LongSupplier eventClock; // null = wall clock
+    private long covered;
+    private long sequence;
+    private int nextSlot;
+
+    private static final class Reading {
+        final long arrivalMillis;
+        final long deliveryTag;
+        final SensorEventsMultiInstaExperiment event; // the instance Esper's window holds, not a copy
+
+        Reading(long arrivalMillis, long deliveryTag, SensorEventsMultiInstaExperiment event) {
+            this.arrivalMillis = arrivalMillis;
+            this.deliveryTag = deliveryTag;
+            this.event = event;
+        }
+    }
+
+    private static final class SensorLog {
+        final ArrayDeque<Reading> readings = new ArrayDeque<>();
+
+        synchronized void add(Reading r, long[] keep) {
+            readings.addLast(r);
+            evict(r.arrivalMillis, keep);
+        }
+
+        /** Drops readings that no window of the sensor can still hold. */
+        synchronized void evict(long now, long[] keep) {
+            while (readings.size() > keep[1] && readings.peekFirst().arrivalMillis < now - keep[0]) {
+                readings.pollFirst();
+            }
+        }
+    }
+
+    public static boolean isReplaying() {
+        return replaying;
+    }
+
+    // === Retention from the deployed rules ===
+
+    /** Recomputes what to journal per sensor (call after every rule sync). */
+    public void retainFor(Map<String, List<Map<String, Object>>> rulesByContract) {
+        Map<String, long[]> next = new HashMap<>();
+        for (List<Map<String, Object>> rules : rulesByContract.values()) {
+            for (Map<String, Object> rule : rules) {
+                long[] keep = retentionOf((String) rule.get("window"));
+                if (keep[0] == 0 && keep[1] == 0) {
+                    continue;
+                }
+                long[] merged = next.computeIfAbsent(String.valueOf(rule.get("sensorId")), s -> new long[2]);
+                merged[0] = Math.max(merged[0], keep[0]);
+                merged[1] = Math.max(merged[1], keep[1]);
+            }
+        }
+        logs.keySet().retainAll(next.keySet());
+        retention = next;
+    }
+
+    /** {retainMs, retainCount} for a window spec such as "time(2 min)" or "length(10)". */
+    static long[] retentionOf(String window) {
+        if (window == null || window.trim().isEmpty()) {
+            return new long[]{0, 0};
+        }
+        Matcher length = LENGTH_WINDOW.matcher(window);
+        if (length.matches()) {
+            return new long[]{0, Long.parseLong(length.group(1))};
+        }
+        long millis = RuleEplBuilder.timeWindowMillis(window);
+        if (millis > 0) {
+            return new long[]{millis, 0};
+        }
+        return new long[]{DEFAULT_RETAIN_MS, 0}; // other window kinds: keep a generous time span
+    }
+
+    // === Journal (ingestion workers) ===
+
+    /** Journal by sensor time: clock is the current Esper time of the event-time runtime. */
+    public void useEventTime(LongSupplier clock) {
+        this.eventClock = clock;
+    }
+
+    private long now() {
+        LongSupplier clock = eventClock;
+        return clock == null ? System.currentTimeMillis() : clock.getAsLong();
+    }
+
+    /** Journals a reading that was just sent to Esper. */
+    public void record(SensorEventsMultiInstaExperiment event, long deliveryTag) {
+        long[] keep = retention.get(event.getSensorId());
+        if (keep == null || replaying) {
+            return;
+        }
+        logs.computeIfAbsent(event.getSensorId(), s -> new SensorLog()).add(
+                new Reading(eventClock == null ? System.currentTimeMillis() : event.getEventTime(), deliveryTag, event), keep);
+    }
+
+    /** Marks a delivery as fully processed; it is acked by the next checkpoint. */
+    public void processed(long deliveryTag) {
+        done.add(deliveryTag);
+    }
+
+    // === Checkpoints ===
+
+    /** Starts periodic checkpoints; deliveries are acked on the given (manual-ack) channel. */
+    public void start(Channel ackChannel) {
+        this.ackChannel = ackChannel;
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint();
+            } catch (Exception e) {
+                BridgeLog.error("checkpoint", e, "❌ Window checkpoint failed: {}", e.getMessage());
+            }
+        }, INTERVAL_MS, INTERVAL_MS, TimeUnit.MILLISECONDS);
+        System.out.println("💾 Window checkpoints every " + INTERVAL_MS + " ms to " + slots[0] + " / " + slots[1]);
+    }
+
+    public synchronized void checkpoint() throws IOException {
+        long start = System.nanoTime();
+
+        // Deliveries 1..watermark are all processed: the checkpoint covers exactly those
+        long watermark = covered;
+        while (done.remove(watermark + 1)) {
+            watermark++;
+        }
+
+        long now = now();
+        Map<String, long[]> keepBySensor = retention;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        int count = 0;
+        for (Map.Entry<String, SensorLog> e : logs.entrySet()) {
+            SensorLog log = e.getValue();
+            synchronized (log) {
+                long[] keep = keepBySensor.get(e.getKey());
+                if (keep != null) {
+                    log.evict(now, keep);
+                }
+                for (Reading r : log.readings) {
+                    if (r.deliveryTag > watermark) {
+                        continue; // will be redelivered after a crash
+                    }
+                    out.writeUTF(e.getKey());
+                    out.writeLong(r.arrivalMillis);
+                    String timestamp = r.event.getSensorTimestamp();
+                    out.writeDouble(r.event.getValue());
+                    out.writeUTF(timestamp == null ? "" : timestamp);
+                    count++;
+                }
+            }
+        }
+        out.flush();
+        byte[] body = bytes.toByteArray();
+        write(slots[nextSlot], ++sequence, System.currentTimeMillis(), watermark, count, body);
+        nextSlot ^= 1;
+
+        if (watermark > covered) {
+            if (ackChannel != null) {
+                ackChannel.basicAck(watermark, true);
+            }
+            covered = watermark;
+        }
+
+        long nanos = System.nanoTime() - start;
+        BridgeMetrics.checkpointed(nanos, HEADER_BYTES + body.length, count);
+        BridgeLog.info("checkpoint", "💾 Checkpoint #{}: {} reading(s), {} bytes, acked through delivery {}, {} ms",
+                sequence, count, HEADER_BYTES + body.length, covered, nanos / 1_000_000.0);
+    }
+
+    private static void write(File file, long sequence, long createdMillis, long watermark, int count, byte[] body)
+            throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        long size = HEADER_BYTES + body.length;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            // Body first, header last: a torn write leaves a header that does not match
+            map.position(HEADER_BYTES);
+            map.put(body);
+            map.position(0);
+            map.putInt(MAGIC).putLong(sequence).putLong(createdMillis).putLong(watermark)
+                    .putInt(count).putInt(body.length).putLong(crc.getValue());
+            map.force();
+            if (raf.length() > size) {
+                raf.setLength(size);
+            }
+        }
+    }
+
+    // === Restore ===
+
+    /**
+     * Replays the newest valid checkpoint into the given runtimes. Call it once the
+     * rules are deployed and before consuming starts. Returns the readings replayed.
+     */
+    public int restore(List<EPRuntime> runtimes, ReplaySink sink) {
+        long start = System.nanoTime();
+        Snapshot snapshot = newestSnapshot();
+        if (snapshot == null) {
+            System.out.println("💾 No window checkpoint to restore.");
+            return 0;
+        }
+
+        List<Object[]> readings = snapshot.readings; // {sensorId, Reading}, per sensor in arrival order
+        readings.sort((a, b) -> Long.compare(((Reading) a[1]).arrivalMillis, ((Reading) b[1]).arrivalMillis));
+
+        replaying = true;
+        try {
+            long clock = readings.isEmpty() ? now() : ((Reading) readings.get(0)[1]).arrivalMillis;
+            for (EPRuntime runtime : runtimes) {
+                runtime.getEventService().clockExternal();
+                runtime.getEventService().advanceTime(clock);
+            }
+            for (Object[] entry : readings) {
+                String sensorId = (String) entry[0];
+                Reading r = (Reading) entry[1];
+                if (r.arrivalMillis > clock) {
+                    clock = r.arrivalMillis;
+                    for (EPRuntime runtime : runtimes) {
+                        runtime.getEventService().advanceTime(clock);
+                    }
+                }
+                sink.send(r.event);
+                long[] keep = retention.get(sensorId);
+                if (keep != null) {
+                    // Keep it for the next checkpoint; tag 0 is covered by every watermark
+                    logs.computeIfAbsent(sensorId, s -> new SensorLog())
+                            .add(new Reading(r.arrivalMillis, 0, r.event), keep);
+                }
+            }
+            if (eventClock == null) {
+                long now = System.currentTimeMillis();
+                for (EPRuntime runtime : runtimes) {
+                    runtime.getEventService().advanceTime(Math.max(now, clock));
+                    runtime.getEventService().clockInternal();
+                }
+            }
+        } finally {
+            replaying = false;
+        }
+
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        BridgeMetrics.restored(millis, readings.size());
+        System.out.println("💾 Restored checkpoint #" + snapshot.sequence + " (" + readings.size()
+                + " reading(s), taken " + (System.currentTimeMillis() - snapshot.createdMillis) / 1000
+                + " s ago) in " + millis + " ms.");
+        return readings.size();
+    }
+
+    private static final class Snapshot {
+        long sequence;
+        long createdMillis;
+        List<Object[]> readings;
+    }
+
+    private Snapshot newestSnapshot() {
+        Snapshot newest = null;
+        for (int i = 0; i < slots.length; i++) {
+            Snapshot s = read(slots[i]);
+            if (s != null && (newest == null || s.sequence > newest.sequence)) {
+                newest = s;
+                nextSlot = i ^ 1;
+                sequence = s.sequence;
+            }
+        }
+        return newest;
+    }
+
+    private static Snapshot read(File file) {
+        if (!file.isFile() || file.length() < HEADER_BYTES) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            if (map.getInt() != MAGIC) {
+                return null;
+            }
+            Snapshot s = new Snapshot();
+            s.sequence = map.getLong();
+            s.createdMillis = map.getLong();
+            map.getLong(); // watermark: those deliveries were acked
+            int count = map.getInt();
+            int length = map.getInt();
+            long crc = map.getLong();
+            if (HEADER_BYTES + (long) length > raf.length()) {
+                return null;
+            }
+            byte[] body = new byte[length];
+            map.position(HEADER_BYTES);
+            map.get(body);
+            CRC32 check = new CRC32();
+            check.update(body);
+            if (check.getValue() != crc) {
+                System.err.println("⚠️ Ignoring corrupt checkpoint " + file);
+                return null;
+            }
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+            s.readings = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String sensorId = in.readUTF();
+                long arrival = in.readLong();
+                double value = in.readDouble();
+                String timestamp = in.readUTF();
+                s.readings.add(new Object[]{sensorId, new Reading(arrival, 0,
+                        new SensorEventsMultiInstaExperiment(sensorId, value, timestamp.isEmpty() ? null : timestamp))});
+            }
+            return s;
+        } catch (Exception e) {
+            System.err.println("⚠️ Could not read checkpoint " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** Writes a final checkpoint (acking what it covers) and stops the scheduler. */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            checkpoint();
+        } catch (Exception e) {
+            System.err.println("⚠️ Final window checkpoint failed: " + e.getMessage());
+        }
+    }
+}
@@ -28,7 +28,12 @@ const { Console } = require('console');
 
 
 // === Exchange for alerts published by EsperBridge ===
-const ALERTS_EXCHANGE = 'alerts';
+// Topic exchange, routing key "<contractId>.<chaincodeName>.<ruleId>"; ALERTS_FANOUT=true
+// uses the previous fanout exchange "alerts". ALERT_BINDINGS limits what this
+// subscriber receives, e.g. "MeatSaleC_123.#,*.vaccineprocurementc.#" (default: all).
+const ALERTS_FANOUT = process.env.ALERTS_FANOUT === 'true';
+const ALERTS_EXCHANGE = ALERTS_FANOUT ? 'alerts' : 'alerts.routed';
+const ALERT_BINDINGS = ALERTS_FANOUT ? [''] : (process.env.ALERT_BINDINGS || '#').split(',').map(b => b.trim());
 const ALERTS_QUEUE = 'alert_events'; // fixed, durable queue
 
 // === Helper: Load subscriber identity from Fabric wallet ===
@@ -154,7 +159,7 @@ async function startAlertSubscriber() {
   });
 
   const channel = await conn.createChannel();
-  await channel.assertExchange(ALERTS_EXCHANGE, 'fanout', { durable: true });
+  await channel.assertExchange(ALERTS_EXCHANGE, ALERTS_FANOUT ? 'fanout' : 'topic', { durable: true });
 
   // Ephemeral queue for receiving alerts
   const { queue } = await channel.assertQueue('', {
@@ -163,7 +168,9 @@ async function startAlertSubscriber() {
     durable: false
   });
 
-  await channel.bindQueue(queue, ALERTS_EXCHANGE, '');
+  for (const binding of ALERT_BINDINGS) {
+    await channel.bindQueue(queue, ALERTS_EXCHANGE, binding);
+  }
   console.log(`📡 Listening securely on exchange "${ALERTS_EXCHANGE}" via mutual TLS...`);
 
   let chaincodeFn1 = null;
@@ -0,0 +1,75 @@
+import com.espertech.esper.common.client.EventBean;
+import com.espertech.esper.common.client.configuration.Configuration;
+import com.espertech.esper.compiler.client.CompilerArguments;
+import com.espertech.esper.compiler.client.EPCompilerProvider;
+import com.espertech.esper.runtime.client.EPDeployment;
+import com.espertech.esper.runtime.client.EPRuntime;
+import com.espertech.esper.runtime.client.EPRuntimeProvider;
+import com.espertech.esper.runtime.client.EPStatement;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import harness.AlertEncodeBenchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+
+/** Setup and operations of harness.AlertEncodeBenchmark: one alert row of the first rule in rules.json. */
+public class AlertEncodeFixture implements AlertEncodeBenchmark.Fixture {
+
+    private EPRuntime runtime;
+    private AlertEncoder encoder;
+    private EventBean alert;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        Map<?, ?> rulesConfig = new ObjectMapper().readValue(new File("rules.json"), Map.class);
+        Map<String, Object> rule = ((List<Map<String, Object>>) rulesConfig.get("rules")).get(0);
+
+        Configuration config = new Configuration();
+        config.getCommon().addEventType("SensorEvents", SensorEvents.class);
+        runtime = EPRuntimeProvider.getRuntime("bench-alert", config);
+
+        // Same select list as the rule, without window/having, so one reading yields one alert row
+        String epl = "select " + rule.get("select") + " from SensorEvents";
+        EPDeployment deployment = runtime.getDeploymentService().deploy(
+                EPCompilerProvider.getCompiler().compile(epl, new CompilerArguments(config)));
+        EPStatement stmt = deployment.getStatements()[0];
+        encoder = new AlertEncoder(stmt, null, rule);
+        stmt.addListener((newData, oldData, s, r) -> alert = newData[0]);
+
+        runtime.getEventService().sendEventBean(
+                new SensorEvents((String) rule.get("sensorId"), 4.2, "2026-01-26T23:05:40.379Z"), "SensorEvents");
+        if (alert == null) {
+            throw new IllegalStateException("Statement did not fire: " + epl);
+        }
+    }
+
+    @Override
+    public void tearDown() {
+        runtime.destroy();
+    }
+
+    @Override
+    public byte[] json() throws IOException {
+        return encoder.encodeJson(alert);
+    }
+
+    @Override
+    public String legacyText() {
+        return encoder.legacyText(alert);
+    }
+
+    @Override
+    public String originalListener() {
+        String alertTimestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd-HH:mm:ss"));
+        return String.format("🚨 ALERT: %s, alertTimestamp=%s}",
+                alert.getUnderlying().toString().replaceAll("}$", ""),
+                alertTimestamp);
+    }
+}
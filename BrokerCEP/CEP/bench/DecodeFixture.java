@@ -0,0 +1,55 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import harness.DecodeBenchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/** Operations of harness.DecodeBenchmark: one reading and a 50-reading gateway batch. */
+public class DecodeFixture implements DecodeBenchmark.Fixture {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final byte[] single;
+    private final byte[] batch;
+
+    public DecodeFixture() {
+        single = reading("temperatureRule_MeatSaleSharedParty_20260126230509416", 4.2).getBytes(StandardCharsets.UTF_8);
+
+        StringBuilder sb = new StringBuilder("{\"gatewayId\":\"gw-bench\",\"readings\":[");
+        for (int i = 0; i < 50; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(reading("sensor_" + (i % 10), i * 0.5));
+        }
+        batch = sb.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String reading(String sensorId, double value) {
+        return "{\"sensorId\":\"" + sensorId + "\",\"value\":" + value
+                + ",\"timestamp\":\"2026-01-26T23:05:40.379Z\"}";
+    }
+
+    @Override
+    public SensorEvents streamingSingle() throws IOException {
+        return SensorMessageDecoder.decode(single, null, SensorEvents::new);
+    }
+
+    @Override
+    public List<SensorEvents> streamingBatch50() throws IOException {
+        return SensorMessageDecoder.decodeAll(batch, null, SensorEvents::new);
+    }
+
+    @Override
+    public SensorEvents objectMapperSingle() throws IOException {
+        String json = new String(single, StandardCharsets.UTF_8);
+        Map<?, ?> data = MAPPER.readValue(json, Map.class);
+        return new SensorEvents(
+                data.get("sensorId").toString(),
+                Double.valueOf(data.get("value").toString()),
+                data.get("timestamp").toString());
+    }
+}
@@ -0,0 +1,175 @@
+import com.espertech.esper.common.client.configuration.Configuration;
+import com.espertech.esper.compiler.client.CompilerArguments;
+import com.espertech.esper.compiler.client.EPCompilerProvider;
+import com.espertech.esper.runtime.client.EPEventService;
+import com.espertech.esper.runtime.client.EPRuntime;
+import com.espertech.esper.runtime.client.EPRuntimeProvider;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Retained heap per reading held in a time window, for three event layouts and for
+ * the incremental fast path:
+ *
+ *   strings     the previous bean: String sensorId + double + String sensorTimestamp,
+ *               each reading with its own strings (as decoded from the message)
+ *   compact     SensorEventsMultiInstaExperiment: interned int sensorId + double + long time
+ *   objectarray an object-array event type: interned sensorId, boxed Double and Long
+ *   incremental the same rules on an IncrementalRuleEngine instead of Esper: the
+ *               window keeps a long and a double per reading, not the event
+ *
+ * Each layout gets a fresh runtime with -Dbench.sensors rules (default 1000) of the
+ * usual shape, "count(*)/avg(value) ... (sensorId = 's' and value > -1000).win:time(1 day)
+ * group by sensorId", and -Dbench.events readings (default 1000000) spread over the
+ * sensors. The runtime clock is not advanced, so every reading stays in its window.
+ * Heap is measured after repeated GCs before and after sending; the difference over
+ * the number of readings is the retained cost of one windowed reading, including
+ * Esper's own per-event wrapper and window bookkeeping.
+ *
+ * Not a JMH benchmark (JMH measures time, not retained heap). Usage (from
+ * BrokerCEP/CEP, after mvn -Pbench package or bench/run.sh):
+ *   java -Xmx4g -cp "target/classes:$(cat target/cep-bridge.classpath)" EventMemoryBenchmark
+ */
+public class EventMemoryBenchmark {
+
+    private static final int SENSORS = Integer.getInteger("bench.sensors", 1000);
+    private static final int EVENTS = Integer.getInteger("bench.events", 1_000_000);
+    private static final long START = 1_767_225_600_000L; // 2026-01-01T00:00:00.000Z
+
+    /** The reading bean as it was before the compact layout. */
+    public static class StringSensorEvent {
+        private final String sensorId;
+        private final double value;
+        private final String sensorTimestamp;
+
+        public StringSensorEvent(String sensorId, double value, String sensorTimestamp) {
+            this.sensorId = sensorId;
+            this.value = value;
+            this.sensorTimestamp = sensorTimestamp;
+        }
+
+        public String getSensorId() {
+            return sensorId;
+        }
+
+        public double getValue() {
+            return value;
+        }
+
+        public String getSensorTimestamp() {
+            return sensorTimestamp;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%-12s %10s %12s %14s%n", "layout", "readings", "retained MB", "bytes/reading");
+        double strings = run("strings");
+        double compact = run("compact");
+        run("objectarray");
+        double incremental = runIncremental();
+        System.out.printf(Locale.ROOT, "compact saves %.0f bytes (%.0f%%) per windowed reading%n",
+                strings - compact, 100 * (strings - compact) / strings);
+        System.out.printf(Locale.ROOT, "incremental saves %.0f bytes (%.0f%%) per windowed reading over compact%n",
+                compact - incremental, 100 * (compact - incremental) / compact);
+        System.exit(0);
+    }
+
+    private static double run(String layout) throws Exception {
+        String type = "Reading_" + layout;
+        Configuration config = new Configuration();
+        switch (layout) {
+            case "strings":
+                config.getCommon().addEventType(type, StringSensorEvent.class);
+                break;
+            case "compact":
+                config.getCommon().addEventType(type, SensorEventsMultiInstaExperiment.class);
+                break;
+            default:
+                config.getCommon().addEventType(type,
+                        new String[]{"sensorId", "value", "eventTime"}, new Object[]{String.class, Double.class, Long.class});
+        }
+        config.getRuntime().getThreading().setInternalTimerEnabled(false);
+        EPRuntime runtime = EPRuntimeProvider.getRuntime("bench-memory-" + layout, config);
+        EPEventService events = runtime.getEventService();
+        events.advanceTime(START);
+
+        String[] sensorIds = new String[SENSORS];
+        for (int s = 0; s < SENSORS; s++) {
+            sensorIds[s] = "sensor_" + s;
+            String epl = "select sensorId, count(*) as cnt, avg(value) as avgValue from " + type
+                    + "(sensorId = '" + sensorIds[s] + "' and value > -1000).win:time(1 day) group by sensorId";
+            runtime.getDeploymentService().deploy(EPCompilerProvider.getCompiler()
+                    .compile(epl, new CompilerArguments(config)));
+            SensorIds.register(sensorIds[s]);
+        }
+
+        long before = usedHeapAfterGc();
+        for (int i = 0; i < EVENTS; i++) {
+            long time = START + i * 10L;
+            // Fresh strings per reading, as the decoder produces them
+            String sensorId = new String(sensorIds[i % SENSORS].toCharArray());
+            double value = (i % 200) - 100;
+            switch (layout) {
+                case "strings":
+                    events.sendEventBean(new StringSensorEvent(sensorId, value, SensorTimestamps.format(time)), type);
+                    break;
+                case "compact":
+                    events.sendEventBean(new SensorEventsMultiInstaExperiment(sensorId, value, SensorTimestamps.format(time)), type);
+                    break;
+                default:
+                    events.sendEventObjectArray(new Object[]{SensorIds.name(SensorIds.keyOf(sensorId)), value, time}, type);
+            }
+        }
+        long after = usedHeapAfterGc();
+        double perReading = (after - before) / (double) EVENTS;
+        System.out.printf(Locale.ROOT, "%-12s %10d %12.1f %14.1f%n",
+                layout, EVENTS, (after - before) / 1048576.0, perReading);
+        runtime.destroy();
+        return perReading;
+    }
+
+    /** The same rules and readings on the incremental fast path (no Esper runtime involved). */
+    private static double runIncremental() throws Exception {
+        IncrementalRuleEngine engine = new IncrementalRuleEngine();
+        String[] sensorIds = new String[SENSORS];
+        for (int s = 0; s < SENSORS; s++) {
+            sensorIds[s] = "sensor_" + s;
+            Map<String, Object> rule = new HashMap<>();
+            rule.put("id", "rule_" + s);
+            rule.put("sensorId", sensorIds[s]);
+            rule.put("condition", "value > -1000");
+            rule.put("window", "time(1 day)");
+            rule.put("select", "sensorId, count(*) as cnt, avg(value) as avgValue");
+            engine.deploy("bench/rule_" + s, "bench", rule, (names, contractId, r) -> (alert, now) -> { });
+        }
+
+        long before = usedHeapAfterGc();
+        for (int i = 0; i < EVENTS; i++) {
+            long time = START + i * 10L;
+            String sensorId = new String(sensorIds[i % SENSORS].toCharArray());
+            double value = (i % 200) - 100;
+            // Clock not advanced, as above; the event itself is garbage once sent
+            engine.send(new SensorEventsMultiInstaExperiment(sensorId, value, SensorTimestamps.format(time)), START);
+        }
+        long after = usedHeapAfterGc();
+        double perReading = (after - before) / (double) EVENTS;
+        System.out.printf(Locale.ROOT, "%-12s %10d %12.1f %14.1f%n",
+                "incremental", engine.windowedReadings(), (after - before) / 1048576.0, perReading);
+        return perReading;
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(100);
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+}
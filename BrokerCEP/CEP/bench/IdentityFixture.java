@@ -0,0 +1,50 @@
+import harness.IdentityBenchmark;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.cert.X509Certificate;
+
+/** Setup and operations of harness.IdentityBenchmark: one enrolled sensor of the wallet. */
+public class IdentityFixture implements IdentityBenchmark.Fixture {
+
+    private String sensorId;
+    private X509Certificate cert;
+
+    @Override
+    public void setup() throws Exception {
+        sensorId = System.getProperty("bench.sensorId", firstEnrolledSensor());
+        cert = CertificateUtil.parseCertificate(WalletUtil.getSensorCert(sensorId));
+        if (SensorIdentityCache.verify(sensorId) != SensorIdentityCache.Status.VERIFIED) {
+            throw new IllegalStateException("Sensor " + sensorId + " does not verify against its wallet certificate");
+        }
+    }
+
+    private static String firstEnrolledSensor() throws Exception {
+        try (DirectoryStream<Path> ids = Files.newDirectoryStream(WalletUtil.getWalletPath(), "*.id")) {
+            for (Path id : ids) {
+                String name = id.getFileName().toString();
+                return name.substring(0, name.length() - ".id".length());
+            }
+        }
+        throw new IllegalStateException("No enrolled sensor in " + WalletUtil.getWalletPath()
+                + " (run node EnrollSensors.js or pass -Dbench.sensorId)");
+    }
+
+    @Override
+    public boolean verifyBinding() {
+        return CertificateUtil.verifySensorBinding(cert, sensorId);
+    }
+
+    @Override
+    public boolean walletReadAndVerify() throws Exception {
+        return WalletUtil.isSensorRegistered(sensorId)
+                && CertificateUtil.verifySensorBinding(
+                        CertificateUtil.parseCertificate(WalletUtil.getSensorCert(sensorId)), sensorId);
+    }
+
+    @Override
+    public SensorIdentityCache.Status cachedVerify() {
+        return SensorIdentityCache.verify(sensorId);
+    }
+}
@@ -0,0 +1,89 @@
+import com.espertech.esper.common.client.configuration.Configuration;
+import com.espertech.esper.compiler.client.EPCompilerProvider;
+import com.espertech.esper.runtime.client.EPDeployment;
+import com.espertech.esper.runtime.client.EPEventService;
+import com.espertech.esper.runtime.client.EPRuntime;
+import com.espertech.esper.runtime.client.EPRuntimeProvider;
+import com.espertech.esper.runtime.client.EPStatement;
+
+import harness.IncrementalRuleBenchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Setup and operation of harness.IncrementalRuleBenchmark: SendEventFixture's rules
+ * and readings, with the rules deployed to Esper ("esper") or, where accepted, to an
+ * IncrementalRuleEngine ("incremental").
+ */
+public class IncrementalRuleFixture implements IncrementalRuleBenchmark.Fixture {
+
+    private static final String EVENT_TYPE = "SensorEventsMultiInstaExperiment";
+    private static final int READINGS = 1 << 14;
+    private static final int CLOCK_STEP = 64;
+
+    private EPRuntime runtime;
+    private EPEventService events;
+    private IncrementalRuleEngine engine;
+    private SensorEventsMultiInstaExperiment[] readings;
+    private long alerts;
+    private long time;
+    private int next;
+
+    @Override
+    public void setup(int instances, String ruleSet, String path) throws Exception {
+        Configuration config = new Configuration();
+        config.getCommon().addEventType(EVENT_TYPE, SensorEventsMultiInstaExperiment.class);
+        config.getRuntime().getThreading().setInternalTimerEnabled(false);
+
+        runtime = EPRuntimeProvider.getRuntime("bench-incremental-" + ruleSet + "-" + instances + "-" + path, config);
+        events = runtime.getEventService();
+        events.advanceTime(0);
+        engine = "incremental".equals(path) ? new IncrementalRuleEngine() : null;
+
+        CompiledRuleCache cache = new CompiledRuleCache(
+                EPCompilerProvider.getCompiler(), config, EVENT_TYPE, SensorEventsMultiInstaExperiment.class);
+        List<String> sensorIds = new ArrayList<>();
+        for (Map<String, Object> rule : RuleFixtures.replicate(RuleFixtures.ruleSet(ruleSet), instances)) {
+            String key = rule.get("contractId") + "/" + rule.get("id");
+            if (engine == null || !engine.deploy(key, (String) rule.get("contractId"), rule,
+                    (names, contractId, r) -> (alert, now) -> alerts++)) {
+                EPDeployment deployment = cache.deploy(runtime, rule);
+                for (EPStatement stmt : deployment.getStatements()) {
+                    stmt.addListener((newData, oldData, s, r) -> alerts++);
+                }
+            }
+            sensorIds.add((String) rule.get("sensorId"));
+        }
+
+        Random random = new Random(42);
+        readings = new SensorEventsMultiInstaExperiment[READINGS];
+        for (int i = 0; i < READINGS; i++) {
+            String sensorId = sensorIds.get(random.nextInt(sensorIds.size()));
+            double value = Math.round((random.nextDouble() * 200 - 100) * 10) / 10.0;
+            readings[i] = new SensorEventsMultiInstaExperiment(sensorId, value, "2026-01-26T23:05:40.379Z");
+        }
+    }
+
+    @Override
+    public void tearDown() {
+        System.out.println("alerts fired: " + alerts + (engine != null ? ", incremental rules: " + engine.ruleCount() : ""));
+        runtime.destroy();
+    }
+
+    @Override
+    public void send() {
+        int i = next++;
+        if ((i & (CLOCK_STEP - 1)) == 0) {
+            time += CLOCK_STEP * 100L;
+            events.advanceTime(time);
+        }
+        SensorEventsMultiInstaExperiment reading = readings[i & (READINGS - 1)];
+        if (engine != null) {
+            engine.send(reading, time);
+        }
+        events.sendEventBean(reading, EVENT_TYPE);
+    }
+}
@@ -0,0 +1,78 @@
+import com.espertech.esper.common.client.configuration.Configuration;
+import com.espertech.esper.compiler.client.EPCompilerProvider;
+import com.espertech.esper.runtime.client.EPDeployment;
+import com.espertech.esper.runtime.client.EPEventService;
+import com.espertech.esper.runtime.client.EPRuntime;
+import com.espertech.esper.runtime.client.EPRuntimeProvider;
+import com.espertech.esper.runtime.client.EPStatement;
+
+import harness.SendEventBenchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Setup and operation of harness.SendEventBenchmark: the rule set replicated over
+ * [instances] contract instances on one runtime with an external clock.
+ */
+public class SendEventFixture implements SendEventBenchmark.Fixture {
+
+    private static final String EVENT_TYPE = "SensorEventsMultiInstaExperiment";
+    private static final int READINGS = 1 << 14;
+    private static final int CLOCK_STEP = 64;
+
+    private EPRuntime runtime;
+    private EPEventService events;
+    private SensorEventsMultiInstaExperiment[] readings;
+    private long alerts;
+    private long time;
+    private int next;
+
+    @Override
+    public void setup(int instances, String ruleSet) throws Exception {
+        Configuration config = new Configuration();
+        config.getCommon().addEventType(EVENT_TYPE, SensorEventsMultiInstaExperiment.class);
+        config.getRuntime().getThreading().setInternalTimerEnabled(false);
+
+        runtime = EPRuntimeProvider.getRuntime("bench-" + ruleSet + "-" + instances, config);
+        events = runtime.getEventService();
+        events.advanceTime(0);
+
+        CompiledRuleCache cache = new CompiledRuleCache(
+                EPCompilerProvider.getCompiler(), config, EVENT_TYPE, SensorEventsMultiInstaExperiment.class);
+        List<String> sensorIds = new ArrayList<>();
+        for (Map<String, Object> rule : RuleFixtures.replicate(RuleFixtures.ruleSet(ruleSet), instances)) {
+            EPDeployment deployment = cache.deploy(runtime, rule);
+            for (EPStatement stmt : deployment.getStatements()) {
+                stmt.addListener((newData, oldData, s, r) -> alerts++);
+            }
+            sensorIds.add((String) rule.get("sensorId"));
+        }
+
+        Random random = new Random(42);
+        readings = new SensorEventsMultiInstaExperiment[READINGS];
+        for (int i = 0; i < READINGS; i++) {
+            String sensorId = sensorIds.get(random.nextInt(sensorIds.size()));
+            double value = Math.round((random.nextDouble() * 200 - 100) * 10) / 10.0;
+            readings[i] = new SensorEventsMultiInstaExperiment(sensorId, value, "2026-01-26T23:05:40.379Z");
+        }
+    }
+
+    @Override
+    public void tearDown() {
+        System.out.println("alerts fired: " + alerts);
+        runtime.destroy();
+    }
+
+    @Override
+    public void sendEventBean() {
+        int i = next++;
+        if ((i & (CLOCK_STEP - 1)) == 0) {
+            time += CLOCK_STEP * 100L;
+            events.advanceTime(time);
+        }
+        events.sendEventBean(readings[i & (READINGS - 1)], EVENT_TYPE);
+    }
+}
@@ -0,0 +1,71 @@
+package harness;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Alert formatting for one firing of the first rule in rules.json: the v1 JSON
+ * encoding, the legacy text encoding, and the original listener code
+ * (toString + regex replace + String.format + a fresh DateTimeFormatter per alert).
+ * Driven by AlertEncodeFixture.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AlertEncodeBenchmark {
+
+    public interface Fixture {
+        void setup() throws Exception;
+
+        Object json() throws Exception;
+
+        Object legacyText();
+
+        Object originalListener();
+
+        void tearDown();
+    }
+
+    private Fixture fixture;
+
+    @Setup
+    public void setup() throws Exception {
+        fixture = Fixtures.create("AlertEncodeFixture", Fixture.class);
+        fixture.setup();
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.tearDown();
+    }
+
+    @Benchmark
+    public Object json() throws Exception {
+        return fixture.json();
+    }
+
+    @Benchmark
+    public Object legacyText() {
+        return fixture.legacyText();
+    }
+
+    /** The listener's formatting before AlertEncoder. */
+    @Benchmark
+    public Object originalListener() {
+        return fixture.originalListener();
+    }
+}
@@ -0,0 +1,59 @@
+package harness;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sensor message decoding: the streaming SensorMessageDecoder (single reading and a
+ * 50-reading gateway batch) against the original String + ObjectMapper + Map path.
+ * Driven by DecodeFixture.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeBenchmark {
+
+    public interface Fixture {
+        Object streamingSingle() throws Exception;
+
+        Object streamingBatch50() throws Exception;
+
+        Object objectMapperSingle() throws Exception;
+    }
+
+    private Fixture fixture;
+
+    @Setup
+    public void setup() throws Exception {
+        fixture = Fixtures.create("DecodeFixture", Fixture.class);
+    }
+
+    @Benchmark
+    public Object streamingSingle() throws Exception {
+        return fixture.streamingSingle();
+    }
+
+    @Benchmark
+    public Object streamingBatch50() throws Exception {
+        return fixture.streamingBatch50();
+    }
+
+    /** The decode path the bridge used before SensorMessageDecoder. */
+    @Benchmark
+    public Object objectMapperSingle() throws Exception {
+        return fixture.objectMapperSingle();
+    }
+}
@@ -0,0 +1,18 @@
+package harness;
+
+/**
+ * JMH only runs benchmarks in a named package, while the bridge classes live in the
+ * default package, which named packages cannot refer to. So each benchmark here is
+ * the JMH shell (modes, params, iterations) around a Fixture interface, and the code
+ * under test is driven by a default-package implementation in bench/ (e.g.
+ * SendEventFixture for SendEventBenchmark), loaded by name.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static <T> T create(String className, Class<T> type) throws ReflectiveOperationException {
+        return Class.forName(className).asSubclass(type).getDeclaredConstructor().newInstance();
+    }
+}
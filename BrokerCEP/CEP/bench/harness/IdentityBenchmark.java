@@ -0,0 +1,65 @@
+package harness;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sensor identity checks: CN binding on a parsed certificate, the full per-message
+ * wallet read + parse + bind path (WalletUtil + CertificateUtil), and a
+ * SensorIdentityCache hit. Driven by IdentityFixture.
+ *
+ * Needs an enrolled sensor in ../../wallet (node EnrollSensors.js). The first
+ * *.id file is used unless -Dbench.sensorId=... is given.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdentityBenchmark {
+
+    public interface Fixture {
+        void setup() throws Exception;
+
+        boolean verifyBinding();
+
+        boolean walletReadAndVerify() throws Exception;
+
+        Object cachedVerify();
+    }
+
+    private Fixture fixture;
+
+    @Setup
+    public void setup() throws Exception {
+        fixture = Fixtures.create("IdentityFixture", Fixture.class);
+        fixture.setup();
+    }
+
+    @Benchmark
+    public boolean verifyBinding() {
+        return fixture.verifyBinding();
+    }
+
+    /** What every message paid before SensorIdentityCache. */
+    @Benchmark
+    public boolean walletReadAndVerify() throws Exception {
+        return fixture.walletReadAndVerify();
+    }
+
+    @Benchmark
+    public Object cachedVerify() {
+        return fixture.cachedVerify();
+    }
+}
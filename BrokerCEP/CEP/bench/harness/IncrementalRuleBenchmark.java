@@ -0,0 +1,72 @@
+package harness;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the rule set on Esper vs on the IncrementalRuleEngine, with
+ * 1/10/100/1000 contract instances: the SendEventBenchmark setup (same readings,
+ * same 100 ms of event time per reading) with every rule deployed to one or the
+ * other. On the incremental path readings still go through sendEventBean, as in
+ * the bridge, for the rules without a time window (the vaccine shock/light/seal
+ * rules), which stay on Esper. Driven by IncrementalRuleFixture.
+ *
+ * Retained heap per windowed reading is measured by EventMemoryBenchmark
+ * (layouts "compact" and "incremental"); IncrementalRuleCheckTest verifies that
+ * both paths produce the same alerts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class IncrementalRuleBenchmark {
+
+    public interface Fixture {
+        void setup(int instances, String ruleSet, String path) throws Exception;
+
+        void send();
+
+        void tearDown();
+    }
+
+    @Param({"1", "10", "100", "1000"})
+    public int instances;
+
+    @Param({"meatSale", "vaccine"})
+    public String ruleSet;
+
+    @Param({"esper", "incremental"})
+    public String path;
+
+    private Fixture fixture;
+
+    @Setup
+    public void setup() throws Exception {
+        fixture = Fixtures.create("IncrementalRuleFixture", Fixture.class);
+        fixture.setup(instances, ruleSet, path);
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.tearDown();
+    }
+
+    @Benchmark
+    public void send() {
+        fixture.send();
+    }
+}
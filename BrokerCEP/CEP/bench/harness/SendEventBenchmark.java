@@ -0,0 +1,69 @@
+package harness;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * sendEventBean throughput with 1/10/100/1000 deployed contract instances of the
+ * meat-sale or vaccine rule set (rules are replicated per instance with distinct
+ * sensorIds by RuleFixtures, as RuleEplComparison does).
+ *
+ * Readings are pre-generated (seed 42) and spread uniformly over all instance
+ * sensors. The runtime uses an external clock advanced by 100 ms of event time
+ * per reading (in steps of 64 readings), so the time windows hold a bounded,
+ * realistic amount of state instead of growing with benchmark speed. Compiled
+ * rules go through CompiledRuleCache, so repeated runs skip compilation.
+ * Driven by SendEventFixture.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class SendEventBenchmark {
+
+    public interface Fixture {
+        void setup(int instances, String ruleSet) throws Exception;
+
+        void sendEventBean();
+
+        void tearDown();
+    }
+
+    @Param({"1", "10", "100", "1000"})
+    public int instances;
+
+    @Param({"meatSale", "vaccine"})
+    public String ruleSet;
+
+    private Fixture fixture;
+
+    @Setup
+    public void setup() throws Exception {
+        fixture = Fixtures.create("SendEventFixture", Fixture.class);
+        fixture.setup(instances, ruleSet);
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.tearDown();
+    }
+
+    @Benchmark
+    public void sendEventBean() {
+        fixture.sendEventBean();
+    }
+}
@@ -0,0 +1,24 @@
+#!/usr/bin/env bash
+# Builds the bridge plus the JMH benchmarks (mvn -Pbench, see pom.xml) and runs
+# them, writing the results as a JSON baseline to bench/baselines/.
+#
+# Usage (from BrokerCEP/CEP):
+#   bench/run.sh                       # whole suite
+#   bench/run.sh DecodeBenchmark       # any JMH include regex / options
+#   bench/run.sh SendEventBenchmark -p instances=1000
+#
+# The benchmarks are harness.*Benchmark (JMH needs a named package); each drives
+# the bridge classes through the matching default-package bench/*Fixture.
+set -euo pipefail
+cd "$(dirname "$0")/.."
+
+mvn -B -q -Pbench package -DskipTests
+CP="target/classes:$(cat target/cep-bridge.classpath)"
+mkdir -p bench/baselines
+
+if [ $# -eq 0 ]; then
+    set -- "Benchmark"
+fi
+RESULT="bench/baselines/$(date +%Y%m%d-%H%M%S)-$(git rev-parse --short HEAD 2>/dev/null || echo local).json"
+java -cp "$CP" org.openjdk.jmh.Main -rf json -rff "$RESULT" "$@"
+echo "📊 Baseline written to $RESULT"
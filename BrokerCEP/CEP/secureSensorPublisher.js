@@ -66,7 +66,8 @@ async function publishSensorData(sensorId, value, username, password) {
       timestamp
     });
 
-    channel.sendToQueue(SENSOR_QUEUE, Buffer.from(payload));
+    // sensorId header lets the CEP bridge partition without parsing the body
+    channel.sendToQueue(SENSOR_QUEUE, Buffer.from(payload), { headers: { sensorId } });
 
     console.log(`✅ [${sensorId}] Published securely via TLS + password auth: ${payload}`);
 
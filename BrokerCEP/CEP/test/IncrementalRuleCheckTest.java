@@ -0,0 +1,19 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * IncrementalRuleCheck as part of mvn test: the incremental engine has to fire the
+ * same alerts, with the same event type, as Esper for every rule it accepts.
+ */
+class IncrementalRuleCheckTest {
+
+    @Test
+    void incrementalAlertsMatchEsper(@TempDir Path compiledCache) throws Exception {
+        assertEquals(0, IncrementalRuleCheck.compare(3, 50_000, compiledCache),
+                "rules whose incremental alerts differ from Esper's");
+    }
+}
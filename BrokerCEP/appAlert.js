@@ -33,7 +33,10 @@ async function executeTransaction(alert) {
       console.log(sensorId,avgValue, sensorTime, alertTime)
 
       // Get contract id from rules.json to send alret event back to smart contract
-      const { contractId, chaincodeFunction, chaincodeName} = await getRuleDetailsBySensorId(sensorId,true)
+      // (structured alerts already carry it, so the rules lookup is only needed for legacy text alerts)
+      const { contractId, chaincodeFunction, chaincodeName} = alert.v
+        ? alert
+        : await getRuleDetailsBySensorId(sensorId,true)
       //console.log("contractId, txnName, chaincodeName")
       //console.log(contractId, chaincodeFunction, chaincodeName)
       txnName = chaincodeFunction;
@@ -134,6 +137,16 @@ async function executeTransaction(alert) {
 
  // === Helper : to parse sensorId and sensor value 
     function parseAlret(alert){
+      // Structured alert (v1 JSON from EsperBridge): fields are carried directly
+      if (alert.v) {
+        return {
+          sensorId: alert.sensorId,
+          avgValue: alert.avgValue,
+          sensorTime: alert.sensorTimestamp,
+          alertTime: alert.alertTimestamp
+        };
+      }
+
       let sensorId = null;
       let avgValue = null;
       let sensorTime = null;
@@ -31,11 +31,14 @@ async function executeTransaction(alert) {
      // parsing
       const {sensorId, avgValue, sensorTime, alertTime} = parseAlret(alert);
       console.log(sensorId,avgValue, sensorTime, alertTime)
-      const contractId = sensorId.substring(sensorId.indexOf("_") + 1);
+      const contractId = alert.v ? alert.contractId : sensorId.substring(sensorId.indexOf("_") + 1);
 
 
       // Get contract id from rules.json to send alret event back to smart contract
-      const { contractIdRule: contractIdRule, chaincodeFunction, chaincodeName} = await getRuleDetailsBySensorId(sensorId,true,  `rules${contractId}.json`)
+      // (structured alerts already carry it, so the rules lookup is only needed for legacy text alerts)
+      const { contractIdRule: contractIdRule, chaincodeFunction, chaincodeName} = alert.v
+        ? alert
+        : await getRuleDetailsBySensorId(sensorId,true,  `rules${contractId}.json`)
       //console.log("contractId, txnName, chaincodeName")
       //console.log(contractId, chaincodeFunction, chaincodeName)
       txnName = chaincodeFunction;
@@ -94,6 +97,16 @@ async function executeTransaction(alert) {
 
  // === Helper : to parse sensorId and sensor value 
     function parseAlret(alert){
+      // Structured alert (v1 JSON from EsperBridge): fields are carried directly
+      if (alert.v) {
+        return {
+          sensorId: alert.sensorId,
+          avgValue: alert.avgValue,
+          sensorTime: alert.sensorTimestamp,
+          alertTime: alert.alertTimestamp
+        };
+      }
+
       let sensorId = null;
       let avgValue = null;
       let sensorTime = null;